@@ -0,0 +1,131 @@
+package kdTree.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The synthetic key distributions of the load test. Every key lies within
+ * the unit cube, except for the keys of SORTED, which grow past it in the
+ * first dimension once the preloaded keys are used up.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+public enum Dataset {
+
+	/**
+	 * Uniformly distributed keys.
+	 */
+	UNIFORM,
+
+	/**
+	 * Keys drawn from a number of tight normal distributions around random
+	 * centers.
+	 */
+	GAUSSIAN,
+
+	/**
+	 * Keys drawn from the same kind of clusters as GAUSSIAN, but the clusters
+	 * are chosen by a Zipf distribution, so a few clusters get most of the
+	 * keys.
+	 */
+	ZIPF,
+
+	/**
+	 * Keys that are strictly increasing in the first dimension, which is the
+	 * worst case for an unbalanced tree. The other dimensions are uniform.
+	 */
+	SORTED;
+
+	private static final int CLUSTERS = 1000;
+	private static final double CLUSTER_SPREAD = 0.005;
+	private static final double ZIPF_EXPONENT = 1.1;
+
+	/**
+	 * Returns a generator of keys of this distribution.
+	 *
+	 * @param dimensions
+	 * - the number of dimensions of the keys.
+	 * @param expectedKeys
+	 * - the number of keys expected to be generated. SORTED spreads this
+	 * many keys over the unit interval.
+	 * @param seed
+	 * - the seed of the cluster centers.
+	 */
+	public Keys keys(int dimensions, int expectedKeys, long seed){
+		return new Keys(this, dimensions, expectedKeys, seed);
+	}
+
+	/**
+	 * Generates keys of a distribution. A generator can be used by several
+	 * threads at once, as long as they use random generators of their own.
+	 */
+	public static final class Keys {
+
+		private final Dataset dataset;
+		private final int dimensions;
+		private final double sortedStep;
+		private final double[][] centers;
+		private final double[] zipfCumulative;
+		private final AtomicLong sequence = new AtomicLong();
+
+		private Keys(Dataset dataset, int dimensions, int expectedKeys, long seed){
+			this.dataset = dataset;
+			this.dimensions = dimensions;
+			sortedStep = 1.0 / Math.max(1, expectedKeys);
+
+			Random rnd = new Random(seed);
+			centers = new double[CLUSTERS][];
+			for (int i=0; i < CLUSTERS; ++i){
+				centers[i] = uniform(rnd);
+			}
+
+			zipfCumulative = new double[CLUSTERS];
+			double sum = 0;
+			for (int i=0; i < CLUSTERS; ++i){
+				sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+				zipfCumulative[i] = sum;
+			}
+			for (int i=0; i < CLUSTERS; ++i){
+				zipfCumulative[i] /= sum;
+			}
+		}
+
+		/**
+		 * Returns the next key of the distribution.
+		 */
+		public double[] next(Random rnd){
+			switch (dataset){
+			case GAUSSIAN:
+				return around(centers[rnd.nextInt(CLUSTERS)], rnd);
+			case ZIPF:
+				int cluster = Arrays.binarySearch(zipfCumulative, rnd.nextDouble());
+				return around(centers[cluster < 0 ? -cluster - 1 : cluster], rnd);
+			case SORTED:
+				double[] key = uniform(rnd);
+				key[0] = sequence.getAndIncrement() * sortedStep;
+				return key;
+			default:
+				return uniform(rnd);
+			}
+		}
+
+		private double[] around(double[] center, Random rnd){
+			double[] key = new double[dimensions];
+			for (int d=0; d < dimensions; ++d){
+				key[d] = center[d] + rnd.nextGaussian() * CLUSTER_SPREAD;
+			}
+			return key;
+		}
+
+		private double[] uniform(Random rnd){
+			double[] key = new double[dimensions];
+			for (int d=0; d < dimensions; ++d){
+				key[d] = rnd.nextDouble();
+			}
+			return key;
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+package kdTree.benchmark;
+
+/**
+ * The orders the keys of a workload are inserted in.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+public enum InsertionOrder {
+
+	/**
+	 * Uniformly distributed keys in random order.
+	 */
+	RANDOM,
+
+	/**
+	 * Uniformly distributed keys sorted on the first dimension, then the
+	 * second and so on.
+	 */
+	SORTED,
+
+	/**
+	 * Keys drawn from a few tight normal distributions, in random order.
+	 */
+	CLUSTERED
+
+}
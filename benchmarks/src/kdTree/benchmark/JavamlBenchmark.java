@@ -0,0 +1,92 @@
+package kdTree.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.javaml.core.kdtree.KDTree;
+
+/**
+ * The baseline, the same workloads as KDTreeBenchmark run against the
+ * KD-Tree of Java-ML. Java-ML stores a single value per key, so get and
+ * contains both map to its search.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavamlBenchmark extends Workload {
+
+	private KDTree tree;
+
+	@Setup(Level.Trial)
+	public void buildTree(){
+		generate();
+		tree = build(dimensions, keys);
+	}
+
+	static KDTree build(int dimensions, double[][] keys){
+		KDTree tree = new KDTree(dimensions);
+		for (int i=0; i < keys.length; ++i){
+			tree.insert(keys[i], i);
+		}
+		return tree;
+	}
+
+	/**
+	 * A fresh copy of the tree for every iteration of the insert benchmark.
+	 */
+	@State(Scope.Thread)
+	public static class InsertTarget {
+
+		KDTree tree;
+		int next;
+
+		@Setup(Level.Iteration)
+		public void buildTree(JavamlBenchmark workload){
+			tree = build(workload.dimensions, workload.keys);
+			next = 0;
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 5, batchSize = INSERTS)
+	@Measurement(iterations = 20, batchSize = INSERTS)
+	public KDTree insert(InsertTarget target){
+		int index = target.next++;
+		target.tree.insert(inserts[index], size + index);
+		return target.tree;
+	}
+
+	@Benchmark
+	public Object get(){
+		return tree.search(searches[nextQuery()]);
+	}
+
+	@Benchmark
+	public boolean contains(){
+		return tree.search(searches[nextQuery()]) != null;
+	}
+
+	@Benchmark
+	public Object[] range(){
+		int query = nextQuery();
+		return tree.range(lowest[query], highest[query]);
+	}
+
+}
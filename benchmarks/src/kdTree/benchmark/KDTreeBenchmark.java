@@ -0,0 +1,104 @@
+package kdTree.benchmark;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import kdTree.KDTree;
+
+/**
+ * Measures insert, get, contains and range of KDTree. The tree is built by
+ * inserting the keys of the workload one at a time, in the workload's order.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KDTreeBenchmark extends Workload {
+
+	private KDTree<Integer> tree;
+
+	private Double[][] treeKeys;
+	private Double[][] insertKeys;
+	private Double[][] searchKeys;
+	private Double[][] lowestKeys;
+	private Double[][] highestKeys;
+
+	@Setup(Level.Trial)
+	public void buildTree(){
+		generate();
+		treeKeys = boxed(keys);
+		insertKeys = boxed(inserts);
+		searchKeys = boxed(searches);
+		lowestKeys = boxed(lowest);
+		highestKeys = boxed(highest);
+		tree = build(dimensions, treeKeys);
+	}
+
+	static KDTree<Integer> build(int dimensions, Double[][] keys){
+		KDTree<Integer> tree = new KDTree<Integer>(dimensions);
+		for (int i=0; i < keys.length; ++i){
+			tree.insert(keys[i], i);
+		}
+		return tree;
+	}
+
+	/**
+	 * A fresh copy of the tree for every iteration of the insert benchmark,
+	 * so every iteration inserts the same keys into the same tree.
+	 */
+	@State(Scope.Thread)
+	public static class InsertTarget {
+
+		KDTree<Integer> tree;
+		int next;
+
+		@Setup(Level.Iteration)
+		public void buildTree(KDTreeBenchmark workload){
+			tree = build(workload.dimensions, workload.treeKeys);
+			next = 0;
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 5, batchSize = INSERTS)
+	@Measurement(iterations = 20, batchSize = INSERTS)
+	public KDTree<Integer> insert(InsertTarget target){
+		int index = target.next++;
+		target.tree.insert(insertKeys[index], size + index);
+		return target.tree;
+	}
+
+	@Benchmark
+	public Set<Integer> get(){
+		return tree.get(searchKeys[nextQuery()]);
+	}
+
+	@Benchmark
+	public boolean contains(){
+		return tree.contains(searchKeys[nextQuery()]);
+	}
+
+	@Benchmark
+	public Set<Integer> range(){
+		int query = nextQuery();
+		return tree.range(lowestKeys[query], highestKeys[query]);
+	}
+
+}
@@ -0,0 +1,533 @@
+package kdTree.benchmark;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.HdrHistogram.Histogram;
+
+import kdTree.ConcurrentKDTree;
+import kdTree.KDTree;
+
+/**
+ * A load test that runs a mix of operations against a KD-Tree from several
+ * threads and records the latency of every operation in a histogram. The
+ * throughput and latency percentiles of every operation are written to a
+ * report file, followed by the full percentile distributions.
+ *
+ * The settings are given as name=value arguments, for instance
+ *
+ *   java -cp benchmarks.jar kdTree.benchmark.LoadTest threads=8 dataset=ZIPF
+ *       mix=insert:10,get:40,range:40,nearest:10 duration=60
+ *
+ * Every thread runs its next operation as soon as the previous one is done,
+ * so a slow operation delays the ones after it instead of being queued
+ * behind them. The latencies are those of a closed system.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+public final class LoadTest {
+
+	/**
+	 * The operations the load test can run.
+	 */
+	enum Operation {
+		INSERT, GET, CONTAINS, RANGE, RANGE_COUNT, NEAREST
+	}
+
+	/**
+	 * The number of values a range query is expected to find in uniformly
+	 * distributed keys.
+	 */
+	private static final int RANGE_HITS = 100;
+
+	/**
+	 * The number of neighbours a nearest neighbour query finds.
+	 */
+	private static final int NEIGHBOURS = 10;
+
+	private static final String USAGE =
+			"Settings, all optional, given as name=value:\n" +
+			"  tree=concurrent|locked    ConcurrentKDTree or a KDTree behind a read-write lock\n" +
+			"  dataset=UNIFORM|GAUSSIAN|ZIPF|SORTED\n" +
+			"  dimensions=3              the number of dimensions\n" +
+			"  preload=1000000           the number of keys inserted before the test\n" +
+			"  threads=4                 the number of threads running operations\n" +
+			"  warmup=10                 seconds run before the measurements start\n" +
+			"  duration=30               seconds measured\n" +
+			"  mix=insert:10,get:40,range:40,nearest:10\n" +
+			"                            relative weights of insert, get, contains, range,\n" +
+			"                            range_count and nearest\n" +
+			"  seed=42                   the seed of the generated keys\n" +
+			"  report=loadtest-report.txt\n";
+
+	// The settings, with their default values.
+	private String treeType = "concurrent";
+	private Dataset dataset = Dataset.UNIFORM;
+	private int dimensions = 3;
+	private int preload = 1000000;
+	private int threads = 4;
+	private int warmupSeconds = 10;
+	private int durationSeconds = 30;
+	private final Map<Operation, Integer> mix = new LinkedHashMap<Operation, Integer>();
+	private long seed = 42;
+	private String report = "loadtest-report.txt";
+
+	private Target target;
+	private Dataset.Keys keys;
+	private double[][] preloaded;
+	private double rangeSide;
+	private final AtomicInteger nextValue = new AtomicInteger();
+
+	public static void main(String[] args) throws IOException, InterruptedException{
+		LoadTest test = new LoadTest();
+		try {
+			test.parse(args);
+		} catch (IllegalArgumentException e){
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			System.exit(1);
+		}
+		test.run();
+	}
+
+	private void parse(String[] args){
+		for (String arg : args){
+			int split = arg.indexOf('=');
+			if (split < 0){
+				throw new IllegalArgumentException("Not a setting: " + arg);
+			}
+			String name = arg.substring(0, split);
+			String value = arg.substring(split + 1);
+
+			if (name.equals("tree")){
+				if (!value.equals("concurrent") && !value.equals("locked")){
+					throw new IllegalArgumentException("Unknown tree: " + value);
+				}
+				treeType = value;
+			} else if (name.equals("dataset")){
+				dataset = Dataset.valueOf(value.toUpperCase(Locale.ROOT));
+			} else if (name.equals("dimensions")){
+				dimensions = Integer.parseInt(value);
+			} else if (name.equals("preload")){
+				preload = Integer.parseInt(value);
+			} else if (name.equals("threads")){
+				threads = Integer.parseInt(value);
+			} else if (name.equals("warmup")){
+				warmupSeconds = Integer.parseInt(value);
+			} else if (name.equals("duration")){
+				durationSeconds = Integer.parseInt(value);
+			} else if (name.equals("mix")){
+				parseMix(value);
+			} else if (name.equals("seed")){
+				seed = Long.parseLong(value);
+			} else if (name.equals("report")){
+				report = value;
+			} else {
+				throw new IllegalArgumentException("Unknown setting: " + name);
+			}
+		}
+
+		if (mix.isEmpty()){
+			parseMix("insert:10,get:40,range:40,nearest:10");
+		}
+		int totalWeight = 0;
+		for (int weight : mix.values()){
+			totalWeight += weight;
+		}
+		if (totalWeight == 0){
+			throw new IllegalArgumentException("The mix has no operations.");
+		}
+		if (dimensions < 2 || preload < 1 || threads < 1 || warmupSeconds < 0 || durationSeconds < 1){
+			throw new IllegalArgumentException("The numeric settings are out of range.");
+		}
+	}
+
+	private void parseMix(String value){
+		mix.clear();
+		for (String part : value.split(",")){
+			String[] weighted = part.split(":");
+			if (weighted.length != 2){
+				throw new IllegalArgumentException("Not an operation weight: " + part);
+			}
+			int weight = Integer.parseInt(weighted[1]);
+			if (weight < 0){
+				throw new IllegalArgumentException("Negative weight: " + part);
+			}
+			mix.put(Operation.valueOf(weighted[0].toUpperCase(Locale.ROOT)), weight);
+		}
+	}
+
+	private void run() throws IOException, InterruptedException{
+		target = treeType.equals("locked") ? new LockedTarget(dimensions) : new ConcurrentTarget(dimensions);
+		keys = dataset.keys(dimensions, preload, seed);
+		rangeSide = Math.min(1, Math.pow((double) RANGE_HITS / preload, 1.0 / dimensions));
+
+		System.out.println("Preloading " + preload + " keys...");
+		Random rnd = new Random(seed);
+		preloaded = new double[preload][];
+		for (int i=0; i < preload; ++i){
+			preloaded[i] = keys.next(rnd);
+			target.insert(boxed(preloaded[i]), nextValue.getAndIncrement());
+		}
+
+		List<Operation> weighted = new ArrayList<Operation>();
+		List<Integer> cumulative = new ArrayList<Integer>();
+		int totalWeight = 0;
+		for (Map.Entry<Operation, Integer> entry : mix.entrySet()){
+			if (entry.getValue() > 0){
+				totalWeight += entry.getValue();
+				weighted.add(entry.getKey());
+				cumulative.add(totalWeight);
+			}
+		}
+		Operation[] operations = weighted.toArray(new Operation[weighted.size()]);
+		int[] cumulativeWeights = new int[cumulative.size()];
+		for (int i=0; i < cumulativeWeights.length; ++i){
+			cumulativeWeights[i] = cumulative.get(i);
+		}
+
+		System.out.println("Running " + threads + " threads for " + warmupSeconds +
+				" s of warmup and " + durationSeconds + " s of measurements...");
+		long measureStart = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+		long end = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+		List<Worker> workers = new ArrayList<Worker>();
+		CountDownLatch done = new CountDownLatch(threads);
+		for (int i=0; i < threads; ++i){
+			Worker worker = new Worker(new Random(seed + i + 1), operations, cumulativeWeights,
+					measureStart, end, done);
+			workers.add(worker);
+			Thread thread = new Thread(worker, "load-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		done.await();
+
+		Histogram[] merged = new Histogram[Operation.values().length];
+		for (Operation operation : Operation.values()){
+			merged[operation.ordinal()] = new Histogram(3);
+		}
+		for (Worker worker : workers){
+			if (worker.failure != null){
+				throw new IllegalStateException("A worker failed.", worker.failure);
+			}
+			for (Operation operation : Operation.values()){
+				merged[operation.ordinal()].add(worker.histograms[operation.ordinal()]);
+			}
+		}
+
+		PrintStream out = new PrintStream(new FileOutputStream(report), false, "UTF-8");
+		try {
+			writeReport(out, merged);
+		} finally {
+			out.close();
+		}
+		writeSummary(System.out, merged);
+		System.out.println("Report written to " + report);
+	}
+
+	/**
+	 * Runs operations until the end of the test, recording their latencies
+	 * once the warmup is over.
+	 */
+	private final class Worker implements Runnable {
+
+		private final Random rnd;
+		private final Operation[] operations;
+		private final int[] cumulativeWeights;
+		private final long measureStart;
+		private final long end;
+		private final CountDownLatch done;
+
+		final Histogram[] histograms = new Histogram[Operation.values().length];
+		volatile Throwable failure;
+
+		// Keeps the results of the operations from being optimized away.
+		long consumed = 0;
+
+		Worker(Random rnd, Operation[] operations, int[] cumulativeWeights, long measureStart,
+				long end, CountDownLatch done){
+			this.rnd = rnd;
+			this.operations = operations;
+			this.cumulativeWeights = cumulativeWeights;
+			this.measureStart = measureStart;
+			this.end = end;
+			this.done = done;
+			for (Operation operation : Operation.values()){
+				histograms[operation.ordinal()] = new Histogram(3);
+			}
+		}
+
+		@Override
+		public void run(){
+			try {
+				int totalWeight = cumulativeWeights[cumulativeWeights.length - 1];
+				while (true){
+					long start = System.nanoTime();
+					if (start >= end){
+						break;
+					}
+
+					int pick = rnd.nextInt(totalWeight);
+					int index = 0;
+					while (cumulativeWeights[index] <= pick){
+						++index;
+					}
+					Operation operation = operations[index];
+					Comparable[] query = boxed(operation == Operation.GET ?
+							preloaded[rnd.nextInt(preloaded.length)] : keys.next(rnd));
+
+					start = System.nanoTime();
+					consumed += execute(operation, query);
+					long latency = System.nanoTime() - start;
+
+					if (start >= measureStart){
+						histograms[operation.ordinal()].recordValue(latency);
+					}
+				}
+			} catch (Throwable e){
+				failure = e;
+			} finally {
+				done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Runs an operation on the supplied keys.
+	 *
+	 * @return
+	 * - a number derived from the result of the operation.
+	 */
+	private long execute(Operation operation, Comparable[] query){
+		switch (operation){
+		case INSERT:
+			target.insert(query, nextValue.getAndIncrement());
+			return 1;
+		case GET:
+			return target.get(query).size();
+		case CONTAINS:
+			return target.contains(query) ? 1 : 0;
+		case RANGE:
+			return target.range(lower(query), upper(query)).size();
+		case RANGE_COUNT:
+			return target.rangeCount(lower(query), upper(query));
+		case NEAREST:
+			return target.nearest(query, NEIGHBOURS).size();
+		default:
+			throw new AssertionError(operation);
+		}
+	}
+
+	private Comparable[] lower(Comparable[] center){
+		Comparable[] bound = new Comparable[dimensions];
+		for (int d=0; d < dimensions; ++d){
+			bound[d] = (Double) center[d] - rangeSide / 2;
+		}
+		return bound;
+	}
+
+	private Comparable[] upper(Comparable[] center){
+		Comparable[] bound = new Comparable[dimensions];
+		for (int d=0; d < dimensions; ++d){
+			bound[d] = (Double) center[d] + rangeSide / 2;
+		}
+		return bound;
+	}
+
+	private static Comparable[] boxed(double[] key){
+		Comparable[] boxed = new Comparable[key.length];
+		for (int d=0; d < key.length; ++d){
+			boxed[d] = key[d];
+		}
+		return boxed;
+	}
+
+	private void writeSummary(PrintStream out, Histogram[] histograms){
+		out.printf(Locale.ROOT, "%-12s %12s %14s %10s %10s %10s %10s%n", "operation", "count",
+				"ops/s", "p50 us", "p99 us", "p999 us", "max us");
+		Histogram total = new Histogram(3);
+		for (Operation operation : Operation.values()){
+			Histogram histogram = histograms[operation.ordinal()];
+			if (histogram.getTotalCount() > 0){
+				writeRow(out, operation.name().toLowerCase(Locale.ROOT), histogram);
+				total.add(histogram);
+			}
+		}
+		writeRow(out, "total", total);
+	}
+
+	private void writeRow(PrintStream out, String name, Histogram histogram){
+		out.printf(Locale.ROOT, "%-12s %12d %14.1f %10.1f %10.1f %10.1f %10.1f%n", name,
+				histogram.getTotalCount(),
+				histogram.getTotalCount() / (double) durationSeconds,
+				micros(histogram.getValueAtPercentile(50)),
+				micros(histogram.getValueAtPercentile(99)),
+				micros(histogram.getValueAtPercentile(99.9)),
+				micros(histogram.getMaxValue()));
+	}
+
+	private static double micros(long nanos){
+		return nanos / 1000.0;
+	}
+
+	private void writeReport(PrintStream out, Histogram[] histograms){
+		out.println("# KD-Tree load test");
+		out.printf(Locale.ROOT, "# tree=%s dataset=%s dimensions=%d preload=%d threads=%d warmup=%ds duration=%ds seed=%d%n",
+				treeType, dataset, dimensions, preload, threads, warmupSeconds, durationSeconds, seed);
+		out.println("# mix=" + mix);
+		out.println();
+		writeSummary(out, histograms);
+
+		for (Operation operation : Operation.values()){
+			Histogram histogram = histograms[operation.ordinal()];
+			if (histogram.getTotalCount() > 0){
+				out.println();
+				out.println("# " + operation.name().toLowerCase(Locale.ROOT) + ", latencies in microseconds");
+				histogram.outputPercentileDistribution(out, 1000.0);
+			}
+		}
+	}
+
+	/**
+	 * The tree under test.
+	 */
+	private interface Target {
+		void insert(Comparable[] keys, Integer value);
+		Set<Integer> get(Comparable[] keys);
+		boolean contains(Comparable[] keys);
+		Set<Integer> range(Comparable[] lowest, Comparable[] highest);
+		long rangeCount(Comparable[] lowest, Comparable[] highest);
+		List<Integer> nearest(Comparable[] keys, int k);
+	}
+
+	/**
+	 * A ConcurrentKDTree, where reads never wait for writes.
+	 */
+	private static final class ConcurrentTarget implements Target {
+
+		private final ConcurrentKDTree<Integer> tree;
+
+		ConcurrentTarget(int dimensions){
+			tree = new ConcurrentKDTree<Integer>(dimensions);
+		}
+
+		@Override
+		public void insert(Comparable[] keys, Integer value){
+			tree.insert(keys, value);
+		}
+
+		@Override
+		public Set<Integer> get(Comparable[] keys){
+			return tree.get(keys);
+		}
+
+		@Override
+		public boolean contains(Comparable[] keys){
+			return tree.contains(keys);
+		}
+
+		@Override
+		public Set<Integer> range(Comparable[] lowest, Comparable[] highest){
+			return tree.range(lowest, highest);
+		}
+
+		@Override
+		public long rangeCount(Comparable[] lowest, Comparable[] highest){
+			return tree.rangeCount(lowest, highest);
+		}
+
+		@Override
+		public List<Integer> nearest(Comparable[] keys, int k){
+			return tree.nearest(keys, k);
+		}
+	}
+
+	/**
+	 * A KDTree behind a read-write lock, where writes block all reads.
+	 */
+	private static final class LockedTarget implements Target {
+
+		private final KDTree<Integer> tree;
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+		LockedTarget(int dimensions){
+			tree = new KDTree<Integer>(dimensions);
+		}
+
+		@Override
+		public void insert(Comparable[] keys, Integer value){
+			lock.writeLock().lock();
+			try {
+				tree.insert(keys, value);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		@Override
+		public Set<Integer> get(Comparable[] keys){
+			lock.readLock().lock();
+			try {
+				return tree.get(keys);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public boolean contains(Comparable[] keys){
+			lock.readLock().lock();
+			try {
+				return tree.contains(keys);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public Set<Integer> range(Comparable[] lowest, Comparable[] highest){
+			lock.readLock().lock();
+			try {
+				return tree.range(lowest, highest);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public long rangeCount(Comparable[] lowest, Comparable[] highest){
+			lock.readLock().lock();
+			try {
+				return tree.rangeCount(lowest, highest);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		@Override
+		public List<Integer> nearest(Comparable[] keys, int k){
+			lock.readLock().lock();
+			try {
+				return tree.nearest(keys, k);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+package kdTree.benchmark;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The keys and queries shared by the benchmarks of all trees. The data only
+ * depends on the parameters, so every tree is measured on exactly the same
+ * workload.
+ *
+ * The default sizes stop at 10^6 to keep a full run within hours. Sizes up
+ * to 10^8 are run by overriding the parameter, for instance with
+ * -p size=100000000, and need a heap of tens of gigabytes.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+@State(Scope.Benchmark)
+public abstract class Workload {
+
+	/**
+	 * The number of distinct queries of every kind. Has to be a power of two.
+	 */
+	static final int QUERIES = 1024;
+
+	/**
+	 * The number of keys the insert benchmarks insert per iteration.
+	 */
+	static final int INSERTS = 10000;
+
+	/**
+	 * The number of values a range query is expected to find in uniformly
+	 * distributed keys.
+	 */
+	static final int RANGE_HITS = 100;
+
+	private static final long SEED = 42;
+	private static final int CLUSTERS = 16;
+	private static final double CLUSTER_SPREAD = 0.01;
+
+	@Param({"2", "3", "5", "10"})
+	public int dimensions;
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int size;
+
+	@Param({"RANDOM", "SORTED", "CLUSTERED"})
+	public InsertionOrder order;
+
+	/** The keys of the tree, in insertion order. */
+	protected double[][] keys;
+
+	/** Keys that aren't in the tree, inserted by the insert benchmarks. */
+	protected double[][] inserts;
+
+	/** Keys to search for. Every other key is in the tree. */
+	protected double[][] searches;
+
+	/** The lower and upper bounds of the range queries. */
+	protected double[][] lowest;
+	protected double[][] highest;
+
+	private int nextQuery = 0;
+
+	/**
+	 * Generates the keys and queries. Called first by the setup of every 
+	 * benchmark, since JMH doesn't order the setups of a class hierarchy.
+	 */
+	protected void generate(){
+		Random rnd = new Random(SEED);
+		double[][] centers = new double[CLUSTERS][];
+		for (int i=0; i < CLUSTERS; ++i){
+			centers[i] = uniform(rnd);
+		}
+
+		keys = generateKeys(rnd, centers, size);
+		inserts = generateKeys(rnd, centers, INSERTS);
+
+		searches = new double[QUERIES][];
+		for (int i=0; i < QUERIES; ++i){
+			searches[i] = i % 2 == 0 ? keys[rnd.nextInt(size)] : generateKey(rnd, centers);
+		}
+
+		// Boxes around keys of the tree, sized to hold RANGE_HITS uniformly
+		// distributed keys.
+		double side = Math.min(1, Math.pow((double) RANGE_HITS / size, 1.0 / dimensions));
+		lowest = new double[QUERIES][dimensions];
+		highest = new double[QUERIES][dimensions];
+		for (int i=0; i < QUERIES; ++i){
+			double[] center = keys[rnd.nextInt(size)];
+			for (int d=0; d < dimensions; ++d){
+				lowest[i][d] = center[d] - side / 2;
+				highest[i][d] = center[d] + side / 2;
+			}
+		}
+	}
+
+	private double[][] generateKeys(Random rnd, double[][] centers, int count){
+		double[][] generated = new double[count][];
+		for (int i=0; i < count; ++i){
+			generated[i] = generateKey(rnd, centers);
+		}
+		if (order == InsertionOrder.SORTED){
+			Arrays.sort(generated, new Comparator<double[]>(){
+				@Override
+				public int compare(double[] lhs, double[] rhs){
+					for (int d=0; d < lhs.length; ++d){
+						int cmp = Double.compare(lhs[d], rhs[d]);
+						if (cmp != 0){
+							return cmp;
+						}
+					}
+					return 0;
+				}
+			});
+		}
+		return generated;
+	}
+
+	private double[] generateKey(Random rnd, double[][] centers){
+		if (order != InsertionOrder.CLUSTERED){
+			return uniform(rnd);
+		}
+		double[] center = centers[rnd.nextInt(CLUSTERS)];
+		double[] key = new double[dimensions];
+		for (int d=0; d < dimensions; ++d){
+			key[d] = center[d] + rnd.nextGaussian() * CLUSTER_SPREAD;
+		}
+		return key;
+	}
+
+	private double[] uniform(Random rnd){
+		double[] key = new double[dimensions];
+		for (int d=0; d < dimensions; ++d){
+			key[d] = rnd.nextDouble();
+		}
+		return key;
+	}
+
+	/**
+	 * Returns the index of the next query. The queries are used in turn.
+	 */
+	protected int nextQuery(){
+		nextQuery = (nextQuery + 1) & (QUERIES - 1);
+		return nextQuery;
+	}
+
+	/**
+	 * Returns the keys as Comparable arrays, the way KDTree takes them.
+	 */
+	static Double[][] boxed(double[][] keys){
+		Double[][] boxed = new Double[keys.length][];
+		for (int i=0; i < keys.length; ++i){
+			boxed[i] = new Double[keys[i].length];
+			for (int d=0; d < keys[i].length; ++d){
+				boxed[i][d] = keys[i][d];
+			}
+		}
+		return boxed;
+	}
+
+}
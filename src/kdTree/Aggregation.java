@@ -0,0 +1,55 @@
+package kdTree;
+
+/**
+ * An Aggregation summarises the values of a KD-Tree as a single number, for 
+ * instance their sum or their maximum. Every node of a tree with an 
+ * aggregation keeps the aggregate of its whole subtree, which lets range 
+ * aggregates use whole subtrees without visiting their nodes.
+ * 
+ * The aggregation has to be a commutative monoid. Combine has to be 
+ * associative and commutative, and combining any number with the identity 
+ * has to give the number back.
+ * 
+ * @param <T>
+ * - the type of the aggregated values.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ * 
+ * @see Aggregations
+ */
+public interface Aggregation<T> {
+	
+	/**
+	 * Returns the aggregate of no values at all.
+	 * 
+	 * @return
+	 * - the identity of combine.
+	 */
+	double identity();
+	
+	/**
+	 * Returns the aggregate of a single value.
+	 * 
+	 * @param value
+	 * - the value to aggregate.
+	 * 
+	 * @return
+	 * - the number the value contributes with.
+	 */
+	double valueOf(T value);
+	
+	/**
+	 * Combines two aggregates into one.
+	 * 
+	 * @param lhs
+	 * - one of the aggregates.
+	 * @param rhs
+	 * - the other aggregate.
+	 * 
+	 * @return
+	 * - the aggregate of the values of both lhs and rhs.
+	 */
+	double combine(double lhs, double rhs);
+	
+}
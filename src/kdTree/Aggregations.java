@@ -0,0 +1,107 @@
+package kdTree;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Factory methods for the most common aggregations.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ */
+public final class Aggregations {
+	
+	private Aggregations(){}
+	
+	/**
+	 * Returns an aggregation summing a number derived from every value.
+	 * 
+	 * @param mapper
+	 * - derives the number to sum from a value.
+	 * 
+	 * @throws NullPointerException if mapper is null.
+	 */
+	public static <T> Aggregation<T> sum(final ToDoubleFunction<? super T> mapper){
+		if (mapper == null){
+			throw new NullPointerException();
+		}
+		return new Aggregation<T>(){
+			@Override
+			public double identity(){
+				return 0;
+			}
+			
+			@Override
+			public double valueOf(T value){
+				return mapper.applyAsDouble(value);
+			}
+			
+			@Override
+			public double combine(double lhs, double rhs){
+				return lhs + rhs;
+			}
+		};
+	}
+	
+	/**
+	 * Returns an aggregation finding the least number derived from the 
+	 * values. The aggregate of no values is positive infinity.
+	 * 
+	 * @param mapper
+	 * - derives the number to compare from a value.
+	 * 
+	 * @throws NullPointerException if mapper is null.
+	 */
+	public static <T> Aggregation<T> min(final ToDoubleFunction<? super T> mapper){
+		if (mapper == null){
+			throw new NullPointerException();
+		}
+		return new Aggregation<T>(){
+			@Override
+			public double identity(){
+				return Double.POSITIVE_INFINITY;
+			}
+			
+			@Override
+			public double valueOf(T value){
+				return mapper.applyAsDouble(value);
+			}
+			
+			@Override
+			public double combine(double lhs, double rhs){
+				return Math.min(lhs, rhs);
+			}
+		};
+	}
+	
+	/**
+	 * Returns an aggregation finding the greatest number derived from the 
+	 * values. The aggregate of no values is negative infinity.
+	 * 
+	 * @param mapper
+	 * - derives the number to compare from a value.
+	 * 
+	 * @throws NullPointerException if mapper is null.
+	 */
+	public static <T> Aggregation<T> max(final ToDoubleFunction<? super T> mapper){
+		if (mapper == null){
+			throw new NullPointerException();
+		}
+		return new Aggregation<T>(){
+			@Override
+			public double identity(){
+				return Double.NEGATIVE_INFINITY;
+			}
+			
+			@Override
+			public double valueOf(T value){
+				return mapper.applyAsDouble(value);
+			}
+			
+			@Override
+			public double combine(double lhs, double rhs){
+				return Math.max(lhs, rhs);
+			}
+		};
+	}
+	
+}
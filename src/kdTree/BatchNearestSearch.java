@@ -0,0 +1,338 @@
+package kdTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ *
+ * BatchNearestSearch finds the k nearest neighbours of many keys in a
+ * KD-Tree at once. The searched keys, the queries, are split like the nodes
+ * of a balanced KD-Tree, by the median of one dimension at a time, until
+ * each part is a block of at most BLOCK_SIZE queries close to each other.
+ * The blocks are searched in parallel by one task each.
+ *
+ * A block walks the searched tree once for all of its queries. Every
+ * subtree is searched for the queries that may have a neighbour in it, the
+ * active queries. A query is dropped from a subtree as soon as the region of
+ * the subtree is farther away from it than its own k:th nearest neighbour,
+ * and the subtree is skipped when no query is left. Subtrees closer to most
+ * of the active queries are searched first.
+ *
+ * @param <T>
+ * - the type of the values in the searched tree.
+ */
+class BatchNearestSearch<T> {
+
+	static final int BLOCK_SIZE = 64;
+
+	private final int DIMENSIONS;
+	private final DistanceMetric metric;
+	private final int k;
+	// The initial capacity of the queues, as k may be far larger than the
+	// tree.
+	private final int queueCapacity;
+	private final Node<T> root;
+	private final List<Comparable[]> queries;
+
+	// The nearest values by query, filled in by the block tasks.
+	private final List<List<T>> results;
+	// The stats the blocks add their work to, or null if not counted.
+	private final QueryStats stats;
+
+	BatchNearestSearch(int dimensions, DistanceMetric metric, int k, Node<T> root, List<Comparable[]> queries,
+			QueryStats stats){
+		DIMENSIONS = dimensions;
+		this.metric = metric;
+		this.k = k;
+		queueCapacity = root == null ? 1 : Math.max(1, Math.min(k, root.subtreeSize - root.deadCount));
+		this.root = root;
+		this.queries = queries;
+		results = new ArrayList<List<T>>(Collections.<List<T>>nCopies(queries.size(), null));
+		this.stats = stats;
+	}
+
+	/**
+	 * Returns a task that searches for the neighbours of all queries.
+	 */
+	RecursiveAction task(){
+		int[] order = new int[queries.size()];
+		for (int i=0; i < order.length; ++i){
+			order[i] = i;
+		}
+		return new SplitTask(order, 0, order.length, 0);
+	}
+
+	/**
+	 * Returns the nearest values of every query, in the order of the
+	 * queries, once the task is done.
+	 */
+	List<List<T>> results(){
+		return results;
+	}
+
+	/**
+	 * Splits the queries from index from to index to of order at their
+	 * median in a dimension, until the block is small enough to be searched.
+	 */
+	private class SplitTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] order;
+		private final int from;
+		private final int to;
+		private final int dimension;
+
+		SplitTask(int[] order, int from, int to, int dimension){
+			this.order = order;
+			this.from = from;
+			this.to = to;
+			this.dimension = dimension;
+		}
+
+		@Override
+		protected void compute(){
+			if (to - from <= BLOCK_SIZE){
+				searchBlock(order, from, to);
+				return;
+			}
+
+			int median = (from + to) >>> 1;
+			select(order, from, to - 1, median, dimension);
+			int nextDimension = dimension + 1 < DIMENSIONS ? dimension + 1 : 0;
+			invokeAll(new SplitTask(order, from, median, nextDimension),
+					new SplitTask(order, median, to, nextDimension));
+		}
+	}
+
+	/**
+	 * Quickselect with a median of three pivot, the same as in TreeBuilder.
+	 * Reorders the query indices so that the index at k has the k:th least
+	 * key in the dimension.
+	 */
+	@SuppressWarnings("unchecked")
+	private void select(int[] order, int low, int high, int k, int dimension){
+		while (low < high){
+			int middle = low + (high - low) / 2;
+			if (key(order[middle], dimension).compareTo(key(order[low], dimension)) < 0){
+				swap(order, low, middle);
+			}
+			if (key(order[high], dimension).compareTo(key(order[low], dimension)) < 0){
+				swap(order, low, high);
+			}
+			if (key(order[high], dimension).compareTo(key(order[middle], dimension)) < 0){
+				swap(order, middle, high);
+			}
+			Comparable pivot = key(order[middle], dimension);
+
+			int i = low;
+			int j = high;
+			while (i <= j){
+				while (key(order[i], dimension).compareTo(pivot) < 0){
+					++i;
+				}
+				while (key(order[j], dimension).compareTo(pivot) > 0){
+					--j;
+				}
+				if (i <= j){
+					swap(order, i++, j--);
+				}
+			}
+
+			if (k <= j){
+				high = j;
+			} else if (k >= i){
+				low = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private Comparable key(int query, int dimension){
+		return queries.get(query)[dimension];
+	}
+
+	private static void swap(int[] order, int i, int j){
+		int tmp = order[i];
+		order[i] = order[j];
+		order[j] = tmp;
+	}
+
+	/**
+	 * Searches the tree for the neighbours of the queries from index from to
+	 * index to of order.
+	 */
+	@SuppressWarnings("unchecked")
+	private void searchBlock(int[] order, int from, int to){
+		int blockSize = to - from;
+		if (blockSize == 0){
+			return;
+		}
+		Comparable[][] blockQueries = new Comparable[blockSize][];
+		PriorityQueue<Neighbour<T>>[] neighbours = new PriorityQueue[blockSize];
+		int[] allQueries = new int[blockSize];
+		for (int i=0; i < blockSize; ++i){
+			blockQueries[i] = queries.get(order[from + i]);
+			neighbours[i] = new PriorityQueue<Neighbour<T>>(queueCapacity, Neighbour.FARTHEST_FIRST);
+			allQueries[i] = i;
+		}
+
+		// Nodes left to visit, their dimensions, their active queries and
+		// the least possible distance from each active query to the keys in
+		// the subtree.
+		Node<T>[] nodeStack = new Node[16];
+		int[] dimensionStack = new int[16];
+		int[][] activeStack = new int[16][];
+		int[] countStack = new int[16];
+		double[][] boundStack = new double[16][];
+		int stackSize = 0;
+		if (root != null){
+			nodeStack[stackSize] = root;
+			activeStack[stackSize] = allQueries;
+			countStack[stackSize] = blockSize;
+			boundStack[stackSize] = new double[blockSize];
+			++stackSize;
+		}
+
+		// The work done, for the query stats.
+		long visited = 0;
+		long measured = 0;
+		long pruned = 0;
+		while (stackSize > 0){
+			--stackSize;
+			Node<T> currNode = nodeStack[stackSize];
+			int currDimension = dimensionStack[stackSize];
+			int[] active = activeStack[stackSize];
+			int count = countStack[stackSize];
+			double[] bounds = boundStack[stackSize];
+			nodeStack[stackSize] = null;
+			activeStack[stackSize] = null;
+			boundStack[stackSize] = null;
+
+			// Drop the queries whose neighbours have been found closer than
+			// the subtree since it was pushed.
+			int activeCount = 0;
+			for (int j=0; j < count; ++j){
+				if (bounds[j] < farthest(neighbours[active[j]])){
+					active[activeCount] = active[j];
+					bounds[activeCount] = bounds[j];
+					++activeCount;
+				}
+			}
+			if (activeCount == 0){
+				++pruned;
+				continue;
+			}
+			++visited;
+
+			if (!currNode.deleted){
+				measured += activeCount;
+				for (int j=0; j < activeCount; ++j){
+					int i = active[j];
+					offer(neighbours[i], currNode, metric.distance(blockQueries[i], currNode.keys));
+				}
+			}
+
+			// Keys less than the splitting key are in the left subtree, the
+			// rest in the right subtree.
+			Comparable currKey = currNode.keys[currDimension];
+			int[] leftActive = new int[activeCount];
+			double[] leftBounds = new double[activeCount];
+			int leftCount = 0;
+			int[] rightActive = new int[activeCount];
+			double[] rightBounds = new double[activeCount];
+			int rightCount = 0;
+			int leftSide = 0;
+			for (int j=0; j < activeCount; ++j){
+				int i = active[j];
+				Comparable queryKey = blockQueries[i][currDimension];
+				double leftBound = bounds[j];
+				double rightBound = bounds[j];
+				if (queryKey.compareTo(currKey) >= 0){
+					leftBound = Math.max(leftBound, metric.axisDistance(queryKey, currKey, currDimension));
+				} else {
+					rightBound = Math.max(rightBound, metric.axisDistance(queryKey, currKey, currDimension));
+					++leftSide;
+				}
+
+				double farthest = farthest(neighbours[i]);
+				if (currNode.leftChild != null && leftBound < farthest){
+					leftActive[leftCount] = i;
+					leftBounds[leftCount] = leftBound;
+					++leftCount;
+				}
+				if (currNode.rightChild != null && rightBound < farthest){
+					rightActive[rightCount] = i;
+					rightBounds[rightCount] = rightBound;
+					++rightCount;
+				}
+			}
+			int nextDimension = currDimension + 1 < DIMENSIONS ? currDimension + 1 : 0;
+
+			if (stackSize + 2 > nodeStack.length){
+				nodeStack = Arrays.copyOf(nodeStack, nodeStack.length * 2);
+				dimensionStack = Arrays.copyOf(dimensionStack, dimensionStack.length * 2);
+				activeStack = Arrays.copyOf(activeStack, activeStack.length * 2);
+				countStack = Arrays.copyOf(countStack, countStack.length * 2);
+				boundStack = Arrays.copyOf(boundStack, boundStack.length * 2);
+			}
+			// The child on the side of fewer queries is pushed first so that
+			// the child nearer to most of them is searched first.
+			boolean leftFirst = 2 * leftSide >= activeCount;
+			for (int side=0; side < 2; ++side){
+				boolean left = (side == 0) != leftFirst;
+				int childCount = left ? leftCount : rightCount;
+				if (childCount == 0 && (left ? currNode.leftChild : currNode.rightChild) != null){
+					++pruned;
+				} else if (childCount > 0){
+					nodeStack[stackSize] = left ? currNode.leftChild : currNode.rightChild;
+					dimensionStack[stackSize] = nextDimension;
+					activeStack[stackSize] = left ? leftActive : rightActive;
+					countStack[stackSize] = childCount;
+					boundStack[stackSize] = left ? leftBounds : rightBounds;
+					++stackSize;
+				}
+			}
+		}
+
+		if (stats != null){
+			stats.add(visited, measured, pruned);
+		}
+
+		for (int i=0; i < blockSize; ++i){
+			List<Neighbour<T>> found = new ArrayList<Neighbour<T>>(neighbours[i]);
+			Collections.sort(found, Neighbour.NEAREST_FIRST);
+			List<T> values = new ArrayList<T>(found.size());
+			for (Neighbour<T> neighbour : found){
+				values.add(neighbour.getValue());
+			}
+			results.set(order[from + i], values);
+		}
+	}
+
+	private void offer(PriorityQueue<Neighbour<T>> neighbours, Node<T> node, double distance){
+		if (neighbours.size() < k){
+			neighbours.add(new Neighbour<T>(node.keys, node.value, distance));
+		} else if (distance < neighbours.peek().distance){
+			neighbours.poll();
+			neighbours.add(new Neighbour<T>(node.keys, node.value, distance));
+		}
+	}
+
+	/**
+	 * Returns the distance to the k:th nearest neighbour found, or infinity
+	 * if less than k neighbours have been found.
+	 */
+	private double farthest(PriorityQueue<Neighbour<T>> neighbours){
+		return neighbours.size() < k ? Double.POSITIVE_INFINITY : neighbours.peek().distance;
+	}
+
+}
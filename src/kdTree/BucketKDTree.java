@@ -0,0 +1,420 @@
+package kdTree;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A KD-Tree that stores its key-value pairs in buckets at the leaves instead
+ * of one pair per node. The internal nodes only hold splitting keys. When a
+ * bucket grows larger than the bucket size it's split on the median of one of
+ * its dimensions. The pairs in a bucket are kept in contiguous arrays and are
+ * scanned linearly, which gives far fewer objects and pointers to follow than
+ * a tree with one node per pair.
+ *
+ * The tree has the same contract as KDTree. Every key in a left subtree is
+ * less than the splitting key and every key in a right subtree is greater
+ * than or equal to it. Buckets with only identical keys can't be split and
+ * are allowed to grow beyond the bucket size.
+ *
+ * @param <T>
+ * - the type of the values in the kd-tree.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+public class BucketKDTree<T> {
+
+	/**
+	 * The bucket size used if none is supplied.
+	 */
+	public static final int DEFAULT_BUCKET_SIZE = 32;
+
+	private final int DIMENSIONS;
+	private final int bucketSize;
+	private BucketNode<T> root;
+
+	private int size = 0;
+
+	/**
+	 * Creates a new BucketKDTree with the default bucket size.
+	 *
+	 * @param dimensions
+	 * - the number of dimensions of the KD-Tree. Can not be less than 2.
+	 *
+	 * @throws IllegalArgumentException if dimensions is less than 2.
+	 */
+	public BucketKDTree(int dimensions){
+		this(dimensions, DEFAULT_BUCKET_SIZE);
+	}
+
+	/**
+	 * Creates a new BucketKDTree with the supplied number of dimensions and
+	 * bucket size.
+	 *
+	 * @param dimensions
+	 * - the number of dimensions of the KD-Tree. Can not be less than 2.
+	 * @param bucketSize
+	 * - the largest number of key-value pairs in a leaf before it's split.
+	 * Can not be less than 1.
+	 *
+	 * @throws IllegalArgumentException if dimensions is less than 2 or if
+	 * bucketSize is less than 1.
+	 */
+	public BucketKDTree(int dimensions, int bucketSize){
+		if (dimensions < 2){
+			throw new IllegalArgumentException("Less than two dimensions makes this data structure useless.");
+		}
+		if (bucketSize < 1){
+			throw new IllegalArgumentException("The buckets have to hold at least one element.");
+		}
+
+		DIMENSIONS = dimensions;
+		this.bucketSize = bucketSize;
+		root = new BucketNode<T>(DIMENSIONS, bucketSize);
+	}
+
+	/**
+	 * Returns the size of the KD-Tree. The size is equal to the number of
+	 * elements in the KD-Tree.
+	 *
+	 * @return
+	 * - the size of the KD-Tree.
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns the number of dimensions of the KD-Tree.
+	 *
+	 * @return
+	 * - the number of dimensions.
+	 */
+	public int dimensions(){
+		return DIMENSIONS;
+	}
+
+	/**
+	 * Returns the bucket size of the KD-Tree.
+	 *
+	 * @return
+	 * - the largest number of key-value pairs in a splittable leaf.
+	 */
+	public int bucketSize(){
+		return bucketSize;
+	}
+
+	/**
+	 * Only for testing purposes.
+	 * @return
+	 * The root node.
+	 */
+	BucketNode<T> getRoot(){
+		return root;
+	}
+
+	private void checkKeys(Comparable[] keys){
+		if (keys == null){
+			throw new NullPointerException();
+		}
+		if (keys.length != DIMENSIONS){
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * Returns the leaf where the supplied keys belong.
+	 */
+	@SuppressWarnings("unchecked")
+	private BucketNode<T> findLeaf(Comparable[] keys){
+		BucketNode<T> currNode = root;
+		while (!currNode.isLeaf()){
+			if (currNode.splitKey.compareTo(keys[currNode.splitDimension]) > 0){
+				currNode = currNode.leftChild;
+			} else {
+				currNode = currNode.rightChild;
+			}
+		}
+		return currNode;
+	}
+
+	/**
+	 * Returns true if the pair at index i in the leaf has the supplied keys.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean isSameKeys(BucketNode<T> leaf, int i, Comparable[] keys){
+		int offset = i * DIMENSIONS;
+		for (int d=0; d < DIMENSIONS; ++d){
+			if (leaf.keys[offset + d].compareTo(keys[d]) != 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean isInRange(BucketNode<T> leaf, int i, Comparable[] lowest, Comparable[] highest){
+		int offset = i * DIMENSIONS;
+		for (int d=0; d < DIMENSIONS; ++d){
+			Comparable key = leaf.keys[offset + d];
+			if (key.compareTo(lowest[d]) < 0 || key.compareTo(highest[d]) > 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds and returns all values that have the supplied array keys as key.
+	 *
+	 * @param keys
+	 * - the array containing the keys to search for. The array have to be an
+	 * array of Comparable.
+	 *
+	 * @return
+	 * - a set containing all values with the array keys as key.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree.
+	 */
+	public Set<T> get(Comparable[] keys){
+		checkKeys(keys);
+
+		Set<T> retValue = new HashSet<T>();
+		BucketNode<T> leaf = findLeaf(keys);
+		for (int i=0; i < leaf.count; ++i){
+			if (isSameKeys(leaf, i, keys)){
+				retValue.add(leaf.getValue(i));
+			}
+		}
+		return retValue;
+	}
+
+	/**
+	 * Returns true if the KD-Tree contains an element with the all the keys
+	 * in the keys array.
+	 *
+	 * @param keys
+	 * - the keys to search for in the KD-Tree.
+	 *
+	 * @return
+	 * - true if at least one element in the tree contains the supplied key.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree.
+	 */
+	public boolean contains(Comparable[] keys){
+		checkKeys(keys);
+
+		BucketNode<T> leaf = findLeaf(keys);
+		for (int i=0; i < leaf.count; ++i){
+			if (isSameKeys(leaf, i, keys)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Inserts the key-value pair in the kd-tree. Two different values may have
+	 * identical keys. However, two equal values may not have identical keys and
+	 * a key-value pair will not be added to the KD-tree in such cases.
+	 * Equality is checked by the equals method.
+	 *
+	 * @param keys
+	 * - the keys with which to search for the value. It has to be an array of
+	 * objects implementing the comparable interface. Keys also has to be
+	 * as long as the number of dimensions in the tree.
+	 *
+	 * @param value
+	 * - the value to insert in the tree.
+	 *
+	 * @throws NullPointerException if keys or value are null.
+	 * @throws IllegalArgumentException if the length of keys isn't the same
+	 * as the kd-tree's dimension size.
+	 */
+	public void insert(Comparable[] keys, T value){
+		if (keys == null || value == null){
+			throw new NullPointerException("Arguments can't be null.");
+		}
+		checkKeys(keys);
+
+		BucketNode<T> leaf = findLeaf(keys);
+		for (int i=0; i < leaf.count; ++i){
+			// Don't insert a new pair if an identical pair already exists.
+			if (isSameKeys(leaf, i, keys) && leaf.values[i].equals(value)){
+				return;
+			}
+		}
+
+		add(leaf, keys, 0, value);
+		++size;
+
+		// A leaf with only identical keys isn't split again until a pair
+		// with other keys arrives.
+		if (leaf.unsplittable && !isSameKeys(leaf, 0, keys)){
+			leaf.unsplittable = false;
+		}
+		if (leaf.count > bucketSize && !leaf.unsplittable){
+			splitLeaf(leaf);
+		}
+	} // insert
+
+	/**
+	 * Appends a key-value pair to the leaf. The keys are copied from the
+	 * supplied array, starting at offset.
+	 */
+	private void add(BucketNode<T> leaf, Comparable[] keys, int offset, Object value){
+		if (leaf.count == leaf.values.length){
+			int capacity = leaf.values.length * 2;
+			leaf.keys = Arrays.copyOf(leaf.keys, capacity * DIMENSIONS);
+			leaf.values = Arrays.copyOf(leaf.values, capacity);
+		}
+		System.arraycopy(keys, offset, leaf.keys, leaf.count * DIMENSIONS, DIMENSIONS);
+		leaf.values[leaf.count] = value;
+		++leaf.count;
+	}
+
+	/**
+	 * Splits the leaf into two leaves on the median of the dimension with
+	 * the largest number of distinct keys. The leaf is marked as unsplittable
+	 * if all the keys in it are identical.
+	 */
+	@SuppressWarnings("unchecked")
+	private void splitLeaf(BucketNode<T> leaf){
+		int bestDimension = -1;
+		Comparable bestSplit = null;
+		int bestBalance = -1;
+
+		Comparable[] dimensionKeys = new Comparable[leaf.count];
+		for (int d=0; d < DIMENSIONS; ++d){
+			for (int i=0; i < leaf.count; ++i){
+				dimensionKeys[i] = leaf.keys[i * DIMENSIONS + d];
+			}
+			Arrays.sort(dimensionKeys);
+
+			// The split key has to leave at least one key on each side. Keys
+			// equal to the split key go to the right.
+			int median = leaf.count / 2;
+			while (median < leaf.count && dimensionKeys[median].compareTo(dimensionKeys[0]) == 0){
+				++median;
+			}
+			if (median == leaf.count){
+				continue; // All keys are equal in this dimension.
+			}
+			int first = median;
+			while (first > 0 && dimensionKeys[first - 1].compareTo(dimensionKeys[median]) == 0){
+				--first;
+			}
+
+			int balance = Math.min(first, leaf.count - first);
+			if (balance > bestBalance){
+				bestDimension = d;
+				bestSplit = dimensionKeys[median];
+				bestBalance = balance;
+			}
+		}
+
+		if (bestDimension < 0){
+			leaf.unsplittable = true;
+			return;
+		}
+
+		BucketNode<T> left = new BucketNode<T>(DIMENSIONS, bucketSize);
+		BucketNode<T> right = new BucketNode<T>(DIMENSIONS, bucketSize);
+		for (int i=0; i < leaf.count; ++i){
+			int offset = i * DIMENSIONS;
+			if (leaf.keys[offset + bestDimension].compareTo(bestSplit) < 0){
+				add(left, leaf.keys, offset, leaf.values[i]);
+			} else {
+				add(right, leaf.keys, offset, leaf.values[i]);
+			}
+		}
+		leaf.split(bestDimension, bestSplit, left, right);
+	}
+
+	/**
+	 * Returns true if every key in highest is less than the key in lowest.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean isInverted(Comparable[] lowest, Comparable[] highest){
+		for (int i=0; i < DIMENSIONS; ++i){
+			if (highest[i].compareTo(lowest[i]) >= 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Retrieves all the values that are within the given range.
+	 * The range is kept between values that are found at the same index in the
+	 * argument arrays highest and lowest. Both bounds are inclusive. A range
+	 * where highest is less than lowest in only some of the dimensions
+	 * contains no values.
+	 *
+	 * @param lowest
+	 * An array of the lower bound values.
+	 *
+	 * @param highest
+	 * An array of the higher bound values.
+	 *
+	 * @return
+	 * A set containing all the values within the range.
+	 *
+	 * @throws NullPointerException if any of the arguments are null.
+	 *
+	 * @throws IllegalArgumentException if the argument arrays have to few or
+	 * many elements or if every key in highest is less than the key in lowest.
+	 */
+	@SuppressWarnings("unchecked")
+	public Set<T> range(Comparable[] lowest, Comparable[] highest){
+		if (lowest == null || highest == null){
+			throw new NullPointerException();
+		}
+		if (lowest.length != DIMENSIONS || highest.length != DIMENSIONS){
+			throw new IllegalArgumentException("The input arrays must have as many elements as there are dimensions.");
+		}
+		if (isInverted(lowest, highest)){
+			throw new IllegalArgumentException("The keys in highest can't be less than lowest.");
+		}
+
+		Set<T> correctVals = new HashSet<T>();
+
+		BucketNode<T>[] nodesToVisit = new BucketNode[16];
+		int stackSize = 0;
+		nodesToVisit[stackSize++] = root;
+
+		while (stackSize > 0){
+			BucketNode<T> currNode = nodesToVisit[--stackSize];
+
+			if (currNode.isLeaf()){
+				for (int i=0; i < currNode.count; ++i){
+					if (isInRange(currNode, i, lowest, highest)){
+						correctVals.add(currNode.getValue(i));
+					}
+				}
+				continue;
+			}
+
+			if (stackSize + 2 > nodesToVisit.length){
+				nodesToVisit = Arrays.copyOf(nodesToVisit, nodesToVisit.length * 2);
+			}
+			int dimension = currNode.splitDimension;
+			// There is room for smaller keys within the range.
+			if (currNode.splitKey.compareTo(lowest[dimension]) > 0){
+				nodesToVisit[stackSize++] = currNode.leftChild;
+			}
+			// There is room for bigger keys within the range.
+			if (currNode.splitKey.compareTo(highest[dimension]) <= 0){
+				nodesToVisit[stackSize++] = currNode.rightChild;
+			}
+		}
+
+		return correctVals;
+	} // range
+
+}
@@ -0,0 +1,65 @@
+package kdTree;
+
+/**
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg 
+ * 
+ * 
+ * BucketNode is used as nodes in the BucketKDTree. A node is either an 
+ * internal node or a leaf. An internal node only holds a splitting key and 
+ * its children. A leaf holds a bucket of key-value pairs in contiguous 
+ * arrays, the keys of the i:th pair are found at the indices 
+ * [i * dimensions, (i + 1) * dimensions) of the key array.
+ * 
+ * @param <T>
+ * - the type of the values in the node.
+ */
+class BucketNode<T>{
+	
+	// Internal nodes
+	int splitDimension;
+	Comparable splitKey;
+	BucketNode<T> leftChild;
+	BucketNode<T> rightChild;
+	
+	// Leaves
+	Comparable[] keys;
+	Object[] values;
+	int count;
+	
+	// True if all pairs have identical keys, so the leaf can't be split.
+	boolean unsplittable;
+	
+	/**
+	 * Creates an empty leaf.
+	 */
+	BucketNode(int dimensions, int capacity){
+		keys = new Comparable[dimensions * capacity];
+		values = new Object[capacity];
+		count = 0;
+	}
+	
+	boolean isLeaf(){
+		return keys != null;
+	}
+	
+	/**
+	 * Turns the leaf into an internal node with the supplied children.
+	 */
+	void split(int dimension, Comparable key, BucketNode<T> left, BucketNode<T> right){
+		splitDimension = dimension;
+		splitKey = key;
+		leftChild = left;
+		rightChild = right;
+		
+		keys = null;
+		values = null;
+		count = 0;
+	}
+	
+	@SuppressWarnings("unchecked")
+	T getValue(int i){
+		return (T) values[i];
+	}
+	
+}
@@ -0,0 +1,365 @@
+package kdTree;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A KD-Tree that caches the results of range searches. Repeated searches
+ * with the same bounds are answered from the cache without searching the
+ * tree. The cache holds at most a fixed number of results and evicts the
+ * least recently used result when it's full.
+ *
+ * A change to the tree only invalidates the cached results whose ranges
+ * contain the keys of the changed value, the other results stay valid.
+ * Every change checks all cached ranges, so it takes time proportional to
+ * the number of cached results, O(capacity), on top of the change to the
+ * tree. The cache is meant to be small compared to the tree.
+ *
+ * Cached ranges are looked up by the equals and hashCode methods of their
+ * bounds, while the ranges are searched and invalidated by compareTo. The
+ * keys therefore have to have an equals method that is consistent with
+ * compareTo, like Integer, Double and String. Otherwise two ranges whose
+ * bounds are equal but compare differently share one cached result.
+ *
+ * The cached results are returned as unmodifiable sets. The tree is wrapped
+ * and may only be changed through the cache afterwards. The cache is
+ * thread-safe: every method holds a lock while it uses the tree or the
+ * cache, so calls from different threads are carried out one at a time.
+ *
+ * @param <T>
+ * - the type of the values in the kd-tree.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+public class CachedKDTree<T> {
+
+	private final KDTree<T> tree;
+	private final int capacity;
+	private final Map<Range, Set<T>> cache;
+	private final Object lock = new Object();
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long invalidations = 0;
+
+	/**
+	 * Creates a new CachedKDTree object with the supplied number of
+	 * dimensions.
+	 *
+	 * @param dimensions
+	 * - the number of dimensions of the KD-Tree. Can not be less than 2.
+	 * @param capacity
+	 * - the greatest number of cached results.
+	 *
+	 * @throws IllegalArgumentException if dimensions is less than 2 or if
+	 * capacity is less than 1.
+	 */
+	public CachedKDTree(int dimensions, int capacity){
+		this(new KDTree<T>(dimensions), capacity);
+	}
+
+	/**
+	 * Creates a cache around an existing tree, for instance one loaded in
+	 * bulk. The tree may only be changed through the cache afterwards.
+	 *
+	 * @param tree
+	 * - the tree to cache the results of.
+	 * @param capacity
+	 * - the greatest number of cached results.
+	 *
+	 * @throws NullPointerException if tree is null.
+	 * @throws IllegalArgumentException if capacity is less than 1.
+	 */
+	public CachedKDTree(KDTree<T> tree, int capacity){
+		if (tree == null){
+			throw new NullPointerException();
+		}
+		if (capacity < 1){
+			throw new IllegalArgumentException("The cache must hold at least one result.");
+		}
+		this.tree = tree;
+		this.capacity = capacity;
+		cache = new LinkedHashMap<Range, Set<T>>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Range, Set<T>> eldest){
+				if (size() > CachedKDTree.this.capacity){
+					++evictions;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * The bounds of a cached range search.
+	 */
+	private static final class Range {
+
+		final Comparable[] lowest;
+		final Comparable[] highest;
+		private final int hash;
+
+		Range(Comparable[] lowest, Comparable[] highest){
+			this.lowest = Arrays.copyOf(lowest, lowest.length);
+			this.highest = Arrays.copyOf(highest, highest.length);
+			hash = 31 * Arrays.hashCode(this.lowest) + Arrays.hashCode(this.highest);
+		}
+
+		@SuppressWarnings("unchecked")
+		boolean contains(Comparable[] keys){
+			for (int i=0; i < keys.length; ++i){
+				if (keys[i].compareTo(lowest[i]) < 0 || keys[i].compareTo(highest[i]) > 0){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object obj){
+			if (!(obj instanceof Range)){
+				return false;
+			}
+			Range other = (Range) obj;
+			return hash == other.hash && Arrays.equals(lowest, other.lowest) &&
+					Arrays.equals(highest, other.highest);
+		}
+
+		@Override
+		public int hashCode(){
+			return hash;
+		}
+	}
+
+	/**
+	 * Removes the cached results whose ranges contain keys. Has to be called
+	 * with the lock held.
+	 */
+	private void invalidate(Comparable[] keys){
+		Iterator<Range> ranges = cache.keySet().iterator();
+		while (ranges.hasNext()){
+			if (ranges.next().contains(keys)){
+				ranges.remove();
+				++invalidations;
+			}
+		}
+	}
+
+	/**
+	 * @see KDTree#size()
+	 */
+	public int size(){
+		synchronized (lock){
+			return tree.size();
+		}
+	}
+
+	/**
+	 * @see KDTree#dimensions()
+	 */
+	public int dimensions(){
+		return tree.dimensions();
+	}
+
+	/**
+	 * @see KDTree#get(Comparable[])
+	 */
+	public Set<T> get(Comparable[] keys){
+		synchronized (lock){
+			return tree.get(keys);
+		}
+	}
+
+	/**
+	 * @see KDTree#contains(Comparable[])
+	 */
+	public boolean contains(Comparable[] keys){
+		synchronized (lock){
+			return tree.contains(keys);
+		}
+	}
+
+	/**
+	 * Retrieves all the values that are within the given range, from the
+	 * cache if the same range has been searched since it was last changed.
+	 *
+	 * @return
+	 * An unmodifiable set containing all the values within the range.
+	 *
+	 * @see KDTree#range(Comparable[], Comparable[])
+	 */
+	public Set<T> range(Comparable[] lowest, Comparable[] highest){
+		synchronized (lock){
+			if (lowest == null || highest == null){
+				throw new NullPointerException();
+			}
+			Range range = new Range(lowest, highest);
+			Set<T> values = cache.get(range);
+			if (values != null){
+				++hits;
+				return values;
+			}
+
+			++misses;
+			values = Collections.unmodifiableSet(tree.range(range.lowest, range.highest));
+			cache.put(range, values);
+			return values;
+		}
+	}
+
+	/**
+	 * @see KDTree#rangeCount(Comparable[], Comparable[])
+	 */
+	public long rangeCount(Comparable[] lowest, Comparable[] highest){
+		synchronized (lock){
+			return tree.rangeCount(lowest, highest);
+		}
+	}
+
+	/**
+	 * @see KDTree#nearest(Comparable[], int)
+	 */
+	public List<T> nearest(Comparable[] keys, int k){
+		synchronized (lock){
+			return tree.nearest(keys, k);
+		}
+	}
+
+	/**
+	 * @see KDTree#nearest(Comparable[], int, DistanceMetric)
+	 */
+	public List<T> nearest(Comparable[] keys, int k, DistanceMetric metric){
+		synchronized (lock){
+			return tree.nearest(keys, k, metric);
+		}
+	}
+
+	/**
+	 * Inserts the key-value pair in the tree and invalidates the cached
+	 * results whose ranges contain keys.
+	 *
+	 * @see KDTree#insert(Comparable[], Object)
+	 */
+	public void insert(Comparable[] keys, T value){
+		synchronized (lock){
+			int oldSize = tree.size();
+			tree.insert(keys, value);
+			if (tree.size() != oldSize){
+				invalidate(keys);
+			}
+		}
+	}
+
+	/**
+	 * Removes the key-value pair from the tree and invalidates the cached
+	 * results whose ranges contain keys.
+	 *
+	 * @see KDTree#remove(Comparable[], Object)
+	 */
+	public boolean remove(Comparable[] keys, T value){
+		synchronized (lock){
+			boolean removed = tree.remove(keys, value);
+			if (removed){
+				invalidate(keys);
+			}
+			return removed;
+		}
+	}
+
+	/**
+	 * Removes all values with the supplied keys from the tree and
+	 * invalidates the cached results whose ranges contain keys.
+	 *
+	 * @see KDTree#removeAll(Comparable[])
+	 */
+	public Set<T> removeAll(Comparable[] keys){
+		synchronized (lock){
+			Set<T> removed = tree.removeAll(keys);
+			if (!removed.isEmpty()){
+				invalidate(keys);
+			}
+			return removed;
+		}
+	}
+
+	/**
+	 * Removes all cached results.
+	 */
+	public void clearCache(){
+		synchronized (lock){
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of cached results.
+	 *
+	 * @return
+	 * - the number of cached results.
+	 */
+	public int cacheSize(){
+		synchronized (lock){
+			return cache.size();
+		}
+	}
+
+	/**
+	 * Returns the number of range searches answered from the cache.
+	 *
+	 * @return
+	 * - the number of cache hits.
+	 */
+	public long hitCount(){
+		synchronized (lock){
+			return hits;
+		}
+	}
+
+	/**
+	 * Returns the number of range searches that had to search the tree.
+	 *
+	 * @return
+	 * - the number of cache misses.
+	 */
+	public long missCount(){
+		synchronized (lock){
+			return misses;
+		}
+	}
+
+	/**
+	 * Returns the number of results removed to make room for new results.
+	 *
+	 * @return
+	 * - the number of evictions.
+	 */
+	public long evictionCount(){
+		synchronized (lock){
+			return evictions;
+		}
+	}
+
+	/**
+	 * Returns the number of results removed because a change to the tree
+	 * made them stale.
+	 *
+	 * @return
+	 * - the number of invalidations.
+	 */
+	public long invalidationCount(){
+		synchronized (lock){
+			return invalidations;
+		}
+	}
+
+}
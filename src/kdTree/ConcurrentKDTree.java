@@ -0,0 +1,483 @@
+package kdTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A thread-safe KD-Tree where reads never block. Every change is made by
+ * copying the nodes on the path from the root down to the changed node, so
+ * nodes that have been published are never changed. After each change a new
+ * read-only snapshot of the tree is published through a volatile field.
+ *
+ * A read uses the snapshot that was current when it started and sees a
+ * consistent tree, even if changes are made during the read. Changes are
+ * serialised by a lock that readers never take.
+ *
+ * The whole tree can be rebuilt into a balanced tree without blocking
+ * readers or writers. The rebuilt tree is built from a snapshot while the
+ * changes made meanwhile are logged. The logged changes are then replayed
+ * on the rebuilt tree, which is published in place of the old one. A
+ * RebalancePolicy can be set to rebuild the tree in the background whenever
+ * its shape calls for it.
+ *
+ * The same restrictions as for KDTree apply.
+ *
+ * @param <T>
+ * - the type of the values in the kd-tree.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+public class ConcurrentKDTree<T> {
+
+	/**
+	 * The least number of changes between two checks of the rebalance
+	 * policy. The tree is checked after at most every size / 16 changes
+	 * otherwise, so that the checks cost a constant per change.
+	 */
+	static final int MIN_CHECK_INTERVAL = 1024;
+
+	private final Object writeLock = new Object();
+
+	// Only used while holding the write lock.
+	private KDTree<T> tree;
+
+	private volatile KDTree<T> snapshot;
+
+	// The changes made during a rebuild, replayed on the rebuilt tree. Null
+	// while no rebuild is running. Only used while holding the write lock.
+	private List<Change<T>> pendingChanges = null;
+
+	// Only used while holding the write lock.
+	private RebalancePolicy rebalancePolicy = null;
+	private Executor rebalanceExecutor = null;
+	private int changesSinceCheck = 0;
+	private boolean checkScheduled = false;
+	int minCheckInterval = MIN_CHECK_INTERVAL;
+
+	/**
+	 * A change made to the tree during a rebuild.
+	 */
+	private interface Change<T> {
+		void applyTo(KDTree<T> tree);
+	}
+
+	/**
+	 * Creates a new ConcurrentKDTree object with the supplied number of
+	 * dimensions.
+	 *
+	 * @param dimensions
+	 * - the number of dimensions of the KD-Tree. Can not be less than 2.
+	 *
+	 * @throws IllegalArgumentException if dimensions is less than 2.
+	 */
+	public ConcurrentKDTree(int dimensions){
+		tree = new KDTree<T>(dimensions);
+		tree.copyOnWrite = true;
+		snapshot = tree.snapshot();
+	}
+
+	/**
+	 * Returns a read-only snapshot of the current content of the KD-Tree.
+	 * Later changes to the tree aren't visible in the snapshot. Taking a
+	 * snapshot doesn't copy anything.
+	 *
+	 * @return
+	 * - a KDTree that throws UnsupportedOperationException if it's changed.
+	 */
+	public KDTree<T> snapshot(){
+		return snapshot;
+	}
+
+	/**
+	 * @see KDTree#size()
+	 */
+	public int size(){
+		return snapshot.size();
+	}
+
+	/**
+	 * @see KDTree#dimensions()
+	 */
+	public int dimensions(){
+		return snapshot.dimensions();
+	}
+
+	/**
+	 * @see KDTree#get(Comparable[])
+	 */
+	public Set<T> get(Comparable[] keys){
+		return snapshot.get(keys);
+	}
+
+	/**
+	 * @see KDTree#contains(Comparable[])
+	 */
+	public boolean contains(Comparable[] keys){
+		return snapshot.contains(keys);
+	}
+
+	/**
+	 * @see KDTree#range(Comparable[], Comparable[])
+	 */
+	public Set<T> range(Comparable[] lowest, Comparable[] highest){
+		return snapshot.range(lowest, highest);
+	}
+
+	/**
+	 * @see KDTree#rangeCount(Comparable[], Comparable[])
+	 */
+	public long rangeCount(Comparable[] lowest, Comparable[] highest){
+		return snapshot.rangeCount(lowest, highest);
+	}
+	
+	/**
+	 * @see KDTree#rangeAggregate(Comparable[], Comparable[])
+	 */
+	public double rangeAggregate(Comparable[] lowest, Comparable[] highest){
+		return snapshot.rangeAggregate(lowest, highest);
+	}
+	
+	/**
+	 * @see KDTree#nearest(Comparable[], int)
+	 */
+	public List<T> nearest(Comparable[] keys, int k){
+		return snapshot.nearest(keys, k);
+	}
+
+	/**
+	 * @see KDTree#nearest(Comparable[], int, DistanceMetric)
+	 */
+	public List<T> nearest(Comparable[] keys, int k, DistanceMetric metric){
+		return snapshot.nearest(keys, k, metric);
+	}
+
+	/**
+	 * @see KDTree#batchNearest(List, int)
+	 */
+	public List<List<T>> batchNearest(List<Comparable[]> queries, int k){
+		return snapshot.batchNearest(queries, k);
+	}
+
+	/**
+	 * @see KDTree#batchNearest(List, int, DistanceMetric, ForkJoinPool)
+	 */
+	public List<List<T>> batchNearest(List<Comparable[]> queries, int k, DistanceMetric metric, ForkJoinPool pool){
+		return snapshot.batchNearest(queries, k, metric, pool);
+	}
+
+	/**
+	 * @see KDTree#approximateNearest(Comparable[], int, DistanceMetric, double, int)
+	 */
+	public NearestResult<T> approximateNearest(Comparable[] keys, int k, DistanceMetric metric, 
+			double epsilon, int maxVisits){
+		return snapshot.approximateNearest(keys, k, metric, epsilon, maxVisits);
+	}
+
+	/**
+	 * @see KDTree#withinRadius(Comparable[], double)
+	 */
+	public Set<T> withinRadius(Comparable[] center, double radius){
+		return snapshot.withinRadius(center, radius);
+	}
+
+	/**
+	 * @see KDTree#withinRadius(Comparable[], double, DistanceMetric)
+	 */
+	public Set<T> withinRadius(Comparable[] center, double radius, DistanceMetric metric){
+		return snapshot.withinRadius(center, radius, metric);
+	}
+
+	/**
+	 * @see KDTree#neighboursWithinRadius(Comparable[], double, DistanceMetric)
+	 */
+	public List<Neighbour<T>> neighboursWithinRadius(Comparable[] center, double radius, DistanceMetric metric){
+		return snapshot.neighboursWithinRadius(center, radius, metric);
+	}
+
+	/**
+	 * @see KDTree#insert(Comparable[], Object)
+	 */
+	public void insert(Comparable[] keys, final T value){
+		synchronized (writeLock){
+			tree.insert(keys, value);
+			if (pendingChanges != null){
+				// Copied, as the caller may reuse the array once insert returns.
+				final Comparable[] loggedKeys = Arrays.copyOf(keys, keys.length);
+				pendingChanges.add(new Change<T>(){
+					@Override
+					public void applyTo(KDTree<T> tree){
+						tree.insert(loggedKeys, value);
+					}
+				});
+			}
+			changed();
+		}
+	}
+
+	/**
+	 * @see KDTree#remove(Comparable[], Object)
+	 */
+	public boolean remove(Comparable[] keys, final T value){
+		synchronized (writeLock){
+			boolean removed = tree.remove(keys, value);
+			if (removed){
+				if (pendingChanges != null){
+					final Comparable[] loggedKeys = Arrays.copyOf(keys, keys.length);
+					pendingChanges.add(new Change<T>(){
+						@Override
+						public void applyTo(KDTree<T> tree){
+							tree.remove(loggedKeys, value);
+						}
+					});
+				}
+				changed();
+			}
+			return removed;
+		}
+	}
+
+	/**
+	 * @see KDTree#removeAll(Comparable[])
+	 */
+	public Set<T> removeAll(Comparable[] keys){
+		synchronized (writeLock){
+			Set<T> removed = tree.removeAll(keys);
+			if (!removed.isEmpty()){
+				if (pendingChanges != null){
+					final Comparable[] loggedKeys = Arrays.copyOf(keys, keys.length);
+					pendingChanges.add(new Change<T>(){
+						@Override
+						public void applyTo(KDTree<T> tree){
+							tree.removeAll(loggedKeys);
+						}
+					});
+				}
+				changed();
+			}
+			return removed;
+		}
+	}
+
+	/**
+	 * @see KDTree#setRebuildThreshold(double)
+	 */
+	public void setRebuildThreshold(final double threshold){
+		synchronized (writeLock){
+			tree.setRebuildThreshold(threshold);
+			if (pendingChanges != null){
+				pendingChanges.add(new Change<T>(){
+					@Override
+					public void applyTo(KDTree<T> tree){
+						tree.setRebuildThreshold(threshold);
+					}
+				});
+			}
+			// Published, as a rebuild takes its settings from the snapshot.
+			snapshot = tree.snapshot();
+		}
+	}
+
+	/**
+	 * @see KDTree#setAggregation(Aggregation)
+	 */
+	public void setAggregation(final Aggregation<? super T> aggregation){
+		synchronized (writeLock){
+			tree.setAggregation(aggregation);
+			if (pendingChanges != null){
+				pendingChanges.add(new Change<T>(){
+					@Override
+					public void applyTo(KDTree<T> tree){
+						tree.setAggregation(aggregation);
+					}
+				});
+			}
+			snapshot = tree.snapshot();
+		}
+	}
+	
+	/**
+	 * @see KDTree#setBoundingBoxes(boolean)
+	 */
+	public void setBoundingBoxes(final boolean boundingBoxes){
+		synchronized (writeLock){
+			tree.setBoundingBoxes(boundingBoxes);
+			if (pendingChanges != null){
+				pendingChanges.add(new Change<T>(){
+					@Override
+					public void applyTo(KDTree<T> tree){
+						tree.setBoundingBoxes(boundingBoxes);
+					}
+				});
+			}
+			snapshot = tree.snapshot();
+		}
+	}
+	
+	/**
+	 * @see KDTree#setQueryListener(QueryListener)
+	 */
+	public void setQueryListener(final QueryListener listener){
+		synchronized (writeLock){
+			tree.setQueryListener(listener);
+			if (pendingChanges != null){
+				pendingChanges.add(new Change<T>(){
+					@Override
+					public void applyTo(KDTree<T> tree){
+						tree.setQueryListener(listener);
+					}
+				});
+			}
+			snapshot = tree.snapshot();
+		}
+	}
+
+	/**
+	 * @see KDTree#setBalanceFactor(double)
+	 */
+	public void setBalanceFactor(final double balanceFactor){
+		synchronized (writeLock){
+			tree.setBalanceFactor(balanceFactor);
+			if (pendingChanges != null){
+				pendingChanges.add(new Change<T>(){
+					@Override
+					public void applyTo(KDTree<T> tree){
+						tree.setBalanceFactor(balanceFactor);
+					}
+				});
+			}
+			// Published, as a rebuild takes its settings from the snapshot.
+			snapshot = tree.snapshot();
+		}
+	}
+
+	/**
+	 * @see KDTree#statistics()
+	 */
+	public TreeStatistics statistics(){
+		return snapshot.statistics();
+	}
+
+	/**
+	 * Sets the policy that decides when the tree is rebuilt, checked in
+	 * the common fork/join pool.
+	 *
+	 * @see #setRebalancePolicy(RebalancePolicy, Executor)
+	 */
+	public void setRebalancePolicy(RebalancePolicy policy){
+		setRebalancePolicy(policy, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Sets the policy that decides when the tree is rebuilt. The policy is
+	 * checked in the background as the tree changes, with the statistics of
+	 * the current snapshot, and the tree is rebuilt in the background when
+	 * the policy calls for it.
+	 *
+	 * @param policy
+	 * - the policy, or null to stop checking.
+	 * @param executor
+	 * - runs the checks and the rebuilds.
+	 *
+	 * @throws NullPointerException if a policy is set without an executor.
+	 *
+	 * @see RebalancePolicies
+	 * @see #rebuild()
+	 */
+	public void setRebalancePolicy(RebalancePolicy policy, Executor executor){
+		if (policy != null && executor == null){
+			throw new NullPointerException();
+		}
+		synchronized (writeLock){
+			rebalancePolicy = policy;
+			rebalanceExecutor = executor;
+			changesSinceCheck = 0;
+		}
+	}
+
+	/**
+	 * Publishes the changed tree and schedules a check of the rebalance
+	 * policy if enough changes have been made since the last check. Only
+	 * called while holding the write lock.
+	 */
+	private void changed(){
+		snapshot = tree.snapshot();
+
+		if (rebalancePolicy == null || checkScheduled || pendingChanges != null){
+			return;
+		}
+		if (++changesSinceCheck < Math.max(minCheckInterval, tree.size() / 16)){
+			return;
+		}
+		changesSinceCheck = 0;
+		checkScheduled = true;
+
+		final RebalancePolicy policy = rebalancePolicy;
+		try {
+			rebalanceExecutor.execute(new Runnable(){
+				@Override
+				public void run(){
+					try {
+						if (policy.shouldRebuild(statistics())){
+							rebuild();
+						}
+					} finally {
+						synchronized (writeLock){
+							checkScheduled = false;
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e){
+			checkScheduled = false;
+		}
+	}
+
+	/**
+	 * Rebuilds the whole tree into a balanced tree without removed nodes.
+	 * The tree is rebuilt from the current snapshot in the calling thread,
+	 * while reads and changes go on. The changes made in the meantime are
+	 * then replayed on the rebuilt tree under the write lock, and the
+	 * rebuilt tree is published.
+	 *
+	 * @return
+	 * - true if the tree was rebuilt, false if another rebuild was already
+	 * running.
+	 *
+	 * @see KDTree#rebuild()
+	 */
+	public boolean rebuild(){
+		KDTree<T> base;
+		synchronized (writeLock){
+			if (pendingChanges != null){
+				return false;
+			}
+			base = snapshot;
+			pendingChanges = new ArrayList<Change<T>>();
+		}
+
+		KDTree<T> rebuilt = null;
+		try {
+			rebuilt = base.rebuiltCopy();
+		} finally {
+			synchronized (writeLock){
+				if (rebuilt != null){
+					for (Change<T> change : pendingChanges){
+						change.applyTo(rebuilt);
+					}
+					rebuilt.copyOnWrite = true;
+					tree = rebuilt;
+					snapshot = tree.snapshot();
+				}
+				pendingChanges = null;
+			}
+		}
+		return true;
+	}
+
+}
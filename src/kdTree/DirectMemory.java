@@ -0,0 +1,70 @@
+package kdTree;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg 
+ * 
+ * 
+ * DirectMemory frees the memory of direct buffers right away instead of 
+ * waiting for the buffers to be garbage collected. There is no public API 
+ * for it, so the internal cleaner is called through reflection: through 
+ * Unsafe.invokeCleaner on Java 9 and later and through the cleaner of the 
+ * buffer on Java 8. If neither can be reached, the memory is left to the 
+ * garbage collector.
+ */
+final class DirectMemory {
+	
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+	
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafe = theUnsafe.get(null);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException e){
+			// Java 8, or no access to Unsafe.
+		} catch (RuntimeException e){
+			// Reflection denied.
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+	
+	private DirectMemory(){}
+	
+	/**
+	 * Frees the memory of a direct buffer. The buffer may not be used 
+	 * afterwards, not even through views of it.
+	 */
+	static void free(ByteBuffer buffer){
+		if (buffer == null || !buffer.isDirect()){
+			return;
+		}
+		try {
+			if (INVOKE_CLEANER != null){
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+			} else {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null){
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch (ReflectiveOperationException e){
+			// Left to the garbage collector.
+		} catch (RuntimeException e){
+			// Left to the garbage collector.
+		}
+	}
+	
+}
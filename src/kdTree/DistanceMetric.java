@@ -0,0 +1,79 @@
+package kdTree;
+
+/**
+ * A DistanceMetric measures the distance between two keys in a KD-Tree. It's
+ * used by the nearest neighbour search, both to rank the found values and to
+ * decide which subtrees that can't contain any closer values.
+ * 
+ * The distance along a single dimension may never be greater than the
+ * distance between two keys that differ in that dimension, since it's used to
+ * skip the subtrees on the far side of a splitting plane.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ */
+public interface DistanceMetric {
+	
+	/**
+	 * Returns the distance between two keys.
+	 * 
+	 * @param lhs
+	 * - one of the keys. The array has to be as long as the number of 
+	 * dimensions in the tree.
+	 * @param rhs
+	 * - the other key. The array has to be as long as the number of 
+	 * dimensions in the tree.
+	 * 
+	 * @return
+	 * - the distance between lhs and rhs. Can not be negative.
+	 */
+	double distance(Comparable[] lhs, Comparable[] rhs);
+	
+	/**
+	 * Returns the distance between two keys along a single dimension.
+	 * 
+	 * @param lhs
+	 * - one of the keys in the dimension.
+	 * @param rhs
+	 * - the other key in the dimension.
+	 * @param dimension
+	 * - the dimension of the keys.
+	 * 
+	 * @return
+	 * - the distance between lhs and rhs in the dimension. Can not be 
+	 * negative and can not be greater than the distance between any two 
+	 * keys having lhs and rhs in the dimension.
+	 */
+	double axisDistance(Comparable lhs, Comparable rhs, int dimension);
+	
+	/**
+	 * Returns a lower bound of the distance between keys and any key within 
+	 * a bounding box. The default is the greatest distance along a single 
+	 * dimension to the nearest side of the box, which assumes that the 
+	 * distance along a dimension grows the farther away the keys are.
+	 * 
+	 * @param keys
+	 * - the keys to measure the distance from.
+	 * @param boxMin
+	 * - the least keys of the box in every dimension.
+	 * @param boxMax
+	 * - the greatest keys of the box in every dimension.
+	 * 
+	 * @return
+	 * - the bound, which is 0 if keys are within the box. Can not be 
+	 * greater than the distance to any key within the box.
+	 */
+	@SuppressWarnings("unchecked")
+	default double boxDistance(Comparable[] keys, Comparable[] boxMin, Comparable[] boxMax){
+		double bound = 0;
+		for (int d=0; d < keys.length; ++d){
+			if (keys[d].compareTo(boxMin[d]) < 0){
+				bound = Math.max(bound, axisDistance(keys[d], boxMin[d], d));
+			} else if (keys[d].compareTo(boxMax[d]) > 0){
+				bound = Math.max(bound, axisDistance(keys[d], boxMax[d], d));
+			}
+		}
+		return bound;
+	}
+	
+}
@@ -0,0 +1,123 @@
+package kdTree;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A KD-Tree with keys of the primitive type double. It has the same contract
+ * as KDTree, but the keys are stored in double arrays and compared directly
+ * instead of through Comparable.
+ *
+ * The arrays containing the keys are required to be the same length as the
+ * number of dimensions. Keys can not be NaN, since NaN can't be ordered.
+ * Note that 0.0 and -0.0 are treated as the same key.
+ *
+ * It's recommended to implement equals for any value-objects, since it's used
+ * to avoid duplicate key-value pairs.
+ *
+ * @param <T>
+ * - the type of the values in the kd-tree.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+public class DoubleKDTree<T> extends PrimitiveKDTree<T, double[]> {
+
+	/**
+	 * Creates a new DoubleKDTree object with the supplied number of dimensions.
+	 *
+	 * @param dimensions
+	 * - the number of dimensions of the KD-Tree. Can not be less than 2.
+	 *
+	 * @throws IllegalArgumentException if dimensions is less than 2.
+	 */
+	public DoubleKDTree(int dimensions){
+		super(dimensions, PrimitiveKeys.DOUBLES);
+	}
+
+	/**
+	 * Finds and returns all values that have the supplied array keys as key.
+	 *
+	 * @param keys
+	 * - the array containing the keys to search for.
+	 *
+	 * @return
+	 * - a set containing all values with the array keys as key.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree or if any of the keys is NaN.
+	 */
+	public Set<T> get(double[] keys){
+		Set<T> retValue = new HashSet<T>();
+		find(keys, retValue);
+		return retValue;
+	}
+
+	/**
+	 * Returns true if the KD-Tree contains an element with the all the keys
+	 * in the keys array.
+	 *
+	 * @param keys
+	 * - the keys to search for in the KD-Tree.
+	 *
+	 * @return
+	 * - true if at least one element in the tree contains the supplied key.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree or if any of the keys is NaN.
+	 */
+	public boolean contains(double[] keys){
+		return find(keys, null);
+	}
+
+	/**
+	 * Inserts the key-value pair in the kd-tree. Two different values may have
+	 * identical keys. However, two equal values may not have identical keys and
+	 * a key-value pair will not be added to the KD-tree in such cases.
+	 * Equality is checked by the equals method.
+	 *
+	 * @param keys
+	 * - the keys with which to search for the value. Keys has to be as long as
+	 * the number of dimensions in the tree.
+	 *
+	 * @param value
+	 * - the value to insert in the tree.
+	 *
+	 * @throws NullPointerException if keys or value are null.
+	 * @throws IllegalArgumentException if the length of keys isn't the same
+	 * as the kd-tree's dimension size or if any of the keys is NaN.
+	 */
+	public void insert(double[] keys, T value){
+		add(keys, value);
+	}
+
+	/**
+	 * Retrieves all the values that are within the given range.
+	 * The range is kept between values that are found at the same index in the
+	 * argument arrays highest and lowest. Both bounds are inclusive. A range
+	 * where highest is less than lowest in only some of the dimensions
+	 * contains no values.
+	 *
+	 * @param lowest
+	 * An array of the lower bound values.
+	 *
+	 * @param highest
+	 * An array of the higher bound values.
+	 *
+	 * @return
+	 * A set containing all the values within the range. If the tree is empty
+	 * an empty set is returned.
+	 *
+	 * @throws NullPointerException if any of the arguments are null.
+	 *
+	 * @throws IllegalArgumentException if the argument arrays have
+	 * to few or many elements, if they contain NaN or if every key in
+	 * highest is less than the key in lowest.
+	 */
+	public Set<T> range(double[] lowest, double[] highest){
+		return findRange(lowest, highest);
+	}
+
+}
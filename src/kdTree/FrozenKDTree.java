@@ -0,0 +1,350 @@
+package kdTree;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An immutable KD-Tree that is built once and then only searched. The tree is
+ * balanced and stored without any node objects or child pointers. It's laid
+ * out in level order in flat arrays, so the children of the node at index i
+ * are found at the indices 2i + 1 and 2i + 2.
+ *
+ * The keys are stored dimension by dimension in a single array, the key of
+ * the node at index i in dimension d is found at d * size + i. The values are
+ * stored in a parallel array.
+ *
+ * The same restrictions on keys as for KDTree apply.
+ *
+ * @param <T>
+ * - the type of the values in the kd-tree.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+public final class FrozenKDTree<T> {
+
+	private final int DIMENSIONS;
+	private final int size;
+	private final int height;
+
+	private final Comparable[] keys;
+	private final Object[] values;
+
+	/**
+	 * Creates a frozen copy of the supplied tree. Later changes to the
+	 * supplied tree don't affect the frozen tree.
+	 *
+	 * @param tree
+	 * - the tree to copy.
+	 *
+	 * @throws NullPointerException if tree is null.
+	 */
+	public FrozenKDTree(KDTree<T> tree){
+		this(tree.dimensions(), collectNodes(tree));
+	}
+
+	/**
+	 * Creates a frozen tree containing the supplied key-value pairs. The key
+	 * at an index in keys is paired with the value at the same index in
+	 * values. Two equal values with identical keys are only added once.
+	 *
+	 * @param dimensions
+	 * - the number of dimensions of the KD-Tree. Can not be less than 2.
+	 * @param keys
+	 * - the keys of the key-value pairs. Every array has to be as long as the
+	 * number of dimensions.
+	 * @param values
+	 * - the values of the key-value pairs.
+	 *
+	 * @throws IllegalArgumentException if dimensions is less than 2, if keys
+	 * and values aren't the same size or if the length of any of the keys
+	 * isn't the same as the number of dimensions.
+	 * @throws NullPointerException if keys, values or any of their elements
+	 * are null.
+	 */
+	public FrozenKDTree(int dimensions, List<Comparable[]> keys, List<T> values){
+		this(dimensions, uniqueNodes(dimensions, keys, values));
+	}
+
+	private FrozenKDTree(int dimensions, Node<T>[] nodes){
+		if (dimensions < 2){
+			throw new IllegalArgumentException("Less than two dimensions makes this data structure useless.");
+		}
+
+		DIMENSIONS = dimensions;
+		size = nodes.length;
+		height = 32 - Integer.numberOfLeadingZeros(size);
+		keys = new Comparable[size * DIMENSIONS];
+		values = new Object[size];
+
+		layOut(new TreeBuilder<T>(DIMENSIONS), nodes, 0, size, 0, 0);
+	}
+
+	private static <T> Node<T>[] uniqueNodes(int dimensions, List<Comparable[]> keys, List<T> values){
+		if (dimensions < 2){
+			throw new IllegalArgumentException("Less than two dimensions makes this data structure useless.");
+		}
+		TreeBuilder<T> builder = new TreeBuilder<T>(dimensions);
+		Node<T>[] nodes = builder.createNodes(keys, values);
+		int unique = builder.removeDuplicates(nodes);
+		return Arrays.copyOf(nodes, unique);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Node<T>[] collectNodes(KDTree<T> tree){
+		Node<T>[] nodes = new Node[tree.size()];
+		int count = 0;
+
+		Node<T>[] stack = new Node[16];
+		int stackSize = 0;
+		if (tree.getRoot() != null){
+			stack[stackSize++] = tree.getRoot();
+		}
+		while (stackSize > 0){
+			Node<T> currNode = stack[--stackSize];
+			if (!currNode.deleted){
+				nodes[count++] = currNode;
+			}
+
+			if (stackSize + 2 > stack.length){
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			if (currNode.leftChild != null){
+				stack[stackSize++] = currNode.leftChild;
+			}
+			if (currNode.rightChild != null){
+				stack[stackSize++] = currNode.rightChild;
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Places the nodes in [from, to) in the subtree rooted at index. The
+	 * subtree is given the shape of a complete binary tree, and its root is
+	 * the node whose position in the sorted order matches the size of a
+	 * complete left subtree.
+	 */
+	private void layOut(TreeBuilder<T> builder, Node<T>[] nodes, int from, int to, int index, int dimension){
+		if (from >= to){
+			return;
+		}
+
+		int median = from + leftSubtreeSize(to - from);
+		builder.select(nodes, from, to - 1, median, dimension);
+
+		for (int d=0; d < DIMENSIONS; ++d){
+			keys[d * size + index] = nodes[median].keys[d];
+		}
+		values[index] = nodes[median].value;
+
+		int nextDimension = builder.incrementDimension(dimension);
+		layOut(builder, nodes, from, median, 2 * index + 1, nextDimension);
+		layOut(builder, nodes, median + 1, to, 2 * index + 2, nextDimension);
+	}
+
+	/**
+	 * Returns the size of the left subtree of a complete binary tree with
+	 * the supplied number of nodes.
+	 */
+	static int leftSubtreeSize(int nodes){
+		int levels = 31 - Integer.numberOfLeadingZeros(nodes);
+		if (levels == 0){
+			return 0;
+		}
+		int fullLevels = (1 << (levels - 1)) - 1;
+		int lastLevel = nodes - ((1 << levels) - 1);
+		return fullLevels + Math.min(lastLevel, 1 << (levels - 1));
+	}
+
+	/**
+	 * Returns the size of the KD-Tree. The size is equal to the number of
+	 * elements in the KD-Tree.
+	 *
+	 * @return
+	 * - the size of the KD-Tree.
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns the number of dimensions of the KD-Tree.
+	 *
+	 * @return
+	 * - the number of dimensions.
+	 */
+	public int dimensions(){
+		return DIMENSIONS;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int compareKey(int index, int dimension, Comparable key){
+		return keys[dimension * size + index].compareTo(key);
+	}
+
+	private boolean isInRange(int index, Comparable[] lowest, Comparable[] highest){
+		for (int d=0; d < DIMENSIONS; ++d){
+			if (compareKey(index, d, lowest[d]) < 0 || compareKey(index, d, highest[d]) > 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void checkKeys(Comparable[] keys){
+		if (keys == null){
+			throw new NullPointerException();
+		}
+		if (keys.length != DIMENSIONS){
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * Finds and returns all values that have the supplied array keys as key.
+	 *
+	 * @param keys
+	 * - the array containing the keys to search for. The array have to be an
+	 * array of Comparable.
+	 *
+	 * @return
+	 * - a set containing all values with the array keys as key.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree.
+	 */
+	public Set<T> get(Comparable[] keys){
+		checkKeys(keys);
+		Set<T> retValue = new HashSet<T>();
+		search(keys, keys, retValue, false);
+		return retValue;
+	}
+
+	/**
+	 * Returns true if the KD-Tree contains an element with the all the keys
+	 * in the keys array.
+	 *
+	 * @param keys
+	 * - the keys to search for in the KD-Tree.
+	 *
+	 * @return
+	 * - true if at least one element in the tree contains the supplied key.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree.
+	 */
+	public boolean contains(Comparable[] keys){
+		checkKeys(keys);
+		return search(keys, keys, null, true);
+	}
+
+	/**
+	 * Retrieves all the values that are within the given range.
+	 * The range is kept between values that are found at the same index in the
+	 * argument arrays highest and lowest. Both bounds are inclusive. A range
+	 * where highest is less than lowest in only some of the dimensions
+	 * contains no values.
+	 *
+	 * @param lowest
+	 * An array of the lower bound values.
+	 *
+	 * @param highest
+	 * An array of the higher bound values.
+	 *
+	 * @return
+	 * A set containing all the values within the range.
+	 *
+	 * @throws NullPointerException if any of the arguments are null.
+	 *
+	 * @throws IllegalArgumentException if the argument arrays have to few or
+	 * many elements or if every key in highest is less than the key in lowest.
+	 */
+	public Set<T> range(Comparable[] lowest, Comparable[] highest){
+		if (lowest == null || highest == null){
+			throw new NullPointerException();
+		}
+		if (lowest.length != DIMENSIONS || highest.length != DIMENSIONS){
+			throw new IllegalArgumentException("The input arrays must have as many elements as there are dimensions.");
+		}
+		if (isInverted(lowest, highest)){
+			throw new IllegalArgumentException("The keys in highest can't be less than lowest.");
+		}
+
+		Set<T> correctVals = new HashSet<T>();
+		search(lowest, highest, correctVals, false);
+		return correctVals;
+	}
+
+	/**
+	 * Visits all nodes within the range and adds their values to found. Keys
+	 * equal to a splitting key can be found on both sides of it, so both
+	 * subtrees are searched when the range contains the splitting key.
+	 *
+	 * @return
+	 * - true if any node was found within the range.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean search(Comparable[] lowest, Comparable[] highest, Set<T> found, boolean stopAtFirst){
+		if (size == 0){
+			return false;
+		}
+
+		// A depth first search never holds more than one pending node per
+		// level plus the node being expanded.
+		int[] indexStack = new int[height + 1];
+		int[] dimensionStack = new int[height + 1];
+		int stackSize = 0;
+		indexStack[stackSize] = 0;
+		dimensionStack[stackSize] = 0;
+		++stackSize;
+
+		boolean anyFound = false;
+		while (stackSize > 0){
+			--stackSize;
+			int index = indexStack[stackSize];
+			int dimension = dimensionStack[stackSize];
+
+			if (isInRange(index, lowest, highest)){
+				if (stopAtFirst){
+					return true;
+				}
+				found.add((T) values[index]);
+				anyFound = true;
+			}
+
+			int nextDimension = dimension + 1 < DIMENSIONS ? dimension + 1 : 0;
+			int left = 2 * index + 1;
+			int right = left + 1;
+			if (right < size && compareKey(index, dimension, highest[dimension]) <= 0){
+				indexStack[stackSize] = right;
+				dimensionStack[stackSize] = nextDimension;
+				++stackSize;
+			}
+			if (left < size && compareKey(index, dimension, lowest[dimension]) >= 0){
+				indexStack[stackSize] = left;
+				dimensionStack[stackSize] = nextDimension;
+				++stackSize;
+			}
+		}
+		return anyFound;
+	}
+
+	/**
+	 * Returns true if every key in highest is less than the key in lowest.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean isInverted(Comparable[] lowest, Comparable[] highest){
+		for (int d=0; d < DIMENSIONS; ++d){
+			if (highest[d].compareTo(lowest[d]) >= 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,39 @@
+package kdTree;
+
+/**
+ * A JoinVisitor is called once for every pair of values found by a spatial
+ * join of two KD-Trees. It decides if the join should go on, which makes it
+ * possible to stop as soon as enough pairs have been found.
+ * 
+ * @param <T>
+ * - the type of the values in the left tree of the join.
+ * @param <U>
+ * - the type of the values in the right tree of the join.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ * 
+ * @see SpatialJoin
+ */
+public interface JoinVisitor<T, U> {
+	
+	/**
+	 * Called for every pair found by the join.
+	 * 
+	 * @param lhsKeys
+	 * - the keys of the value from the left tree. The array belongs to the 
+	 * tree and may not be changed or kept after the call.
+	 * @param lhsValue
+	 * - the value from the left tree.
+	 * @param rhsKeys
+	 * - the keys of the value from the right tree. The array belongs to the 
+	 * tree and may not be changed or kept after the call.
+	 * @param rhsValue
+	 * - the value from the right tree.
+	 * 
+	 * @return
+	 * - true if the join should go on, false if it should stop.
+	 */
+	boolean visit(Comparable[] lhsKeys, T lhsValue, Comparable[] rhsKeys, U rhsValue);
+	
+}
@@ -1,9 +1,22 @@
 package kdTree;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The tree sorts values by K number of keys, also referred to as dimensions. The 
@@ -30,8 +43,33 @@ public class KDTree<T> {
 	private final int DIMENSIONS;
 	private Node<T> root;
 	
+	/**
+	 * Subtrees with fewer nodes than this are searched sequentially by the 
+	 * parallel searches.
+	 */
+	static final int PARALLEL_CUTOFF = 4096;
+	
 	private int size = 0;
 	
+	private double rebuildThreshold = 0.5;
+	private double balanceFactor = 1;
+	
+	// Set for trees that share nodes with snapshots of themselves. Nodes 
+	// are then copied before they are changed.
+	boolean copyOnWrite = false;
+	
+	// Set for snapshots, which may not be changed at all.
+	private boolean readOnly = false;
+	
+	// The aggregates of the nodes are only kept up to date when set.
+	private Aggregation<? super T> aggregation = null;
+	
+	// The bounding boxes of the nodes are only kept up to date when set.
+	private boolean boundingBoxes = false;
+	
+	// The searches only count their work when set.
+	private QueryListener queryListener = null;
+	
 	/**
 	 * Creates a new KDTree object with the supplied number of dimensions.
 	 * 
@@ -47,6 +85,74 @@ public class KDTree<T> {
 		
 		DIMENSIONS = dimensions;
 	}
+
+	/**
+	 * Creates a new balanced KDTree containing the supplied key-value pairs.
+	 * The key at an index in keys is paired with the value at the same index
+	 * in values. The tree is built by splitting on the median of every
+	 * dimension, which is both faster and gives a shallower tree than
+	 * inserting the pairs one by one.
+	 *
+	 * The same restrictions as for insert apply. Two equal values with
+	 * identical keys are only added once.
+	 *
+	 * @param dimensions
+	 * - the number of dimensions of the KD-Tree. Can not be less than 2.
+	 * @param keys
+	 * - the keys of the key-value pairs. Every array has to be as long as the
+	 * number of dimensions.
+	 * @param values
+	 * - the values of the key-value pairs.
+	 *
+	 * @throws IllegalArgumentException if dimensions is less than 2, if keys
+	 * and values aren't the same size or if the length of any of the keys
+	 * isn't the same as the number of dimensions.
+	 * @throws NullPointerException if keys, values or any of their elements
+	 * are null.
+	 */
+	public KDTree(int dimensions, List<Comparable[]> keys, List<T> values){
+		this(dimensions);
+		TreeBuilder<T> builder = new TreeBuilder<T>(DIMENSIONS);
+		Node<T>[] nodes = builder.createNodes(keys, values);
+		size = builder.removeDuplicates(nodes);
+		root = builder.build(nodes, 0, size, 0);
+	}
+
+	/**
+	 * Creates a new balanced KDTree containing the supplied key-value pairs, 
+	 * just like KDTree(dimensions, keys, values), but builds the tree in 
+	 * parallel. The median partitioning and the building of the subtrees are 
+	 * run as fork/join tasks in the supplied pool. The built tree is 
+	 * identical to the one built sequentially.
+	 * 
+	 * @param pool
+	 * - the pool to build the tree in.
+	 * 
+	 * @throws NullPointerException if keys, values, pool or any of the 
+	 * elements in keys or values are null.
+	 * 
+	 * @see #KDTree(int, List, List)
+	 */
+	public KDTree(int dimensions, List<Comparable[]> keys, List<T> values, final ForkJoinPool pool){
+		this(dimensions);
+		if (pool == null){
+			throw new NullPointerException("Arguments can't be null.");
+		}
+		final TreeBuilder<T> builder = new TreeBuilder<T>(DIMENSIONS);
+		final Node<T>[] nodes = builder.createNodes(keys, values);
+		
+		// The sort is run inside the pool, so that its tasks are run there 
+		// instead of in the common pool.
+		size = pool.invoke(new RecursiveTask<Integer>(){
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected Integer compute(){
+				return builder.removeDuplicates(nodes, true);
+			}
+		});
+		root = builder.parallelBuild(nodes, 0, size, 0, pool);
+	}
 	
 	/**
 	 * Returns the size of the KD-Tree. The size is equal to the number of 
@@ -58,6 +164,47 @@ public class KDTree<T> {
 	public int size(){
 		return size;
 	}
+
+	/**
+	 * Returns the number of dimensions of the KD-Tree.
+	 *
+	 * @return
+	 * - the number of dimensions.
+	 */
+	public int dimensions(){
+		return DIMENSIONS;
+	}
+	
+	/**
+	 * Returns a read-only snapshot of the KD-Tree. The snapshot shares its 
+	 * nodes with the tree, so it's only safe to take snapshots of trees in 
+	 * copy-on-write mode, which never change nodes that have been shared.
+	 * 
+	 * @return
+	 * - a read-only tree with the current content of this tree.
+	 */
+	KDTree<T> snapshot(){
+		KDTree<T> snapshot = new KDTree<T>(DIMENSIONS);
+		snapshot.root = root;
+		snapshot.size = size;
+		snapshot.aggregation = aggregation;
+		snapshot.boundingBoxes = boundingBoxes;
+		snapshot.queryListener = queryListener;
+		snapshot.rebuildThreshold = rebuildThreshold;
+		snapshot.balanceFactor = balanceFactor;
+		snapshot.readOnly = true;
+		return snapshot;
+	}
+	
+	/**
+	 * @throws UnsupportedOperationException if the tree is a read-only 
+	 * snapshot.
+	 */
+	private void checkWritable(){
+		if (readOnly){
+			throw new UnsupportedOperationException("Snapshots can't be changed.");
+		}
+	}
 	
 	/**
 	 * Returns true if both the arrays have the same keys in the same indices. 
@@ -81,7 +228,8 @@ public class KDTree<T> {
 	}
 	
 	/**
-	 * Only for testing purposes.
+	 * Used for testing purposes and by the other classes in the package 
+	 * that read the tree, such as FrozenKDTree.
 	 * @return
 	 * The root node.
 	 */
@@ -89,6 +237,14 @@ public class KDTree<T> {
 		return root;
 	}
 	
+	/**
+	 * Returns true if the nodes of the tree keep their bounding boxes up to 
+	 * date.
+	 */
+	boolean hasBoundingBoxes(){
+		return boundingBoxes;
+	}
+	
 	/**
 	 * Finds and returns all values that have the supplied array keys as key.
 	 * @param keys
@@ -103,57 +259,82 @@ public class KDTree<T> {
 	 * the number of dimensions in the KD-Tree.
 	 */
 	public Set<T> get(Comparable[] keys){
-		if (keys == null)
-			throw new NullPointerException();
-		if (keys.length != DIMENSIONS)
-			throw new IllegalArgumentException();
+		checkKeys(keys);
+		QueryStats stats = startQuery(QueryType.GET);
 		
 		Set<T> retValue = new HashSet<T>();
-			
-		Stack<Node<T>> travelStack = new Stack<Node<T>>();
-		Stack<Integer> dimensionStack = new Stack<Integer>();
-		
-		int currDimension = 0;
 		
+		// A node with keys equal to the search keys is always placed in the 
+		// right subtree, so the search follows a single path down the tree.
 		Node<T> currNode = root;
-		
+		int currDimension = 0;
 		while( currNode != null ){
 			Comparable currKey = currNode.getKey(currDimension);
+			if (stats != null){
+				countPathNode(stats, currNode);
+			}
 			
 			// The search key is less than current node's key.
 			if (currKey.compareTo( keys[currDimension] ) > 0){
-				Node<T> leftChild = currNode.getLeftChild();
-				if ( leftChild != null ){
-					travelStack.push( leftChild );
-					dimensionStack.push( incrementDimension(currDimension) );
-				}
+				currNode = currNode.getLeftChild();
 				
 			// The search key is greater than or equal to current node's key.	
 			} else {
-				if ( isSameKeys(keys, currNode.getAllKeys()) ){
+				if ( !currNode.isDeleted() && isSameKeys(keys, currNode.keys) ){
 					retValue.add(currNode.getValue());
 				}
-				
-				Node<T> rightChild = currNode.getRightChild();
-				if ( rightChild != null ){
-					travelStack.push( rightChild );
-					dimensionStack.push( incrementDimension(currDimension) );
-				}
-			}
-			
-			if (!travelStack.isEmpty()){
-				currNode = travelStack.pop();
-				currDimension = dimensionStack.pop();
-			} else {
-				currNode = null;
+				currNode = currNode.getRightChild();
 			}
+			currDimension = incrementDimension(currDimension);
 		} // while-loop
+		finishQuery(stats, retValue.size());
 		return retValue;
 	}
 	
+	/**
+	 * Calls the visitor for every value that has the supplied array keys as 
+	 * key, until the visitor returns false. 
+	 * 
+	 * @param keys
+	 * - the array containing the keys to search for. The array have to be an 
+	 * array of Comparable.
+	 * @param visitor
+	 * - the visitor to call for every found value.
+	 * 
+	 * @return
+	 * - true if all values were visited, false if the visitor stopped the 
+	 * search.
+	 * 
+	 * @throws NullPointerException if keys or visitor is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to 
+	 * the number of dimensions in the KD-Tree.
+	 */
+	public boolean get(Comparable[] keys, KDTreeVisitor<? super T> visitor){
+		checkKeys(keys);
+		if (visitor == null){
+			throw new NullPointerException();
+		}
+		
+		Node<T> currNode = root;
+		int currDimension = 0;
+		while( currNode != null ){
+			if (currNode.getKey(currDimension).compareTo( keys[currDimension] ) > 0){
+				currNode = currNode.getLeftChild();
+			} else {
+				if ( !currNode.isDeleted() && isSameKeys(keys, currNode.keys) && 
+						!visitor.visit(currNode.keys, currNode.getValue()) ){
+					return false;
+				}
+				currNode = currNode.getRightChild();
+			}
+			currDimension = incrementDimension(currDimension);
+		}
+		return true;
+	}
+	
 	/**
 	 * Returns true if the KD-Tree contains an element with the all the keys 
-	 * in the keys array.
+	 * in the keys array. The search stops at the first element found.
 	 * 
 	 * @param keys
 	 * - the keys to search for in the KD-Tree. The array has to be an array of 
@@ -167,12 +348,42 @@ public class KDTree<T> {
 	 * the number of dimensions in the KD-Tree.
 	 */
 	public boolean contains(Comparable[] keys){
-		Set<T> value = get(keys);
-		if (value.size() > 0){
-			return true;
+		checkKeys(keys);
+		QueryStats stats = startQuery(QueryType.CONTAINS);
+		
+		Node<T> currNode = root;
+		int currDimension = 0;
+		while( currNode != null ){
+			if (stats != null){
+				countPathNode(stats, currNode);
+			}
+			if (currNode.getKey(currDimension).compareTo( keys[currDimension] ) > 0){
+				currNode = currNode.getLeftChild();
+			} else {
+				if ( !currNode.isDeleted() && isSameKeys(keys, currNode.keys) ){
+					finishQuery(stats, 1);
+					return true;
+				}
+				currNode = currNode.getRightChild();
+			}
+			currDimension = incrementDimension(currDimension);
 		}
+		finishQuery(stats, 0);
 		return false;
 	}
+	
+	/**
+	 * Counts a node on the single path followed by get and contains. Its 
+	 * keys are compared with the searched keys and one of its children is 
+	 * skipped.
+	 */
+	private void countPathNode(QueryStats stats, Node<T> node){
+		++stats.nodesVisited;
+		++stats.keyComparisons;
+		if (node.getLeftChild() != null && node.getRightChild() != null){
+			++stats.subtreesPruned;
+		}
+	}
 
 	/**
 	 * Increments the supplied int with one. The new value is set to zero if 
@@ -214,52 +425,72 @@ public class KDTree<T> {
 		Node<T> currNode = root;
 		int currDimension = 0;
 		
-		Stack<Node<T>> travelStack = new Stack<Node<T>>();
-		Stack<Integer> dimensionStack = new Stack<Integer>();
+		// The nodes from the root down to the parent of the new node. Their 
+		// subtree sizes are updated once the new node has been added.
+		List<Node<T>> path = new ArrayList<Node<T>>();
+		boolean insertAsLeftChild;
 		
-		boolean done = false;
-		while (!done){
+		while (true){
+			path.add(currNode);
 			
 			Comparable currKey = currNode.getKey(currDimension);
 			if ( currKey.compareTo(keys[currDimension]) > 0){
 				if (currNode.getLeftChild() == null){
-					currNode.setLeftChild(Arrays.copyOf(keys, keys.length), value);
-					++size;
-					done = true;
-				} else {
-					travelStack.push( currNode.getLeftChild() );
-					dimensionStack.push( incrementDimension(currDimension) );
+					insertAsLeftChild = true;
+					break;
 				}
+				currNode = currNode.getLeftChild();
 				
 			// The insert key is greater than or equal to current node's key.
 			} else {
 				
 				// Checks if the new keys and the new value is identical to the 
 				// keys and values of the current node. This is to avoid duplicates.
-				if ( isSameKeys(keys, currNode.getAllKeys()) && 
+				if ( isSameKeys(keys, currNode.keys) && 
 						currNode.getValue().equals(value) ){
 					
 					// Don't insert a new node if an identical node already exists.
-					done = true;
-					
-				} else {
-					if (currNode.getRightChild() != null){
-						travelStack.push( currNode.getRightChild() );
-						dimensionStack.push( incrementDimension(currDimension) );
-						
-					} else {
-						currNode.setRightChild(Arrays.copyOf(keys, keys.length), value);
-						++size;
-						done = true;
-						
-					} // check for right child
-				} // check if new keys and value is identical to current node.
+					// A removed node is brought back instead.
+					if (currNode.isDeleted()){
+						revive(path);
+					}
+					return;
+				}
+				
+				if (currNode.getRightChild() == null){
+					insertAsLeftChild = false;
+					break;
+				}
+				currNode = currNode.getRightChild();
 			} // compare keys
 			
-			if ( !travelStack.isEmpty() ){
-				currNode = travelStack.pop();
-				currDimension = dimensionStack.pop();
-			}
+			currDimension = incrementDimension(currDimension);
+		}
+		
+		path = writablePath(path);
+		Node<T> parent = path.get(path.size() - 1);
+		if (insertAsLeftChild){
+			parent.setLeftChild(Arrays.copyOf(keys, keys.length), value);
+		} else {
+			parent.setRightChild(Arrays.copyOf(keys, keys.length), value);
+		}
+		
+		++size;
+		for (Node<T> pathNode : path){
+			++pathNode.subtreeSize;
+		}
+		Node<T> newNode = insertAsLeftChild ? parent.leftChild : parent.rightChild;
+		if (aggregation != null){
+			newNode.aggregate = aggregation.valueOf(value);
+			addToAggregates(path, newNode.aggregate);
+		}
+		if (boundingBoxes){
+			boxNode(newNode);
+			addToBoxes(path, newNode.keys);
+		}
+		
+		if (balanceFactor < 1){
+			rebalanceIfNeeded(path);
 		}
 	} // insertInTree
 	
@@ -282,6 +513,7 @@ public class KDTree<T> {
 	 * as the kd-tree's dimension size.
 	 */
 	public void insert(Comparable[] keys, T value){
+		checkWritable();
 		if (keys == null || value == null){
 			throw new NullPointerException("Arguments can't be null.");
 		}
@@ -291,6 +523,12 @@ public class KDTree<T> {
 		
 		if (root == null){
 			root = new Node<T>(Arrays.copyOf(keys, keys.length), value);
+			if (aggregation != null){
+				root.aggregate = aggregation.valueOf(value);
+			}
+			if (boundingBoxes){
+				boxNode(root);
+			}
 			++size;
 		} else {
 			insertInTree(keys, value);
@@ -298,102 +536,1753 @@ public class KDTree<T> {
 	} // insert
 	
 	/**
-	 * Checks that all keys in the base array is less than or equal to the
-	 * corresponding key in the other array.
-	 *  
-	 * @param base
-	 * - the array that is the base for the comparison.
-	 * @param other
-	 * - the array to compare the base array with. 
-	 * @return
-	 * - true if all keys in base is less than or equals to the corresponding
-	 * key in other
+	 * Brings back the last node of the path, which has been removed. 
+	 * 
+	 * @param path
+	 * - the nodes from the root down to the removed node.
 	 */
-	private boolean isNotLarger(Comparable[] base, Comparable[] other){
-		for (int i=0; i < DIMENSIONS; ++i){
-			if (base[i].compareTo( other[i] ) <= 0){
-				return false;
-			}
+	private void revive(List<Node<T>> path){
+		path = writablePath(path);
+		Node<T> revived = path.get(path.size() - 1);
+		revived.deleted = false;
+		for (Node<T> pathNode : path){
+			--pathNode.deadCount;
 		}
-		return true;
+		if (aggregation != null){
+			addToAggregates(path, aggregation.valueOf(revived.value));
+		}
+		++size;
 	}
 	
 	/**
-	 * Retrieves all the values that are within the given range. 
-	 * The range is kept between values that are found at the same index in the
-	 * argument arrays highest and lowest.
+	 * Sets the fraction of removed nodes a subtree may contain before it's 
+	 * rebuilt. Removed nodes are only marked as removed and are kept in the 
+	 * tree until the subtree they're in is rebuilt. Only the highest subtree 
+	 * with too many removed nodes is rebuilt, the rest of the tree is left 
+	 * as it is. The default threshold is 0.5.
 	 * 
-	 * @param lowest
-	 * An array of the lower bound values.
+	 * @param threshold
+	 * - the fraction of removed nodes that triggers a rebuild. A threshold of
+	 * 1 means that subtrees are never rebuilt.
 	 * 
-	 * @param highest
-	 * An array of the higher bound values.
+	 * @throws IllegalArgumentException if threshold isn't greater than 0 and 
+	 * less than or equal to 1.
+	 */
+	public void setRebuildThreshold(double threshold){
+		if (!(threshold > 0 && threshold <= 1)){
+			throw new IllegalArgumentException("The threshold has to be in the interval (0, 1].");
+		}
+		rebuildThreshold = threshold;
+	}
+	
+	/**
+	 * Sets the balance factor of the KD-Tree. A subtree is unbalanced if one 
+	 * of its children has more than balanceFactor times as many nodes as the 
+	 * subtree itself. When an insert makes the tree deeper than 
+	 * log(size) / log(1 / balanceFactor), the highest unbalanced subtree on 
+	 * the path to the new node is rebuilt. This keeps the depth of the tree 
+	 * logarithmic regardless of the order of the inserts. 
 	 * 
-	 * @return
-	 * A set containing all the values within the range. If the root is empty an empty set is returned. 
-	 * If the root is empty it returns an empty set.
+	 * A lower factor gives a shallower tree but more rebuilds. The default 
+	 * factor is 1, which turns the rebalancing off.
 	 * 
-	 * @throws NullPointerException if any of the arguments are null.
+	 * @param balanceFactor
+	 * - the balance factor. 
 	 * 
-	 * @throws IllegalArgumentException if the argument arrays have
-	 * to few or many elements.
+	 * @throws IllegalArgumentException if balanceFactor isn't greater than 
+	 * 0.5 and less than or equal to 1.
 	 */
-	public Set<T> range(Comparable[] lowest, Comparable[] highest){
-		if (lowest == null || highest == null){
-			throw new NullPointerException();
+	public void setBalanceFactor(double balanceFactor){
+		if (!(balanceFactor > 0.5 && balanceFactor <= 1)){
+			throw new IllegalArgumentException("The balance factor has to be in the interval (0.5, 1].");
 		}
-		if(lowest.length != DIMENSIONS || highest.length != DIMENSIONS){
-			throw new IllegalArgumentException("The input arrays must have as many elements as there are dimensions.");
+		this.balanceFactor = balanceFactor;
+	}
+	
+	/**
+	 * Sets the aggregation that every node keeps for its subtree. The 
+	 * aggregates are computed for the whole tree when the aggregation is set 
+	 * and are then kept up to date by inserts, removals and rebuilds. They 
+	 * are used by rangeAggregate. The default is no aggregation.
+	 * 
+	 * @param aggregation
+	 * - the aggregation to keep, or null to stop keeping aggregates.
+	 * 
+	 * @see Aggregations
+	 */
+	public void setAggregation(Aggregation<? super T> aggregation){
+		checkWritable();
+		this.aggregation = aggregation;
+		if (aggregation == null || root == null){
+			return;
 		}
-		if ( isNotLarger(lowest, highest) ){
-			throw new IllegalArgumentException("The keys in highest can't be less than lowest.");
+		
+		summarizeTree();
+	}
+	
+	/**
+	 * Sets whether every node keeps the bounding box of the keys in its 
+	 * subtree. Searches skip subtrees whose boxes don't intersect the 
+	 * searched range, and accept subtrees whose boxes are within it without 
+	 * checking their keys. The nearest neighbour search uses the boxes to 
+	 * skip subtrees that are too far away. 
+	 * 
+	 * The boxes are computed for the whole tree when they are turned on. 
+	 * Inserts and rebuilds keep them up to date, while removed nodes are 
+	 * kept in the boxes until their subtree is rebuilt. The boxes cost two 
+	 * arrays of keys per node and are turned off by default.
+	 * 
+	 * @param boundingBoxes
+	 * - true to keep bounding boxes, false to stop keeping them.
+	 */
+	public void setBoundingBoxes(boolean boundingBoxes){
+		checkWritable();
+		if (this.boundingBoxes == boundingBoxes){
+			return;
 		}
-		if(root == null){
-			return new HashSet<T>();
+		this.boundingBoxes = boundingBoxes;
+		if (boundingBoxes){
+			summarizeTree();
+		} else if (!copyOnWrite && root != null){
+			for (Node<T> node : subtreeNodes(root)){
+				node.boxMin = null;
+				node.boxMax = null;
+			}
 		}
-			
-		Stack<Node<T>> nodesToVisit = new Stack<Node<T>>();
-		Stack<Integer> stackNodeLevel = new Stack<Integer>();
-		Set<T> correctVals = new HashSet<T>();
-		int level = 0;
-		nodesToVisit.push(root);
-		stackNodeLevel.push(level);
-		
-		while(!nodesToVisit.isEmpty()){ 
-			Node<T> currNode = nodesToVisit.pop();
-			level = stackNodeLevel.pop();
-			
-			Comparable currKey = currNode.getKey(level);
-			int tempLevel = level;
-			boolean allKeysWithinRange = true;
-			do{
-				if(currKey.compareTo(lowest[tempLevel]) < 0 || currKey.compareTo(highest[tempLevel]) > 0){ 
-					allKeysWithinRange = false; //found value outside range
-				}else{
-					tempLevel = incrementDimension(tempLevel);
-					currKey = currNode.getKey(tempLevel);
+	}
+	
+	/**
+	 * Sets the listener that is told about the work done by every get, 
+	 * contains, range, rangeCount, rangeAggregate, nearest, 
+	 * approximateNearest, batchNearest, withinRadius and 
+	 * neighboursWithinRadius search, and by the spatial joins with this 
+	 * tree as the left tree. The searches only count their work while a 
+	 * listener is set, so searches of a tree without a listener cost 
+	 * nothing extra. The parallelRange, iterator and stream searches aren't 
+	 * reported. 
+	 * 
+	 * The listener may be set on snapshots as well. 
+	 * 
+	 * @param listener
+	 * - the listener, or null to stop reporting.
+	 * 
+	 * @see QueryMetrics
+	 */
+	public void setQueryListener(QueryListener listener){
+		queryListener = listener;
+	}
+	
+	/**
+	 * Returns the stats to count the work of a search in, or null if no 
+	 * listener is set. The listener is read once, so a search reports to 
+	 * the listener it started with even if it's replaced during the search.
+	 */
+	QueryStats startQuery(QueryType type){
+		QueryListener listener = queryListener;
+		return listener == null ? null : new QueryStats(type, listener);
+	}
+	
+	/**
+	 * Reports a search to the listener it was started with, unless it was 
+	 * started without one.
+	 */
+	void finishQuery(QueryStats stats, long results){
+		if (stats != null){
+			stats.finish(results);
+			stats.listener.queryCompleted(stats);
+		}
+	}
+	
+	/**
+	 * Recomputes the aggregates and bounding boxes of the whole tree.
+	 */
+	private void summarizeTree(){
+		if (root == null){
+			return;
+		}
+		if (copyOnWrite){
+			// Shared nodes may not be changed, so the tree is rebuilt out of 
+			// copies instead.
+			List<Node<T>> path = new ArrayList<Node<T>>();
+			path.add(root);
+			rebuild(path, 0);
+		} else {
+			summarizeSubtree(root);
+		}
+	}
+	
+	/**
+	 * Recomputes the aggregate of the node from its own value and the 
+	 * aggregates of its children.
+	 */
+	private void aggregateNode(Node<T> node){
+		double aggregate = node.deleted ? aggregation.identity() : aggregation.valueOf(node.value);
+		if (node.leftChild != null){
+			aggregate = aggregation.combine(aggregate, node.leftChild.aggregate);
+		}
+		if (node.rightChild != null){
+			aggregate = aggregation.combine(aggregate, node.rightChild.aggregate);
+		}
+		node.aggregate = aggregate;
+	}
+	
+	/**
+	 * Recomputes the bounding box of the node from its own keys and the 
+	 * boxes of its children.
+	 */
+	@SuppressWarnings("unchecked")
+	private void boxNode(Node<T> node){
+		Comparable[] boxMin = Arrays.copyOf(node.keys, DIMENSIONS);
+		Comparable[] boxMax = Arrays.copyOf(node.keys, DIMENSIONS);
+		for (int i=0; i < 2; ++i){
+			Node<T> child = i == 0 ? node.leftChild : node.rightChild;
+			if (child == null){
+				continue;
+			}
+			for (int d=0; d < DIMENSIONS; ++d){
+				if (child.boxMin[d].compareTo(boxMin[d]) < 0){
+					boxMin[d] = child.boxMin[d];
+				}
+				if (child.boxMax[d].compareTo(boxMax[d]) > 0){
+					boxMax[d] = child.boxMax[d];
 				}
-			}while(tempLevel != level && allKeysWithinRange); //Goes through all keys in current node,  
-															  //checks if they are valid
-			if(allKeysWithinRange){
-				correctVals.add(currNode.getValue());
 			}
-			
-			if(currNode.getLeftChild() != null && roomForSmallerKeys(currNode, level, lowest[level])){ 
-				nodesToVisit.push(currNode.getLeftChild());	
-				stackNodeLevel.push(incrementDimension(level));
+		}
+		node.boxMin = boxMin;
+		node.boxMax = boxMax;
+	}
+	
+	/**
+	 * Grows the bounding boxes of all nodes on the path to contain keys.
+	 */
+	@SuppressWarnings("unchecked")
+	private void addToBoxes(List<Node<T>> path, Comparable[] keys){
+		for (Node<T> pathNode : path){
+			for (int d=0; d < DIMENSIONS; ++d){
+				if (keys[d].compareTo(pathNode.boxMin[d]) < 0){
+					pathNode.boxMin[d] = keys[d];
+				} else if (keys[d].compareTo(pathNode.boxMax[d]) > 0){
+					pathNode.boxMax[d] = keys[d];
+				}
 			}
-			if(currNode.getRightChild() != null && roomForBiggerKeys(currNode, level, highest[level])){
-				nodesToVisit.push(currNode.getRightChild());
-				stackNodeLevel.push(incrementDimension(level));
+		}
+	}
+	
+	/**
+	 * Recomputes the aggregate and bounding box of the node, if the tree 
+	 * keeps them.
+	 */
+	private void summarizeNode(Node<T> node){
+		if (aggregation != null){
+			aggregateNode(node);
+		}
+		if (boundingBoxes){
+			boxNode(node);
+		}
+	}
+	
+	/**
+	 * Recomputes the aggregates and bounding boxes of all nodes in the 
+	 * subtree. 
+	 */
+	private void summarizeSubtree(Node<T> subRoot){
+		// Every node is found before its children, so going through the 
+		// nodes backwards summarizes the children first.
+		List<Node<T>> nodes = subtreeNodes(subRoot);
+		for (int i=nodes.size() - 1; i >= 0; --i){
+			summarizeNode(nodes.get(i));
+		}
+	}
+	
+	/**
+	 * Returns all nodes in the subtree, removed nodes included. Every node 
+	 * is found before its children.
+	 */
+	private List<Node<T>> subtreeNodes(Node<T> subRoot){
+		List<Node<T>> nodes = new ArrayList<Node<T>>(subRoot.subtreeSize);
+		nodes.add(subRoot);
+		for (int i=0; i < nodes.size(); ++i){
+			Node<T> currNode = nodes.get(i);
+			if (currNode.leftChild != null){
+				nodes.add(currNode.leftChild);
 			}
-			
-		}//while stack isn't empty
-		
-		return correctVals;
-		
-	}//range
+			if (currNode.rightChild != null){
+				nodes.add(currNode.rightChild);
+			}
+		}
+		return nodes;
+	}
 	
+	/**
+	 * Recomputes the aggregates of the nodes on the path, from the supplied 
+	 * depth up to the root.
+	 */
+	private void reaggregatePath(List<Node<T>> path, int depth){
+		for (int i=depth; i >= 0; --i){
+			aggregateNode(path.get(i));
+		}
+	}
+	
+	/**
+	 * Combines a new value into the aggregates of all nodes on the path.
+	 */
+	private void addToAggregates(List<Node<T>> path, double valueAggregate){
+		for (Node<T> pathNode : path){
+			pathNode.aggregate = aggregation.combine(pathNode.aggregate, valueAggregate);
+		}
+	}
+	
+	/**
+	 * Rebuilds the highest unbalanced subtree on the path if the new node 
+	 * is too deep.
+	 * 
+	 * @param path
+	 * - the nodes from the root down to the parent of the new node.
+	 */
+	private void rebalanceIfNeeded(List<Node<T>> path){
+		int totalNodes = root.subtreeSize;
+		double maxDepth = Math.log(totalNodes) / Math.log(1 / balanceFactor);
+		if (path.size() <= maxDepth){
+			return;
+		}
+		
+		for (int depth=0; depth < path.size() - 1; ++depth){
+			Node<T> subRoot = path.get(depth);
+			Node<T> child = path.get(depth + 1);
+			if (child.subtreeSize > balanceFactor * subRoot.subtreeSize){
+				rebuild(path, depth);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Removes the key-value pair from the KD-Tree. 
+	 * 
+	 * @param keys
+	 * - the keys of the value to remove. The array has to be as long as the 
+	 * number of dimensions in the tree.
+	 * @param value
+	 * - the value to remove. Equality is checked by the equals method.
+	 * 
+	 * @return
+	 * - true if the key-value pair was found and removed.
+	 * 
+	 * @throws NullPointerException if keys or value are null.
+	 * @throws IllegalArgumentException if the length of keys isn't the same
+	 * as the kd-tree's dimension size.
+	 */
+	public boolean remove(Comparable[] keys, T value){
+		checkWritable();
+		if (keys == null || value == null){
+			throw new NullPointerException("Arguments can't be null.");
+		}
+		if (keys.length != DIMENSIONS){
+			throw new IllegalArgumentException();
+		}
+		
+		List<Node<T>> path = new ArrayList<Node<T>>();
+		Node<T> currNode = root;
+		int currDimension = 0;
+		while (currNode != null){
+			path.add(currNode);
+			
+			if (currNode.getKey(currDimension).compareTo(keys[currDimension]) > 0){
+				currNode = currNode.getLeftChild();
+			} else {
+				if ( !currNode.isDeleted() && isSameKeys(keys, currNode.keys) && 
+						currNode.getValue().equals(value) ){
+					path = writablePath(path);
+					markDeleted(path, path.size() - 1);
+					rebuildIfNeeded(path);
+					return true;
+				}
+				currNode = currNode.getRightChild();
+			}
+			currDimension = incrementDimension(currDimension);
+		}
+		return false;
+	}
+	
+	/**
+	 * Removes all values with the supplied keys from the KD-Tree.
+	 * 
+	 * @param keys
+	 * - the keys of the values to remove. The array has to be as long as the 
+	 * number of dimensions in the tree.
+	 * 
+	 * @return
+	 * - a set containing all the removed values.
+	 * 
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't the same
+	 * as the kd-tree's dimension size.
+	 */
+	public Set<T> removeAll(Comparable[] keys){
+		checkWritable();
+		if (keys == null){
+			throw new NullPointerException();
+		}
+		if (keys.length != DIMENSIONS){
+			throw new IllegalArgumentException();
+		}
+		
+		Set<T> removed = new HashSet<T>();
+		
+		// All nodes with the same keys are found on a single path, since a 
+		// node with equal keys is always placed in the right subtree.
+		List<Node<T>> path = new ArrayList<Node<T>>();
+		List<Integer> matches = new ArrayList<Integer>();
+		Node<T> currNode = root;
+		int currDimension = 0;
+		while (currNode != null){
+			path.add(currNode);
+			
+			if (currNode.getKey(currDimension).compareTo(keys[currDimension]) > 0){
+				currNode = currNode.getLeftChild();
+			} else {
+				if ( !currNode.isDeleted() && isSameKeys(keys, currNode.keys) ){
+					removed.add(currNode.getValue());
+					matches.add(path.size() - 1);
+				}
+				currNode = currNode.getRightChild();
+			}
+			currDimension = incrementDimension(currDimension);
+		}
+		
+		if (!matches.isEmpty()){
+			path = writablePath(path.subList(0, matches.get(matches.size() - 1) + 1));
+			for (int match : matches){
+				markDeleted(path, match);
+			}
+			rebuildIfNeeded(path);
+		}
+		return removed;
+	}
+	
+	/**
+	 * Marks the node at the supplied depth of the path as removed.
+	 * 
+	 * @param path
+	 * - the nodes from the root down to the node to remove.
+	 * @param depth
+	 * - the depth of the node to remove.
+	 */
+	private void markDeleted(List<Node<T>> path, int depth){
+		path.get(depth).deleted = true;
+		for (int i=0; i <= depth; ++i){
+			++path.get(i).deadCount;
+		}
+		if (aggregation != null){
+			reaggregatePath(path, depth);
+		}
+		--size;
+	}
+	
+	/**
+	 * Returns the path that the next change of the tree should be made on. 
+	 * Normally that's the supplied path. In copy-on-write mode the nodes on 
+	 * the path are copied instead, and the copies are linked into the tree 
+	 * in place of the originals. The originals are left untouched, so they 
+	 * can still be read through earlier snapshots.
+	 * 
+	 * @param path
+	 * - the nodes from the root down to the node to change.
+	 * 
+	 * @return
+	 * - the nodes that may be changed.
+	 */
+	private List<Node<T>> writablePath(List<Node<T>> path){
+		if (!copyOnWrite){
+			return path;
+		}
+		
+		List<Node<T>> copies = new ArrayList<Node<T>>(path.size());
+		Node<T> parentCopy = null;
+		for (Node<T> pathNode : path){
+			Node<T> copy = pathNode.copy();
+			if (parentCopy == null){
+				root = copy;
+			} else if (parentCopy.leftChild == pathNode){
+				parentCopy.leftChild = copy;
+			} else {
+				parentCopy.rightChild = copy;
+			}
+			copies.add(copy);
+			parentCopy = copy;
+		}
+		return copies;
+	}
+	
+	/**
+	 * Rebuilds the highest subtree on the path that contains too many removed
+	 * nodes. The removed nodes are left out of the rebuilt subtree.
+	 * 
+	 * @param path
+	 * - the nodes from the root down to where nodes were removed.
+	 */
+	private void rebuildIfNeeded(List<Node<T>> path){
+		for (int depth=0; depth < path.size(); ++depth){
+			Node<T> subRoot = path.get(depth);
+			if (subRoot.deadCount > rebuildThreshold * subRoot.subtreeSize){
+				rebuild(path, depth);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Rebuilds the subtree rooted at the node at the supplied depth of the 
+	 * path into a balanced subtree without removed nodes.
+	 * 
+	 * @param path
+	 * - the nodes from the root down to the root of the subtree.
+	 * @param depth
+	 * - the depth of the root of the subtree to rebuild.
+	 */
+	private void rebuild(List<Node<T>> path, int depth){
+		Node<T> subRoot = path.get(depth);
+		int removedNodes = subRoot.subtreeSize;
+		int removedDead = subRoot.deadCount;
+		
+		Node<T>[] liveNodes = collectLiveNodes(subRoot, copyOnWrite);
+		Node<T> newSubRoot = new TreeBuilder<T>(DIMENSIONS).build(liveNodes, 0, 
+				liveNodes.length, depth % DIMENSIONS);
+		removedNodes -= liveNodes.length;
+		
+		if (depth == 0){
+			root = newSubRoot;
+		} else {
+			Node<T> parent = path.get(depth - 1);
+			if (parent.leftChild == subRoot){
+				parent.leftChild = newSubRoot;
+			} else {
+				parent.rightChild = newSubRoot;
+			}
+		}
+		
+		for (int i=0; i < depth; ++i){
+			path.get(i).subtreeSize -= removedNodes;
+			path.get(i).deadCount -= removedDead;
+		}
+		
+		if (aggregation != null || boundingBoxes){
+			if (newSubRoot != null){
+				summarizeSubtree(newSubRoot);
+			}
+			for (int i=depth - 1; i >= 0; --i){
+				summarizeNode(path.get(i));
+			}
+		}
+	}
+	
+	/**
+	 * Rebuilds the whole tree into a balanced tree without removed nodes. 
+	 * The tree is otherwise only rebuilt in parts, as inserts make subtrees 
+	 * too unbalanced or removals leave too many removed nodes, so a tree 
+	 * may become deeper than needed over time. 
+	 * 
+	 * @see #statistics()
+	 */
+	public void rebuild(){
+		checkWritable();
+		if (root == null){
+			return;
+		}
+		List<Node<T>> path = new ArrayList<Node<T>>(1);
+		path.add(root);
+		rebuild(path, 0);
+	}
+	
+	/**
+	 * Returns a balanced copy of the tree without removed nodes and with 
+	 * the same settings. The nodes of this tree are copied, not changed, so 
+	 * the copy can be made from a snapshot while the tree is changed.
+	 */
+	KDTree<T> rebuiltCopy(){
+		KDTree<T> copy = new KDTree<T>(DIMENSIONS);
+		copy.rebuildThreshold = rebuildThreshold;
+		copy.balanceFactor = balanceFactor;
+		copy.aggregation = aggregation;
+		copy.boundingBoxes = boundingBoxes;
+		copy.queryListener = queryListener;
+		if (root != null){
+			Node<T>[] liveNodes = collectLiveNodes(root, true);
+			copy.root = new TreeBuilder<T>(DIMENSIONS).build(liveNodes, 0, liveNodes.length, 0);
+			copy.size = liveNodes.length;
+			if (copy.root != null && (aggregation != null || boundingBoxes)){
+				copy.summarizeSubtree(copy.root);
+			}
+		}
+		return copy;
+	}
+	
+	/**
+	 * Takes the statistics of the current shape of the tree. The whole tree 
+	 * is traversed. 
+	 * 
+	 * @return
+	 * - the statistics.
+	 */
+	public TreeStatistics statistics(){
+		return TreeStatistics.of(root, size, DIMENSIONS, boundingBoxes);
+	}
+	
+	/**
+	 * Returns all nodes in the subtree that haven't been removed, or copies 
+	 * of them if copyNodes is set.
+	 */
+	@SuppressWarnings("unchecked")
+	private Node<T>[] collectLiveNodes(Node<T> subRoot, boolean copyNodes){
+		Node<T>[] liveNodes = new Node[subRoot.subtreeSize - subRoot.deadCount];
+		int count = 0;
+		
+		Stack<Node<T>> travelStack = new Stack<Node<T>>();
+		travelStack.push(subRoot);
+		while (!travelStack.isEmpty()){
+			Node<T> currNode = travelStack.pop();
+			if (!currNode.isDeleted()){
+				// The builder replaces the children of the nodes, so shared 
+				// nodes have to be copied first.
+				liveNodes[count++] = copyNodes ? currNode.copy() : currNode;
+			}
+			if (currNode.getLeftChild() != null){
+				travelStack.push(currNode.getLeftChild());
+			}
+			if (currNode.getRightChild() != null){
+				travelStack.push(currNode.getRightChild());
+			}
+		}
+		return liveNodes;
+	}
+	
+	/**
+	 * Checks that all keys in the base array is less than or equal to the
+	 * corresponding key in the other array.
+	 *  
+	 * @param base
+	 * - the array that is the base for the comparison.
+	 * @param other
+	 * - the array to compare the base array with. 
+	 * @return
+	 * - true if all keys in base is less than or equals to the corresponding
+	 * key in other
+	 */
+	private boolean isNotLarger(Comparable[] base, Comparable[] other){
+		for (int i=0; i < DIMENSIONS; ++i){
+			if (base[i].compareTo( other[i] ) <= 0){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Retrieves all the values that are within the given range. 
+	 * The range is kept between values that are found at the same index in the
+	 * argument arrays highest and lowest.
+	 * 
+	 * @param lowest
+	 * An array of the lower bound values.
+	 * 
+	 * @param highest
+	 * An array of the higher bound values.
+	 * 
+	 * @return
+	 * A set containing all the values within the range. If the root is empty an empty set is returned. 
+	 * If the root is empty it returns an empty set.
+	 * 
+	 * @throws NullPointerException if any of the arguments are null.
+	 * 
+	 * @throws IllegalArgumentException if the argument arrays have
+	 * to few or many elements.
+	 */
+	public Set<T> range(Comparable[] lowest, Comparable[] highest){
+		checkRange(lowest, highest);
+		QueryStats stats = startQuery(QueryType.RANGE);
+		
+		Set<T> correctVals = new HashSet<T>();
+		if(root != null){
+			rangeInSubtree(root, 0, lowest, highest, correctVals, stats);
+		}
+		finishQuery(stats, correctVals.size());
+		return correctVals;
+		
+	}//range
+	
+	/**
+	 * Checks that lowest and highest can be used as the bounds of a range.
+	 * 
+	 * @throws NullPointerException if any of the arguments are null.
+	 * 
+	 * @throws IllegalArgumentException if the argument arrays have
+	 * to few or many elements.
+	 */
+	private void checkRange(Comparable[] lowest, Comparable[] highest){
+		if (lowest == null || highest == null){
+			throw new NullPointerException();
+		}
+		if(lowest.length != DIMENSIONS || highest.length != DIMENSIONS){
+			throw new IllegalArgumentException("The input arrays must have as many elements as there are dimensions.");
+		}
+		if ( isNotLarger(lowest, highest) ){
+			throw new IllegalArgumentException("The keys in highest can't be less than lowest.");
+		}
+	}
+	
+	/**
+	 * Adds the values in the subtree that are within the given range to the 
+	 * supplied collection.
+	 * 
+	 * @param subRoot
+	 * The root of the subtree to search. Can not be null.
+	 * 
+	 * @param startLevel
+	 * The dimension the root of the subtree splits on.
+	 * 
+	 * @param lowest
+	 * An array of the lower bound values.
+	 * 
+	 * @param highest
+	 * An array of the higher bound values.
+	 * 
+	 * @param correctVals
+	 * The collection to add the values within the range to.
+	 * 
+	 * @param stats
+	 * The stats to count the work of the search in, or null.
+	 */
+	private void rangeInSubtree(Node<T> subRoot, int startLevel, Comparable[] lowest, 
+			Comparable[] highest, final Collection<T> correctVals, QueryStats stats){
+		
+		visitRange(subRoot, startLevel, lowest, highest, stats, new KDTreeVisitor<T>(){
+			@Override
+			public boolean visit(Comparable[] keys, T value){
+				correctVals.add(value);
+				return true;
+			}
+		});
+	}
+	
+	/**
+	 * Calls the visitor for every value within the given range, until the 
+	 * visitor returns false. The search uses the calling thread's query 
+	 * context and allocates nothing once the context is large enough. 
+	 * 
+	 * @param lowest
+	 * An array of the lower bound values.
+	 * 
+	 * @param highest
+	 * An array of the higher bound values.
+	 * 
+	 * @param visitor
+	 * The visitor to call for every value within the range.
+	 * 
+	 * @return
+	 * True if all values within the range were visited, false if the visitor 
+	 * stopped the search.
+	 * 
+	 * @throws NullPointerException if any of the arguments are null.
+	 * 
+	 * @throws IllegalArgumentException if the argument arrays have
+	 * to few or many elements.
+	 */
+	public boolean range(Comparable[] lowest, Comparable[] highest, final KDTreeVisitor<? super T> visitor){
+		checkRange(lowest, highest);
+		if (visitor == null){
+			throw new NullPointerException();
+		}
+		QueryStats stats = startQuery(QueryType.RANGE);
+		if (stats == null){
+			return root == null || visitRange(root, 0, lowest, highest, null, visitor);
+		}
+		
+		// The visited values are only counted when the search is reported.
+		final long[] visited = new long[1];
+		boolean completed = root == null || visitRange(root, 0, lowest, highest, stats, 
+				new KDTreeVisitor<T>(){
+			@Override
+			public boolean visit(Comparable[] keys, T value){
+				++visited[0];
+				return visitor.visit(keys, value);
+			}
+		});
+		finishQuery(stats, visited[0]);
+		return completed;
+	}
+	
+	/**
+	 * Calls the visitor for the values in the subtree that are within the 
+	 * given range, until the visitor returns false.
+	 * 
+	 * @param stats
+	 * The stats to count the work of the search in, or null.
+	 * 
+	 * @return
+	 * True if all values within the range were visited.
+	 */
+	private boolean visitRange(Node<T> subRoot, int startLevel, Comparable[] lowest, 
+			Comparable[] highest, QueryStats stats, KDTreeVisitor<? super T> visitor){
+		
+		QueryContext context = QueryContext.acquire();
+		try {
+			context.push(subRoot, startLevel);
+			
+			while(!context.isEmpty()){ 
+				Node<T> currNode = context.pop();
+				int level = context.levels[context.size];
+				if (stats != null){
+					++stats.nodesVisited;
+				}
+				
+				// A set mask marks a subtree whose box is within the range.
+				if (context.masks[context.size] != 0 || 
+						(boundingBoxes && isBoxWithinRange(currNode, lowest, highest))){
+					if (!visitWholeSubtree(context, currNode, level, visitor)){
+						return false;
+					}
+					continue;
+				}
+				if (boundingBoxes && !boxIntersectsRange(currNode, lowest, highest)){
+					if (stats != null){
+						++stats.subtreesPruned;
+					}
+					continue;
+				}
+				
+				if (stats != null){
+					++stats.keyComparisons;
+				}
+				if(isWithinRange(currNode, level, lowest, highest) && 
+						!visitor.visit(currNode.keys, currNode.getValue())){
+					return false;
+				}
+				
+				pushChildrenInRange(context, currNode, level, lowest, highest, stats);
+				
+			}//while stack isn't empty
+			return true;
+		} finally {
+			context.release();
+		}
+	}
+	
+	/**
+	 * Pushes the children of the node whose subtrees can have keys within 
+	 * the given range, and counts the others as pruned.
+	 */
+	private void pushChildrenInRange(QueryContext context, Node<T> node, int level, 
+			Comparable[] lowest, Comparable[] highest, QueryStats stats){
+		
+		if(node.getLeftChild() != null){
+			if (roomForSmallerKeys(node, level, lowest[level])){
+				context.push(node.getLeftChild(), incrementDimension(level));
+			} else if (stats != null){
+				++stats.subtreesPruned;
+			}
+		}
+		if(node.getRightChild() != null){
+			if (roomForBiggerKeys(node, level, highest[level])){
+				context.push(node.getRightChild(), incrementDimension(level));
+			} else if (stats != null){
+				++stats.subtreesPruned;
+			}
+		}
+	}
+	
+	/**
+	 * Counts the values that are within the given range. Subtrees that lie 
+	 * entirely within the range are counted as a whole without being 
+	 * visited, so a count costs about as much as a range search that finds 
+	 * nothing. 
+	 * 
+	 * Unlike range, a value stored with several different keys within the 
+	 * range is counted once per key.
+	 * 
+	 * @param lowest
+	 * An array of the lower bound values.
+	 * 
+	 * @param highest
+	 * An array of the higher bound values.
+	 * 
+	 * @return
+	 * The number of key-value pairs within the range.
+	 * 
+	 * @throws NullPointerException if any of the arguments are null.
+	 * 
+	 * @throws IllegalArgumentException if the argument arrays have
+	 * to few or many elements.
+	 */
+	public long rangeCount(Comparable[] lowest, Comparable[] highest){
+		checkRange(lowest, highest);
+		QueryStats stats = startQuery(QueryType.RANGE_COUNT);
+		long count = (long) summarizeRange(lowest, highest, true, stats);
+		finishQuery(stats, count);
+		return count;
+	}
+	
+	/**
+	 * Aggregates the values that are within the given range with the 
+	 * aggregation of the tree. Subtrees that lie entirely within the range 
+	 * contribute with their kept aggregates without being visited. 
+	 * 
+	 * @param lowest
+	 * An array of the lower bound values.
+	 * 
+	 * @param highest
+	 * An array of the higher bound values.
+	 * 
+	 * @return
+	 * The aggregate of the values within the range, or the identity of the 
+	 * aggregation if there are none.
+	 * 
+	 * @throws NullPointerException if any of the arguments are null.
+	 * 
+	 * @throws IllegalArgumentException if the argument arrays have
+	 * to few or many elements.
+	 * 
+	 * @throws IllegalStateException if no aggregation has been set.
+	 * 
+	 * @see #setAggregation(Aggregation)
+	 */
+	public double rangeAggregate(Comparable[] lowest, Comparable[] highest){
+		checkRange(lowest, highest);
+		if (aggregation == null){
+			throw new IllegalStateException("No aggregation has been set.");
+		}
+		QueryStats stats = startQuery(QueryType.RANGE_AGGREGATE);
+		double aggregate = summarizeRange(lowest, highest, false, stats);
+		finishQuery(stats, stats == null ? 0 : stats.valuesSummarized);
+		return aggregate;
+	}
+	
+	/**
+	 * Counts or aggregates the values within the given range. 
+	 * 
+	 * Every pushed subtree carries a mask of the bounds of the range that 
+	 * the whole subtree is known to be within. Bit 2d is set when all keys 
+	 * in dimension d are at least lowest[d], and bit 2d + 1 when they are 
+	 * at most highest[d]. A subtree with all bits set is within the range. 
+	 * Trees with more than 32 dimensions don't fit in the mask and are 
+	 * searched node by node.
+	 * 
+	 * The work and the number of values within the range are counted in 
+	 * stats unless it's null.
+	 */
+	private double summarizeRange(Comparable[] lowest, Comparable[] highest, boolean count, QueryStats stats){
+		double result = count ? 0 : aggregation.identity();
+		if (root == null){
+			return result;
+		}
+		
+		boolean useMasks = DIMENSIONS <= 32;
+		long withinRange = DIMENSIONS == 32 ? -1L : (1L << (2 * DIMENSIONS)) - 1;
+		
+		QueryContext context = QueryContext.acquire();
+		try {
+			context.push(root, 0, 0);
+			
+			while (!context.isEmpty()){
+				Node<T> currNode = context.pop();
+				int level = context.levels[context.size];
+				long mask = context.masks[context.size];
+				if (stats != null){
+					++stats.nodesVisited;
+				}
+				
+				if (boundingBoxes && !boxIntersectsRange(currNode, lowest, highest)){
+					if (stats != null){
+						++stats.subtreesPruned;
+					}
+					continue;
+				}
+				if ((useMasks && mask == withinRange) || 
+						(boundingBoxes && isBoxWithinRange(currNode, lowest, highest))){
+					if (count){
+						result += currNode.subtreeSize - currNode.deadCount;
+					} else {
+						result = aggregation.combine(result, currNode.aggregate);
+					}
+					if (stats != null){
+						stats.valuesSummarized += currNode.subtreeSize - currNode.deadCount;
+					}
+					continue;
+				}
+				
+				if (stats != null){
+					++stats.keyComparisons;
+				}
+				if (isWithinRange(currNode, level, lowest, highest)){
+					if (count){
+						++result;
+					} else {
+						result = aggregation.combine(result, aggregation.valueOf(currNode.value));
+					}
+					if (stats != null){
+						++stats.valuesSummarized;
+					}
+				}
+				
+				Comparable currKey = currNode.getKey(level);
+				int nextLevel = incrementDimension(level);
+				if (currNode.getLeftChild() != null && roomForSmallerKeys(currNode, level, lowest[level])){
+					// All keys in the left subtree are less than the key.
+					long leftMask = mask;
+					if (useMasks && currKey.compareTo(highest[level]) <= 0){
+						leftMask |= 1L << (2 * level + 1);
+					}
+					context.push(currNode.getLeftChild(), nextLevel, leftMask);
+				}
+				if (currNode.getRightChild() != null && roomForBiggerKeys(currNode, level, highest[level])){
+					// All keys in the right subtree are at least the key.
+					long rightMask = mask;
+					if (useMasks && currKey.compareTo(lowest[level]) >= 0){
+						rightMask |= 1L << (2 * level);
+					}
+					context.push(currNode.getRightChild(), nextLevel, rightMask);
+				}
+				if (stats != null){
+					countPrunedChildren(stats, currNode, level, lowest, highest);
+				}
+			}
+			return result;
+		} finally {
+			context.release();
+		}
+	}
+	
+	/**
+	 * Counts the children of the node whose subtrees can't have keys within 
+	 * the given range.
+	 */
+	private void countPrunedChildren(QueryStats stats, Node<T> node, int level, 
+			Comparable[] lowest, Comparable[] highest){
+		if (node.getLeftChild() != null && !roomForSmallerKeys(node, level, lowest[level])){
+			++stats.subtreesPruned;
+		}
+		if (node.getRightChild() != null && !roomForBiggerKeys(node, level, highest[level])){
+			++stats.subtreesPruned;
+		}
+	}
+	
+	/**
+	 * Visits the node if it hasn't been removed and pushes its children, 
+	 * marked as within the range. 
+	 * 
+	 * @return
+	 * False if the visitor stopped the search.
+	 */
+	private boolean visitWholeSubtree(QueryContext context, Node<T> subRoot, int level, 
+			KDTreeVisitor<? super T> visitor){
+		
+		if (!subRoot.isDeleted() && !visitor.visit(subRoot.keys, subRoot.getValue())){
+			return false;
+		}
+		if (subRoot.getLeftChild() != null){
+			context.push(subRoot.getLeftChild(), incrementDimension(level), 1);
+		}
+		if (subRoot.getRightChild() != null){
+			context.push(subRoot.getRightChild(), incrementDimension(level), 1);
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns true if the bounding box of the node's subtree has any keys in 
+	 * common with the given range.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean boxIntersectsRange(Node<T> node, Comparable[] lowest, Comparable[] highest){
+		for (int d=0; d < DIMENSIONS; ++d){
+			if (node.boxMax[d].compareTo(lowest[d]) < 0 || node.boxMin[d].compareTo(highest[d]) > 0){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns true if the bounding box of the node's subtree lies entirely 
+	 * within the given range.
+	 */
+	@SuppressWarnings("unchecked")
+	private boolean isBoxWithinRange(Node<T> node, Comparable[] lowest, Comparable[] highest){
+		for (int d=0; d < DIMENSIONS; ++d){
+			if (node.boxMin[d].compareTo(lowest[d]) < 0 || node.boxMax[d].compareTo(highest[d]) > 0){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks if the node hasn't been removed and all of its keys are within 
+	 * the given range.
+	 * 
+	 * @param currNode
+	 * The node to check.
+	 * 
+	 * @param level
+	 * The dimension to start checking from.
+	 * 
+	 * @return
+	 * True if the node's value belongs in the range.
+	 */
+	private boolean isWithinRange(Node<T> currNode, int level, Comparable[] lowest, Comparable[] highest){
+		Comparable currKey = currNode.getKey(level);
+		int tempLevel = level;
+		boolean allKeysWithinRange = true;
+		do{
+			if(currKey.compareTo(lowest[tempLevel]) < 0 || currKey.compareTo(highest[tempLevel]) > 0){ 
+				allKeysWithinRange = false; //found value outside range
+			}else{
+				tempLevel = incrementDimension(tempLevel);
+				currKey = currNode.getKey(tempLevel);
+			}
+		}while(tempLevel != level && allKeysWithinRange); //Goes through all keys in current node,  
+														  //checks if they are valid
+		return allKeysWithinRange && !currNode.isDeleted();
+	}
+	
+	/**
+	 * Returns an iterator over the values within the given range. The tree 
+	 * is searched lazily, one matching value at a time, so stopping early 
+	 * only costs the nodes visited so far. 
+	 * 
+	 * Unlike range, the values aren't collected in a set. A value stored 
+	 * with several different keys within the range is returned once per 
+	 * key. The tree may not be changed while the iterator is used.
+	 * 
+	 * @param lowest
+	 * An array of the lower bound values.
+	 * 
+	 * @param highest
+	 * An array of the higher bound values.
+	 * 
+	 * @return
+	 * An iterator over the values within the range, in no particular order.
+	 * 
+	 * @throws NullPointerException if any of the arguments are null.
+	 * 
+	 * @throws IllegalArgumentException if the argument arrays have
+	 * to few or many elements.
+	 */
+	public Iterator<T> rangeIterator(Comparable[] lowest, Comparable[] highest){
+		return Spliterators.iterator(rangeSpliterator(lowest, highest));
+	}
+	
+	/**
+	 * Returns a stream of the values within the given range. The stream is 
+	 * lazy in the same way as rangeIterator. A parallel stream is split 
+	 * along the subtrees of the tree.
+	 * 
+	 * @see #rangeIterator(Comparable[], Comparable[])
+	 */
+	public Stream<T> rangeStream(Comparable[] lowest, Comparable[] highest){
+		return StreamSupport.stream(rangeSpliterator(lowest, highest), false);
+	}
+	
+	/**
+	 * Returns a lazy iterator over all values with the supplied keys.
+	 * 
+	 * @see #get(Comparable[])
+	 * @see #rangeIterator(Comparable[], Comparable[])
+	 */
+	public Iterator<T> getIterator(Comparable[] keys){
+		checkKeys(keys);
+		return rangeIterator(keys, keys);
+	}
+	
+	/**
+	 * Returns a lazy stream of all values with the supplied keys.
+	 * 
+	 * @see #get(Comparable[])
+	 * @see #rangeStream(Comparable[], Comparable[])
+	 */
+	public Stream<T> getStream(Comparable[] keys){
+		checkKeys(keys);
+		return rangeStream(keys, keys);
+	}
+	
+	private Spliterator<T> rangeSpliterator(Comparable[] lowest, Comparable[] highest){
+		checkRange(lowest, highest);
+		return new RangeSpliterator(root, lowest, highest);
+	}
+	
+	/**
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to 
+	 * the number of dimensions in the KD-Tree.
+	 */
+	private void checkKeys(Comparable[] keys){
+		if (keys == null)
+			throw new NullPointerException();
+		if (keys.length != DIMENSIONS)
+			throw new IllegalArgumentException();
+	}
+	
+	/**
+	 * Searches the tree for values within a range one value at a time. The 
+	 * subtrees left to search are kept in a stack. Splitting hands over the 
+	 * subtree at the bottom of the stack, which is the one closest to the 
+	 * root and so the largest.
+	 */
+	private class RangeSpliterator implements Spliterator<T> {
+		
+		private final Comparable[] lowest;
+		private final Comparable[] highest;
+		
+		// Subtrees left to search are found in [bottom, top).
+		private Node<T>[] nodesToVisit;
+		private int[] nodeLevels;
+		private int bottom = 0;
+		private int top = 0;
+		
+		// A value found while splitting that hasn't been returned yet.
+		private T pending = null;
+		
+		@SuppressWarnings("unchecked")
+		RangeSpliterator(Node<T> subRoot, Comparable[] lowest, Comparable[] highest){
+			this.lowest = lowest;
+			this.highest = highest;
+			nodesToVisit = new Node[16];
+			nodeLevels = new int[16];
+			if (subRoot != null){
+				push(subRoot, 0);
+			}
+		}
+		
+		private RangeSpliterator(Node<T> subRoot, int level, Comparable[] lowest, Comparable[] highest){
+			this(null, lowest, highest);
+			push(subRoot, level);
+		}
+		
+		private void push(Node<T> node, int level){
+			if (top == nodesToVisit.length){
+				int count = top - bottom;
+				Node<T>[] newNodes = Arrays.copyOf(nodesToVisit, Math.max(16, count * 2));
+				int[] newLevels = Arrays.copyOf(nodeLevels, newNodes.length);
+				System.arraycopy(nodesToVisit, bottom, newNodes, 0, count);
+				System.arraycopy(nodeLevels, bottom, newLevels, 0, count);
+				nodesToVisit = newNodes;
+				nodeLevels = newLevels;
+				bottom = 0;
+				top = count;
+			}
+			nodesToVisit[top] = node;
+			nodeLevels[top] = level;
+			++top;
+		}
+		
+		/**
+		 * Pops the top subtree and pushes its children that can contain 
+		 * values within the range.
+		 * 
+		 * @return
+		 * - the popped node.
+		 */
+		private Node<T> expand(){
+			--top;
+			Node<T> currNode = nodesToVisit[top];
+			int level = nodeLevels[top];
+			nodesToVisit[top] = null;
+			
+			if (boundingBoxes && !boxIntersectsRange(currNode, lowest, highest)){
+				return null;
+			}
+			if(currNode.getRightChild() != null && roomForBiggerKeys(currNode, level, highest[level])){
+				push(currNode.getRightChild(), incrementDimension(level));
+			}
+			if(currNode.getLeftChild() != null && roomForSmallerKeys(currNode, level, lowest[level])){ 
+				push(currNode.getLeftChild(), incrementDimension(level));
+			}
+			if (isWithinRange(currNode, level, lowest, highest)){
+				return currNode;
+			}
+			return null;
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action){
+			if (action == null){
+				throw new NullPointerException();
+			}
+			if (pending != null){
+				T value = pending;
+				pending = null;
+				action.accept(value);
+				return true;
+			}
+			while (top > bottom){
+				Node<T> found = expand();
+				if (found != null){
+					action.accept(found.getValue());
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		@Override
+		public Spliterator<T> trySplit(){
+			if (top - bottom == 1 && pending == null){
+				Node<T> found = expand();
+				if (found != null){
+					pending = found.getValue();
+				}
+			}
+			if (top - bottom < 2){
+				return null;
+			}
+			
+			Node<T> splitRoot = nodesToVisit[bottom];
+			int splitLevel = nodeLevels[bottom];
+			nodesToVisit[bottom] = null;
+			++bottom;
+			return new RangeSpliterator(splitRoot, splitLevel, lowest, highest);
+		}
+		
+		/**
+		 * The number of values left in the subtrees, which is an upper bound 
+		 * of the number of values left within the range.
+		 */
+		@Override
+		public long estimateSize(){
+			long estimate = pending != null ? 1 : 0;
+			for (int i=bottom; i < top; ++i){
+				estimate += nodesToVisit[i].subtreeSize - nodesToVisit[i].deadCount;
+			}
+			return estimate;
+		}
+		
+		@Override
+		public int characteristics(){
+			return NONNULL;
+		}
+	}
+	
+	/**
+	 * Retrieves all the values that are within the given range, using the 
+	 * common fork/join pool.
+	 * 
+	 * @see #parallelRange(Comparable[], Comparable[], ForkJoinPool)
+	 */
+	public Set<T> parallelRange(Comparable[] lowest, Comparable[] highest){
+		return parallelRange(lowest, highest, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Retrieves all the values that are within the given range, just like 
+	 * range, but searches disjoint subtrees in parallel. Subtrees with less 
+	 * than PARALLEL_CUTOFF nodes are searched sequentially. Every task 
+	 * collects its values in a list of its own, and the lists are merged 
+	 * once all tasks are done.
+	 * 
+	 * The tree may not be changed during the search.
+	 * 
+	 * @param lowest
+	 * An array of the lower bound values.
+	 * 
+	 * @param highest
+	 * An array of the higher bound values.
+	 * 
+	 * @param pool
+	 * The pool to run the search in.
+	 * 
+	 * @return
+	 * A set containing all the values within the range.
+	 * 
+	 * @throws NullPointerException if any of the arguments are null.
+	 * 
+	 * @throws IllegalArgumentException if the argument arrays have
+	 * to few or many elements.
+	 */
+	public Set<T> parallelRange(Comparable[] lowest, Comparable[] highest, ForkJoinPool pool){
+		checkRange(lowest, highest);
+		if (pool == null){
+			throw new NullPointerException();
+		}
+		
+		if(root == null){
+			return new HashSet<T>();
+		}
+		RangeTask task = new RangeTask(root, 0, lowest, highest);
+		pool.invoke(task);
+		Set<T> correctVals = new HashSet<T>();
+		task.addTo(correctVals);
+		return correctVals;
+	}
+	
+	/**
+	 * Searches a subtree for values within a range. Large subtrees are 
+	 * split into one task per child. The values are left in the lists of 
+	 * the tasks, so that they are only copied once, by addTo.
+	 */
+	private class RangeTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Node<T> subRoot;
+		private final int level;
+		private final Comparable[] lowest;
+		private final Comparable[] highest;
+		
+		private final List<T> correctVals = new ArrayList<T>();
+		private RangeTask leftTask;
+		private RangeTask rightTask;
+		
+		RangeTask(Node<T> subRoot, int level, Comparable[] lowest, Comparable[] highest){
+			this.subRoot = subRoot;
+			this.level = level;
+			this.lowest = lowest;
+			this.highest = highest;
+		}
+		
+		@Override
+		protected void compute(){
+			if (boundingBoxes && !boxIntersectsRange(subRoot, lowest, highest)){
+				return;
+			}
+			if (subRoot.subtreeSize < PARALLEL_CUTOFF){
+				rangeInSubtree(subRoot, level, lowest, highest, correctVals, null);
+				return;
+			}
+			
+			if (isWithinRange(subRoot, level, lowest, highest)){
+				correctVals.add(subRoot.getValue());
+			}
+			
+			if(subRoot.getLeftChild() != null && roomForSmallerKeys(subRoot, level, lowest[level])){
+				leftTask = new RangeTask(subRoot.getLeftChild(), incrementDimension(level), lowest, highest);
+			}
+			if(subRoot.getRightChild() != null && roomForBiggerKeys(subRoot, level, highest[level])){
+				rightTask = new RangeTask(subRoot.getRightChild(), incrementDimension(level), lowest, highest);
+			}
+			
+			if (leftTask != null && rightTask != null){
+				invokeAll(leftTask, rightTask);
+			} else if (leftTask != null){
+				leftTask.compute();
+			} else if (rightTask != null){
+				rightTask.compute();
+			}
+		}
+		
+		/**
+		 * Adds the values found by this task and its subtasks to result.
+		 */
+		void addTo(Collection<T> result){
+			result.addAll(correctVals);
+			if (leftTask != null){
+				leftTask.addTo(result);
+			}
+			if (rightTask != null){
+				rightTask.addTo(result);
+			}
+		}
+	}
+
+	/**
+	 * Finds the k values whose keys are nearest to the supplied keys using
+	 * the Euclidean distance. The keys in the tree have to be instances of
+	 * Number.
+	 *
+	 * @see #nearest(Comparable[], int, DistanceMetric)
+	 */
+	public List<T> nearest(Comparable[] keys, int k){
+		return nearest(keys, k, StandardMetric.EUCLIDEAN);
+	}
+
+	/**
+	 * Finds the k values whose keys are nearest to the supplied keys.
+	 * Subtrees on the far side of a splitting plane are only searched if the
+	 * plane is closer than the k:th nearest value found so far.
+	 *
+	 * @param keys
+	 * - the keys to find the nearest values to. The array has to be as long
+	 * as the number of dimensions in the tree.
+	 * @param k
+	 * - the number of values to find.
+	 * @param metric
+	 * - the metric used to measure the distance between keys.
+	 *
+	 * @return
+	 * - a list of at most k values, the nearest value first. Values with equal
+	 * distance are ordered arbitrarily. If the tree contains less than k
+	 * values, all values are returned.
+	 *
+	 * @throws NullPointerException if keys or metric are null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree or if k is less than 1.
+	 */
+	public List<T> nearest(Comparable[] keys, int k, DistanceMetric metric){
+		if (keys == null || metric == null){
+			throw new NullPointerException();
+		}
+		if (keys.length != DIMENSIONS){
+			throw new IllegalArgumentException();
+		}
+		if (k < 1){
+			throw new IllegalArgumentException("At least one neighbour has to be searched for.");
+		}
+
+		QueryStats stats = startQuery(QueryType.NEAREST);
+		NearestSearch<T> search = new NearestSearch<T>(DIMENSIONS, metric, k, boundingBoxes);
+		search.search(root, keys);
+
+		List<T> nearestValues = new ArrayList<T>(Math.min(k, size));
+		for (Neighbour<T> neighbour : search.result()){
+			nearestValues.add(neighbour.getValue());
+		}
+		if (stats != null){
+			search.count(stats);
+		}
+		finishQuery(stats, nearestValues.size());
+		return nearestValues;
+	}
+
+	/**
+	 * Finds the k nearest values of every query using the Euclidean
+	 * distance and the common fork/join pool.
+	 *
+	 * @see #batchNearest(List, int, DistanceMetric, ForkJoinPool)
+	 */
+	public List<List<T>> batchNearest(List<Comparable[]> queries, int k){
+		return batchNearest(queries, k, StandardMetric.EUCLIDEAN, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Finds the k nearest values of every query, with the same result as
+	 * calling nearest once per query but much faster for large batches. The
+	 * queries are split into blocks of queries close to each other, and each
+	 * block walks the tree once for all of its queries. A subtree is only
+	 * searched for the queries whose k:th nearest value found so far is
+	 * farther away than the subtree. The blocks are searched in parallel.
+	 *
+	 * The tree may not be changed during the search.
+	 *
+	 * @param queries
+	 * - the keys to find the nearest values to. Every array has to be as
+	 * long as the number of dimensions in the tree.
+	 * @param k
+	 * - the number of values to find per query.
+	 * @param metric
+	 * - the metric used to measure the distance between keys.
+	 * @param pool
+	 * - the pool to run the search in.
+	 *
+	 * @return
+	 * - one list per query, in the order of the queries, with at most k
+	 * values each, the nearest value first.
+	 *
+	 * @throws NullPointerException if any of the arguments or queries are
+	 * null.
+	 * @throws IllegalArgumentException if the length of any query isn't equal
+	 * to the number of dimensions in the KD-Tree or if k is less than 1.
+	 *
+	 * @see #nearest(Comparable[], int, DistanceMetric)
+	 */
+	public List<List<T>> batchNearest(List<Comparable[]> queries, int k, DistanceMetric metric, ForkJoinPool pool){
+		if (queries == null || metric == null || pool == null){
+			throw new NullPointerException();
+		}
+		for (Comparable[] keys : queries){
+			if (keys == null){
+				throw new NullPointerException();
+			}
+			if (keys.length != DIMENSIONS){
+				throw new IllegalArgumentException();
+			}
+		}
+		if (k < 1){
+			throw new IllegalArgumentException("At least one neighbour has to be searched for.");
+		}
+
+		QueryStats stats = startQuery(QueryType.BATCH_NEAREST);
+		BatchNearestSearch<T> search = new BatchNearestSearch<T>(DIMENSIONS, metric, k, root, 
+				new ArrayList<Comparable[]>(queries), stats);
+		pool.invoke(search.task());
+		List<List<T>> results = search.results();
+		if (stats != null){
+			long found = 0;
+			for (List<T> values : results){
+				found += values.size();
+			}
+			finishQuery(stats, found);
+		}
+		return results;
+	}
+
+	/**
+	 * Finds approximately the k values whose keys are nearest to the
+	 * supplied keys, trading accuracy for speed. Subtrees are searched
+	 * closest first and skipped unless they can contain a value more than
+	 * 1 + epsilon times closer than the k:th nearest value found so far. The
+	 * search stops after maxVisits nodes, so its cost is bounded no matter
+	 * how many dimensions the tree has.
+	 *
+	 * With an epsilon of 0 and no limit on the visits, the result is exact.
+	 * With a limit but no epsilon, every returned value is still among the
+	 * nearest values of the nodes that were visited.
+	 *
+	 * @param keys
+	 * - the keys to find the nearest values to. The array has to be as long
+	 * as the number of dimensions in the tree.
+	 * @param k
+	 * - the number of values to find.
+	 * @param metric
+	 * - the metric used to measure the distance between keys.
+	 * @param epsilon
+	 * - the allowed relative error. The i:th returned value is at most
+	 * 1 + epsilon times farther away than the true i:th nearest value, unless
+	 * the visit limit is reached.
+	 * @param maxVisits
+	 * - the greatest number of nodes to check.
+	 *
+	 * @return
+	 * - the found neighbours and the number of visited nodes.
+	 *
+	 * @throws NullPointerException if keys or metric are null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree, if k or maxVisits is less than
+	 * 1 or if epsilon is negative or NaN.
+	 */
+	public NearestResult<T> approximateNearest(Comparable[] keys, int k, DistanceMetric metric, 
+			double epsilon, int maxVisits){
+		if (keys == null || metric == null){
+			throw new NullPointerException();
+		}
+		if (keys.length != DIMENSIONS){
+			throw new IllegalArgumentException();
+		}
+		if (k < 1){
+			throw new IllegalArgumentException("At least one neighbour has to be searched for.");
+		}
+		if (!(epsilon >= 0)){
+			throw new IllegalArgumentException("Epsilon can't be negative or NaN.");
+		}
+		if (maxVisits < 1){
+			throw new IllegalArgumentException("At least one node has to be visited.");
+		}
+
+		QueryStats stats = startQuery(QueryType.APPROXIMATE_NEAREST);
+		NearestSearch<T> search = new NearestSearch<T>(DIMENSIONS, metric, k, boundingBoxes, epsilon, maxVisits);
+		search.searchBestBinFirst(root, keys);
+		NearestResult<T> result = new NearestResult<T>(search.result(), search.visited(), search.visitLimitReached());
+		if (stats != null){
+			search.count(stats);
+		}
+		finishQuery(stats, result.getNeighbours().size());
+		return result;
+	}
+
+	/**
+	 * Finds all values whose keys are within the Euclidean distance radius
+	 * of the supplied keys. The keys in the tree have to be instances of
+	 * Number.
+	 *
+	 * @see #withinRadius(Comparable[], double, DistanceMetric)
+	 */
+	public Set<T> withinRadius(Comparable[] center, double radius){
+		return withinRadius(center, radius, StandardMetric.EUCLIDEAN);
+	}
+
+	/**
+	 * Finds all values whose keys are within a distance of the supplied keys.
+	 * Subtrees on the far side of a splitting plane are only searched if the
+	 * plane is within the radius, so far fewer keys are checked than by a
+	 * range search over the box around the ball.
+	 *
+	 * @param center
+	 * - the keys to measure the distance from. The array has to be as long
+	 * as the number of dimensions in the tree.
+	 * @param radius
+	 * - the greatest distance of the found values. Inclusive.
+	 * @param metric
+	 * - the metric used to measure the distance between keys.
+	 *
+	 * @return
+	 * - a set containing all values within the radius.
+	 *
+	 * @throws NullPointerException if center or metric are null.
+	 * @throws IllegalArgumentException if the length of center isn't equal to
+	 * the number of dimensions in the KD-Tree or if radius is negative or NaN.
+	 */
+	public Set<T> withinRadius(Comparable[] center, double radius, DistanceMetric metric){
+		checkRadiusArguments(center, radius, metric);
+
+		QueryStats stats = startQuery(QueryType.RADIUS);
+		final Set<T> foundValues = new HashSet<T>();
+		RadiusSearch<T> search = new RadiusSearch<T>(DIMENSIONS, metric, radius, boundingBoxes){
+			@Override
+			boolean found(Node<T> node, double distance){
+				foundValues.add(node.value);
+				return true;
+			}
+		};
+		search.search(root, center);
+		if (stats != null){
+			search.count(stats);
+		}
+		finishQuery(stats, foundValues.size());
+		return foundValues;
+	}
+
+	/**
+	 * Finds all values whose keys are within a distance of the supplied keys
+	 * together with their keys and distances. Equal values with different
+	 * keys are all returned.
+	 *
+	 * @param center
+	 * - the keys to measure the distance from. The array has to be as long
+	 * as the number of dimensions in the tree.
+	 * @param radius
+	 * - the greatest distance of the found values. Inclusive.
+	 * @param metric
+	 * - the metric used to measure the distance between keys.
+	 *
+	 * @return
+	 * - a list of the found neighbours, the nearest neighbour first.
+	 *
+	 * @throws NullPointerException if center or metric are null.
+	 * @throws IllegalArgumentException if the length of center isn't equal to
+	 * the number of dimensions in the KD-Tree or if radius is negative or NaN.
+	 *
+	 * @see #withinRadius(Comparable[], double, DistanceMetric)
+	 */
+	public List<Neighbour<T>> neighboursWithinRadius(Comparable[] center, double radius, DistanceMetric metric){
+		checkRadiusArguments(center, radius, metric);
+
+		QueryStats stats = startQuery(QueryType.RADIUS);
+		final List<Neighbour<T>> neighbours = new ArrayList<Neighbour<T>>();
+		RadiusSearch<T> search = new RadiusSearch<T>(DIMENSIONS, metric, radius, boundingBoxes){
+			@Override
+			boolean found(Node<T> node, double distance){
+				neighbours.add(new Neighbour<T>(node.keys, node.value, distance));
+				return true;
+			}
+		};
+		search.search(root, center);
+		Collections.sort(neighbours, Neighbour.NEAREST_FIRST);
+		if (stats != null){
+			search.count(stats);
+		}
+		finishQuery(stats, neighbours.size());
+		return neighbours;
+	}
+
+	private void checkRadiusArguments(Comparable[] center, double radius, DistanceMetric metric){
+		if (center == null || metric == null){
+			throw new NullPointerException();
+		}
+		if (center.length != DIMENSIONS){
+			throw new IllegalArgumentException();
+		}
+		if (!(radius >= 0)){
+			throw new IllegalArgumentException("The radius can't be negative or NaN.");
+		}
+	}
+
 	
 	
 	/**
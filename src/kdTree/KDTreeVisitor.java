@@ -0,0 +1,30 @@
+package kdTree;
+
+/**
+ * A KDTreeVisitor is called once for every key-value pair found by a search 
+ * of a KD-Tree. It decides if the search should go on, which makes it 
+ * possible to stop as soon as enough pairs have been found.
+ * 
+ * @param <T>
+ * - the type of the values in the searched tree.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ */
+public interface KDTreeVisitor<T> {
+	
+	/**
+	 * Called for every key-value pair found by the search.
+	 * 
+	 * @param keys
+	 * - the keys of the found pair. The array belongs to the tree and may not 
+	 * be changed or kept after the call.
+	 * @param value
+	 * - the value of the found pair.
+	 * 
+	 * @return
+	 * - true if the search should go on, false if it should stop.
+	 */
+	boolean visit(Comparable[] keys, T value);
+	
+}
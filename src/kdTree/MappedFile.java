@@ -0,0 +1,140 @@
+package kdTree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg 
+ * 
+ * 
+ * MappedFile is a read-only, little-endian memory mapping of a whole file. 
+ * A single mapping can't be larger than 2 GB, so larger files are mapped in 
+ * chunks. Every chunk maps a few bytes more than its share of the file, so 
+ * a primitive starting in a chunk can always be read from that chunk. 
+ * 
+ * The chunks are unmapped by close. Readers call acquire before reading 
+ * and release afterwards, and close waits until the file has no readers, 
+ * so no chunk is read after it's unmapped.
+ */
+class MappedFile {
+	
+	private static final long DEFAULT_CHUNK_SIZE = 1L << 30;
+	
+	// The largest primitive that is read.
+	private static final int OVERLAP = 8;
+	
+	// The number of readers once the file has been closed.
+	private static final int CLOSED = Integer.MIN_VALUE;
+	
+	private final long chunkSize;
+	private final long length;
+	private final ByteBuffer[] chunks;
+	private final AtomicInteger readers = new AtomicInteger();
+	
+	MappedFile(Path path) throws IOException {
+		this(path, DEFAULT_CHUNK_SIZE);
+	}
+	
+	MappedFile(Path path, long chunkSize) throws IOException {
+		this.chunkSize = chunkSize;
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			length = channel.size();
+			int chunkCount = (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+			chunks = new ByteBuffer[chunkCount];
+			for (int i=0; i < chunkCount; ++i){
+				long start = i * chunkSize;
+				long size = Math.min(length - start, chunkSize + OVERLAP);
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size).order(ByteOrder.LITTLE_ENDIAN);
+			}
+		} finally {
+			// The mappings stay valid after the channel is closed.
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Registers a reader of the file. Every successful call has to be 
+	 * followed by a call to release.
+	 * 
+	 * @return
+	 * - false if the file has been closed and can't be read.
+	 */
+	boolean acquire(){
+		while (true){
+			int count = readers.get();
+			if (count == CLOSED){
+				return false;
+			}
+			if (readers.compareAndSet(count, count + 1)){
+				return true;
+			}
+		}
+	}
+	
+	void release(){
+		readers.decrementAndGet();
+	}
+	
+	/**
+	 * Unmaps the chunks once the current readers have released the file. 
+	 * Closing a closed file does nothing. Must not be called by a thread 
+	 * that has acquired the file, since it would wait for itself.
+	 */
+	void close(){
+		while (!readers.compareAndSet(0, CLOSED)){
+			if (readers.get() == CLOSED){
+				return;
+			}
+			Thread.yield();
+		}
+		for (ByteBuffer chunk : chunks){
+			DirectMemory.free(chunk);
+		}
+	}
+	
+	long length(){
+		return length;
+	}
+	
+	int getInt(long position){
+		return chunks[(int) (position / chunkSize)].getInt((int) (position % chunkSize));
+	}
+	
+	long getLong(long position){
+		return chunks[(int) (position / chunkSize)].getLong((int) (position % chunkSize));
+	}
+	
+	double getDouble(long position){
+		return chunks[(int) (position / chunkSize)].getDouble((int) (position % chunkSize));
+	}
+	
+	/**
+	 * Returns a buffer whose remaining bytes are the bytes of the file in 
+	 * [position, position + size). The buffer is a view of the mapping 
+	 * unless the bytes span two chunks, in which case they are copied.
+	 */
+	ByteBuffer slice(long position, int size){
+		ByteBuffer chunk = chunks[(int) (position / chunkSize)];
+		int offset = (int) (position % chunkSize);
+		if (offset + size <= chunk.capacity()){
+			ByteBuffer view = chunk.duplicate();
+			view.limit(offset + size).position(offset);
+			return view.slice();
+		}
+		
+		byte[] copy = new byte[size];
+		for (int i=0; i < size; ++i){
+			long bytePosition = position + i;
+			copy[i] = chunks[(int) (bytePosition / chunkSize)].get((int) (bytePosition % chunkSize));
+		}
+		return ByteBuffer.wrap(copy);
+	}
+	
+}
@@ -0,0 +1,147 @@
+package kdTree;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A read-only KD-Tree with long keys that is searched straight from a
+ * memory-mapped snapshot file. Opening a snapshot only maps the file, no
+ * nodes are read until they are searched and values are only decoded when
+ * they are found. Several processes mapping the same file share its pages.
+ *
+ * Snapshots are written from a LongKDTree with write. The tree in the
+ * snapshot is balanced, regardless of the shape of the written tree.
+ *
+ * @param <T>
+ * - the type of the values in the kd-tree.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ * @see SnapshotFormat
+ */
+public final class MappedLongKDTree<T> extends MappedPrimitiveKDTree<T, long[]> {
+
+	private MappedLongKDTree(MappedFile file, ValueCodec<? extends T> codec) throws IOException {
+		super(file, codec, PrimitiveKeys.LONGS);
+	}
+
+	/**
+	 * Writes a snapshot of the supplied tree to a file. An existing file is
+	 * replaced.
+	 *
+	 * @param tree
+	 * - the tree to write.
+	 * @param codec
+	 * - the codec that encodes the values of the tree.
+	 * @param path
+	 * - the file to write.
+	 *
+	 * @throws NullPointerException if any of the arguments are null.
+	 * @throws IOException if the file can't be written.
+	 */
+	public static <T> void write(LongKDTree<T> tree, ValueCodec<? super T> codec, Path path) throws IOException {
+		MappedPrimitiveKDTree.write(tree, codec, path);
+	}
+
+	/**
+	 * Maps a snapshot file written by write.
+	 *
+	 * @param path
+	 * - the snapshot file.
+	 * @param codec
+	 * - the codec that decodes the values. Has to match the codec the
+	 * snapshot was written with.
+	 *
+	 * @return
+	 * - a tree searching the mapped file.
+	 *
+	 * @throws NullPointerException if any of the arguments are null.
+	 * @throws IOException if the file can't be mapped or isn't a snapshot of
+	 * a tree with long keys.
+	 */
+	public static <T> MappedLongKDTree<T> open(Path path, ValueCodec<? extends T> codec) throws IOException {
+		if (codec == null){
+			throw new NullPointerException();
+		}
+		return new MappedLongKDTree<T>(new MappedFile(path), codec);
+	}
+
+	/**
+	 * Only for testing purposes. Maps the file in chunks of the supplied
+	 * size.
+	 */
+	static <T> MappedLongKDTree<T> open(Path path, ValueCodec<? extends T> codec, long chunkSize) throws IOException {
+		return new MappedLongKDTree<T>(new MappedFile(path, chunkSize), codec);
+	}
+
+	/**
+	 * Finds and returns all values that have the supplied array keys as key.
+	 *
+	 * @param keys
+	 * - the array containing the keys to search for.
+	 *
+	 * @return
+	 * - a set containing all values with the array keys as key.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree.
+	 * @throws IllegalStateException if the tree has been closed.
+	 */
+	public Set<T> get(long[] keys){
+		Set<T> retValue = new HashSet<T>();
+		find(keys, retValue);
+		return retValue;
+	}
+
+	/**
+	 * Returns true if the KD-Tree contains an element with the all the keys
+	 * in the keys array.
+	 *
+	 * @param keys
+	 * - the keys to search for in the KD-Tree.
+	 *
+	 * @return
+	 * - true if at least one element in the tree contains the supplied key.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree.
+	 * @throws IllegalStateException if the tree has been closed.
+	 */
+	public boolean contains(long[] keys){
+		return find(keys, null);
+	}
+
+	/**
+	 * Retrieves all the values that are within the given range.
+	 * The range is kept between values that are found at the same index in the
+	 * argument arrays highest and lowest. Both bounds are inclusive. A range
+	 * where highest is less than lowest in only some of the dimensions
+	 * contains no values.
+	 *
+	 * @param lowest
+	 * An array of the lower bound values.
+	 *
+	 * @param highest
+	 * An array of the higher bound values.
+	 *
+	 * @return
+	 * A set containing all the values within the range.
+	 *
+	 * @throws NullPointerException if any of the arguments are null.
+	 *
+	 * @throws IllegalArgumentException if the argument arrays have
+	 * to few or many elements or if every key in highest is less than the
+	 * key in lowest.
+	 *
+	 * @throws IllegalStateException if the tree has been closed.
+	 */
+	public Set<T> range(long[] lowest, long[] highest){
+		return findRange(lowest, highest);
+	}
+
+}
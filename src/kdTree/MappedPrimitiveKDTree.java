@@ -0,0 +1,269 @@
+package kdTree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The searches shared by the KD-Trees mapped from snapshot files. The keys
+ * of the snapshot are only read through PrimitiveKeys, so the traversal is
+ * written once for all key types.
+ *
+ * @param <T>
+ * - the type of the values in the kd-tree.
+ * @param <K>
+ * - the type of the array of keys, double[] or long[].
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ * @see MappedDoubleKDTree
+ * @see MappedLongKDTree
+ */
+abstract class MappedPrimitiveKDTree<T, K> implements Closeable {
+
+	private final int DIMENSIONS;
+	private final PrimitiveKeys<K> KEYS;
+	private final int size;
+	private final int height;
+	private final int recordSize;
+	private final ValueCodec<? extends T> codec;
+
+	private final MappedFile file;
+
+	MappedPrimitiveKDTree(MappedFile file, ValueCodec<? extends T> codec, PrimitiveKeys<K> keys) throws IOException {
+		try {
+			size = SnapshotFormat.checkHeader(file, keys.snapshotKeyType);
+		} catch (IOException e){
+			file.close();
+			throw e;
+		}
+		DIMENSIONS = file.getInt(12);
+		KEYS = keys;
+		height = 32 - Integer.numberOfLeadingZeros(size);
+		recordSize = SnapshotFormat.recordSize(DIMENSIONS);
+		this.codec = codec;
+		this.file = file;
+	}
+
+	/**
+	 * Writes a snapshot of the supplied tree to a file, see the write
+	 * methods of the subclasses.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T, K> void write(PrimitiveKDTree<T, K> tree, ValueCodec<? super T> codec, Path path) throws IOException {
+		if (codec == null || path == null){
+			throw new NullPointerException();
+		}
+
+		final PrimitiveKeys<K> keyType = tree.KEYS;
+		final List<K> keys = new ArrayList<K>(tree.size());
+		List<T> values = new ArrayList<T>(tree.size());
+		PrimitiveNode<T, K>[] stack = new PrimitiveNode[16];
+		int stackSize = 0;
+		if (tree.getRoot() != null){
+			stack[stackSize++] = tree.getRoot();
+		}
+		while (stackSize > 0){
+			PrimitiveNode<T, K> currNode = stack[--stackSize];
+			keys.add(currNode.keys);
+			values.add(currNode.value);
+
+			if (stackSize + 2 > stack.length){
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			if (currNode.leftChild != null){
+				stack[stackSize++] = currNode.leftChild;
+			}
+			if (currNode.rightChild != null){
+				stack[stackSize++] = currNode.rightChild;
+			}
+		}
+
+		SnapshotFormat.write(path, keyType.snapshotKeyType, tree.dimensions(),
+				new SnapshotFormat.KeyOrder(){
+					@Override
+					public int compare(int lhs, int rhs, int dimension){
+						return keyType.compare(keys.get(lhs), keys.get(rhs), dimension);
+					}
+				},
+				new SnapshotFormat.KeyWriter(){
+					@Override
+					public void put(ByteBuffer buffer, int node){
+						keyType.put(buffer, keys.get(node));
+					}
+				},
+				values, codec);
+	}
+
+	/**
+	 * Returns the size of the KD-Tree. The size is equal to the number of
+	 * elements in the KD-Tree.
+	 *
+	 * @return
+	 * - the size of the KD-Tree.
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns the number of dimensions of the KD-Tree.
+	 *
+	 * @return
+	 * - the number of dimensions.
+	 */
+	public int dimensions(){
+		return DIMENSIONS;
+	}
+
+	/**
+	 * Unmaps the snapshot file. Searches that are running when the tree is
+	 * closed are finished first, later searches throw an
+	 * IllegalStateException. Closing a closed tree does nothing.
+	 */
+	@Override
+	public void close(){
+		file.close();
+	}
+
+	private long record(int index){
+		return SnapshotFormat.HEADER_SIZE + (long) index * recordSize;
+	}
+
+	private T value(MappedFile mapped, int index){
+		long record = record(index) + DIMENSIONS * 8;
+		long valuesOffset = record(size);
+		return codec.decode(mapped.slice(valuesOffset + mapped.getLong(record), mapped.getInt(record + 8)));
+	}
+
+	private boolean isInRange(MappedFile mapped, int index, K lowest, K highest){
+		long record = record(index);
+		for (int d=0; d < DIMENSIONS; ++d){
+			if (KEYS.compareMapped(mapped, record, lowest, d) < 0 ||
+					KEYS.compareMapped(mapped, record, highest, d) > 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that keys can be used to search the KD-Tree.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree or if any of the keys can't be
+	 * ordered.
+	 */
+	private void checkKeys(K keys){
+		if (keys == null){
+			throw new NullPointerException();
+		}
+		if (KEYS.length(keys) != DIMENSIONS){
+			throw new IllegalArgumentException();
+		}
+		KEYS.checkValues(keys);
+	}
+
+	/**
+	 * Adds the values with the supplied keys to found, or returns true as
+	 * soon as one is found if found is null.
+	 */
+	boolean find(K keys, Set<T> found){
+		checkKeys(keys);
+		return search(keys, keys, found);
+	}
+
+	/**
+	 * Returns the values within the range, after checking the bounds.
+	 */
+	Set<T> findRange(K lowest, K highest){
+		if (lowest == null || highest == null){
+			throw new NullPointerException();
+		}
+		if (KEYS.length(lowest) != DIMENSIONS || KEYS.length(highest) != DIMENSIONS){
+			throw new IllegalArgumentException("The input arrays must have as many elements as there are dimensions.");
+		}
+		KEYS.checkValues(lowest);
+		KEYS.checkValues(highest);
+		if (KEYS.isInverted(lowest, highest)){
+			throw new IllegalArgumentException("The keys in highest can't be less than lowest.");
+		}
+
+		Set<T> correctVals = new HashSet<T>();
+		search(lowest, highest, correctVals);
+		return correctVals;
+	}
+
+	/**
+	 * Visits all nodes within the range and adds their values to found, or
+	 * returns true at the first one if found is null. Keys equal to a
+	 * splitting key can be found on both sides of it, so both subtrees are
+	 * searched when the range contains the splitting key.
+	 *
+	 * @return
+	 * - true if any node was found within the range.
+	 */
+	private boolean search(K lowest, K highest, Set<T> found){
+		if (!file.acquire()){
+			throw new IllegalStateException("The tree has been closed.");
+		}
+		try {
+			return search(file, lowest, highest, found);
+		} finally {
+			file.release();
+		}
+	}
+
+	private boolean search(MappedFile mapped, K lowest, K highest, Set<T> found){
+		if (size == 0){
+			return false;
+		}
+
+		int[] indexStack = new int[height + 1];
+		int[] dimensionStack = new int[height + 1];
+		int stackSize = 0;
+		indexStack[stackSize] = 0;
+		dimensionStack[stackSize] = 0;
+		++stackSize;
+
+		boolean anyFound = false;
+		while (stackSize > 0){
+			--stackSize;
+			int index = indexStack[stackSize];
+			int dimension = dimensionStack[stackSize];
+
+			if (isInRange(mapped, index, lowest, highest)){
+				if (found == null){
+					return true;
+				}
+				found.add(value(mapped, index));
+				anyFound = true;
+			}
+
+			long record = record(index);
+			int nextDimension = dimension + 1 < DIMENSIONS ? dimension + 1 : 0;
+			int left = 2 * index + 1;
+			int right = left + 1;
+			if (right < size && KEYS.compareMapped(mapped, record, highest, dimension) <= 0){
+				indexStack[stackSize] = right;
+				dimensionStack[stackSize] = nextDimension;
+				++stackSize;
+			}
+			if (left < size && KEYS.compareMapped(mapped, record, lowest, dimension) >= 0){
+				indexStack[stackSize] = left;
+				dimensionStack[stackSize] = nextDimension;
+				++stackSize;
+			}
+		}
+		return anyFound;
+	}
+
+}
@@ -0,0 +1,73 @@
+package kdTree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of an approximate nearest neighbour search: the found
+ * neighbours together with how much of the tree was searched to find them.
+ *
+ * @param <T>
+ * - the type of the found values.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ * @see KDTree#approximateNearest(Comparable[], int, DistanceMetric, double, int)
+ */
+public final class NearestResult<T> {
+
+	private final List<Neighbour<T>> neighbours;
+	private final int nodesVisited;
+	private final boolean visitLimitReached;
+
+	NearestResult(List<Neighbour<T>> neighbours, int nodesVisited, boolean visitLimitReached){
+		this.neighbours = Collections.unmodifiableList(neighbours);
+		this.nodesVisited = nodesVisited;
+		this.visitLimitReached = visitLimitReached;
+	}
+
+	/**
+	 * @return
+	 * - the found neighbours, the nearest neighbour first.
+	 */
+	public List<Neighbour<T>> getNeighbours(){
+		return neighbours;
+	}
+
+	/**
+	 * @return
+	 * - the values of the found neighbours, the nearest value first.
+	 */
+	public List<T> getValues(){
+		List<T> values = new ArrayList<T>(neighbours.size());
+		for (Neighbour<T> neighbour : neighbours){
+			values.add(neighbour.getValue());
+		}
+		return values;
+	}
+
+	/**
+	 * @return
+	 * - the number of nodes whose keys were checked.
+	 */
+	public int getNodesVisited(){
+		return nodesVisited;
+	}
+
+	/**
+	 * @return
+	 * - true if the search was stopped by the limit of visited nodes before
+	 * every subtree that could contain a closer neighbour was searched.
+	 */
+	public boolean isVisitLimitReached(){
+		return visitLimitReached;
+	}
+
+	@Override
+	public String toString(){
+		return neighbours + " (" + nodesVisited + " nodes visited)";
+	}
+
+}
@@ -0,0 +1,312 @@
+package kdTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ *
+ * NearestSearch finds the k nearest neighbours of a key in a KD-Tree. The
+ * found neighbours are kept in a bounded priority queue with the farthest
+ * neighbour on top. Once the queue is full, subtrees on the far side of a
+ * splitting plane are skipped if the plane is farther away than the farthest
+ * neighbour found so far. If the tree keeps bounding boxes, subtrees whose
+ * boxes are farther away than the farthest neighbour are skipped as well.
+ *
+ * An approximate search skips subtrees that can't contain a neighbour more
+ * than 1 + epsilon times closer than the farthest neighbour, and stops after
+ * visiting a limited number of nodes. It searches best bin first: the
+ * subtrees left to search are kept in a priority queue with the closest
+ * subtree on top, so the nodes most likely to be neighbours are visited
+ * before the limit is reached.
+ *
+ * @param <T>
+ * - the type of the values in the searched tree.
+ */
+class NearestSearch<T>{
+
+	private final int DIMENSIONS;
+	private final DistanceMetric metric;
+	private final int k;
+	private final boolean useBoxes;
+	private final double pruneFactor;
+	private final int maxVisits;
+	private final PriorityQueue<Neighbour<T>> neighbours;
+
+	private int visited = 0;
+	private int measured = 0;
+	private int pruned = 0;
+	private boolean visitLimitReached = false;
+
+	// Nodes left to visit, their dimensions and the least possible distance
+	// from the searched keys to the keys in their subtrees.
+	private Node<T>[] nodeStack;
+	private int[] dimensionStack;
+	private double[] boundStack;
+	private int stackSize = 0;
+
+	NearestSearch(int dimensions, DistanceMetric metric, int k, boolean useBoxes){
+		this(dimensions, metric, k, useBoxes, 0, Integer.MAX_VALUE);
+	}
+
+	@SuppressWarnings("unchecked")
+	NearestSearch(int dimensions, DistanceMetric metric, int k, boolean useBoxes, double epsilon, int maxVisits){
+		DIMENSIONS = dimensions;
+		this.metric = metric;
+		this.k = k;
+		this.useBoxes = useBoxes;
+		pruneFactor = 1 + epsilon;
+		this.maxVisits = maxVisits;
+		// Not sized by k, which may be far larger than the tree.
+		neighbours = new PriorityQueue<Neighbour<T>>(Neighbour.FARTHEST_FIRST);
+
+		nodeStack = new Node[16];
+		dimensionStack = new int[16];
+		boundStack = new double[16];
+	}
+
+	/**
+	 * Searches the tree with the supplied root for the neighbours of keys.
+	 *
+	 * @param root
+	 * - the root of the tree to search. May be null.
+	 * @param keys
+	 * - the keys to find the neighbours of.
+	 */
+	@SuppressWarnings("unchecked")
+	void search(Node<T> root, Comparable[] keys){
+		if (root != null){
+			push(root, 0, 0);
+		}
+
+		while (stackSize > 0){
+			--stackSize;
+			Node<T> currNode = nodeStack[stackSize];
+			int currDimension = dimensionStack[stackSize];
+			double bound = boundStack[stackSize];
+			nodeStack[stackSize] = null;
+
+			if (!canContainCloser(bound)){
+				++pruned;
+				continue;
+			}
+			++visited;
+			if (useBoxes){
+				bound = Math.max(bound, metric.boxDistance(keys, currNode.boxMin, currNode.boxMax));
+				if (!canContainCloser(bound)){
+					++pruned;
+					continue;
+				}
+			}
+
+			if (!currNode.deleted){
+				++measured;
+				offer(currNode, metric.distance(keys, currNode.keys));
+			}
+
+			Comparable currKey = currNode.keys[currDimension];
+			double planeDistance = metric.axisDistance(keys[currDimension], currKey, currDimension);
+			int nextDimension = incrementDimension(currDimension);
+
+			Node<T> nearChild;
+			Node<T> farChild;
+			// The searched key is less than current node's key.
+			if (currKey.compareTo(keys[currDimension]) > 0){
+				nearChild = currNode.leftChild;
+				farChild = currNode.rightChild;
+			} else {
+				nearChild = currNode.rightChild;
+				farChild = currNode.leftChild;
+			}
+
+			// The far child is pushed first so that the near child is
+			// searched first and shrinks the bound before the far child is
+			// popped.
+			if (farChild != null){
+				push(farChild, nextDimension, Math.max(bound, planeDistance));
+			}
+			if (nearChild != null){
+				push(nearChild, nextDimension, bound);
+			}
+		}
+	}
+
+	/**
+	 * Searches the tree with the supplied root best bin first, until no
+	 * subtree can contain a closer neighbour or maxVisits nodes have been
+	 * visited. Each subtree taken from the queue is followed down to a leaf
+	 * along the near children, while the far children are queued.
+	 *
+	 * @param root
+	 * - the root of the tree to search. May be null.
+	 * @param keys
+	 * - the keys to find the neighbours of.
+	 */
+	@SuppressWarnings("unchecked")
+	void searchBestBinFirst(Node<T> root, Comparable[] keys){
+		PriorityQueue<Branch<T>> branches = new PriorityQueue<Branch<T>>(16, Branch.CLOSEST_FIRST);
+		if (root != null){
+			branches.add(new Branch<T>(root, 0, 0));
+		}
+
+		while (!branches.isEmpty()){
+			Branch<T> branch = branches.poll();
+			// The queued subtrees are all at least as far away.
+			if (!canContainCloser(branch.bound)){
+				pruned += branches.size() + 1;
+				return;
+			}
+
+			Node<T> currNode = branch.node;
+			int currDimension = branch.dimension;
+			double bound = branch.bound;
+			while (currNode != null){
+				if (visited == maxVisits){
+					visitLimitReached = true;
+					return;
+				}
+				++visited;
+
+				if (useBoxes){
+					bound = Math.max(bound, metric.boxDistance(keys, currNode.boxMin, currNode.boxMax));
+					if (!canContainCloser(bound)){
+						++pruned;
+						break;
+					}
+				}
+
+				if (!currNode.deleted){
+					++measured;
+					offer(currNode, metric.distance(keys, currNode.keys));
+				}
+
+				Comparable currKey = currNode.keys[currDimension];
+				double planeDistance = metric.axisDistance(keys[currDimension], currKey, currDimension);
+				int nextDimension = incrementDimension(currDimension);
+
+				Node<T> nearChild;
+				Node<T> farChild;
+				if (currKey.compareTo(keys[currDimension]) > 0){
+					nearChild = currNode.leftChild;
+					farChild = currNode.rightChild;
+				} else {
+					nearChild = currNode.rightChild;
+					farChild = currNode.leftChild;
+				}
+
+				if (farChild != null){
+					double farBound = Math.max(bound, planeDistance);
+					if (canContainCloser(farBound)){
+						branches.add(new Branch<T>(farChild, nextDimension, farBound));
+					} else {
+						++pruned;
+					}
+				}
+				currNode = nearChild;
+				currDimension = nextDimension;
+			}
+		}
+	}
+
+	/**
+	 * A subtree left to search by the best bin first search, with the least
+	 * possible distance from the searched keys to the keys in it.
+	 */
+	private static final class Branch<T> {
+
+		static final Comparator<Branch<?>> CLOSEST_FIRST = new Comparator<Branch<?>>(){
+			@Override
+			public int compare(Branch<?> lhs, Branch<?> rhs){
+				return Double.compare(lhs.bound, rhs.bound);
+			}
+		};
+
+		final Node<T> node;
+		final int dimension;
+		final double bound;
+
+		Branch(Node<T> node, int dimension, double bound){
+			this.node = node;
+			this.dimension = dimension;
+			this.bound = bound;
+		}
+	}
+
+	/**
+	 * Returns true if a subtree where all keys are at least bound away from
+	 * the searched keys can contain a neighbour closer than the ones found,
+	 * by more than the factor allowed by epsilon.
+	 */
+	private boolean canContainCloser(double bound){
+		return neighbours.size() < k || bound * pruneFactor < neighbours.peek().distance;
+	}
+
+	private void offer(Node<T> node, double distance){
+		if (neighbours.size() < k){
+			neighbours.add(new Neighbour<T>(node.keys, node.value, distance));
+		} else if (distance < neighbours.peek().distance){
+			neighbours.poll();
+			neighbours.add(new Neighbour<T>(node.keys, node.value, distance));
+		}
+	}
+
+	private void push(Node<T> node, int dimension, double bound){
+		if (stackSize == nodeStack.length){
+			nodeStack = Arrays.copyOf(nodeStack, stackSize * 2);
+			dimensionStack = Arrays.copyOf(dimensionStack, stackSize * 2);
+			boundStack = Arrays.copyOf(boundStack, stackSize * 2);
+		}
+		nodeStack[stackSize] = node;
+		dimensionStack[stackSize] = dimension;
+		boundStack[stackSize] = bound;
+		++stackSize;
+	}
+
+	private int incrementDimension(int dimension){
+		int newDimension = ++dimension;
+		if (newDimension >= DIMENSIONS){
+			newDimension = 0;
+		}
+		return newDimension;
+	}
+
+	/**
+	 * Returns the number of nodes visited by the search.
+	 */
+	int visited(){
+		return visited;
+	}
+
+	/**
+	 * Adds the work done by the search to stats.
+	 */
+	void count(QueryStats stats){
+		stats.nodesVisited += visited;
+		stats.keyComparisons += measured;
+		stats.subtreesPruned += pruned;
+	}
+
+	/**
+	 * Returns true if the search was stopped by the limit of visited nodes.
+	 */
+	boolean visitLimitReached(){
+		return visitLimitReached;
+	}
+
+	/**
+	 * Returns the found neighbours, the nearest neighbour first.
+	 */
+	List<Neighbour<T>> result(){
+		List<Neighbour<T>> result = new ArrayList<Neighbour<T>>(neighbours);
+		Collections.sort(result, Neighbour.FARTHEST_FIRST);
+		Collections.reverse(result);
+		return result;
+	}
+
+}
@@ -0,0 +1,79 @@
+package kdTree;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A value found by a distance search together with its keys and its 
+ * distance to the searched keys.
+ * 
+ * @param <T>
+ * - the type of the value.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg 
+ */
+public final class Neighbour<T>{
+	
+	/**
+	 * Orders neighbours with the farthest neighbour first.
+	 */
+	static final Comparator<Neighbour<?>> FARTHEST_FIRST = new Comparator<Neighbour<?>>(){
+		@Override
+		public int compare(Neighbour<?> lhs, Neighbour<?> rhs){
+			return Double.compare(rhs.distance, lhs.distance);
+		}
+	};
+	
+	/**
+	 * Orders neighbours with the nearest neighbour first.
+	 */
+	static final Comparator<Neighbour<?>> NEAREST_FIRST = new Comparator<Neighbour<?>>(){
+		@Override
+		public int compare(Neighbour<?> lhs, Neighbour<?> rhs){
+			return Double.compare(lhs.distance, rhs.distance);
+		}
+	};
+	
+	final Comparable[] keys;
+	final T value;
+	final double distance;
+	
+	Neighbour(Comparable[] keys, T value, double distance){
+		this.keys = keys;
+		this.value = value;
+		this.distance = distance;
+	}
+	
+	/**
+	 * Returns a copy of the keys of the value.
+	 * 
+	 * @return
+	 * - the keys.
+	 */
+	public Comparable[] getKeys(){
+		return Arrays.copyOf(keys, keys.length);
+	}
+	
+	/**
+	 * @return
+	 * - the found value.
+	 */
+	public T getValue(){
+		return value;
+	}
+	
+	/**
+	 * @return
+	 * - the distance between the keys of the value and the searched keys.
+	 */
+	public double getDistance(){
+		return distance;
+	}
+	
+	@Override
+	public String toString(){
+		return value + " at " + distance;
+	}
+	
+}
@@ -20,6 +20,13 @@ class Node<T>{
 	Node<T> leftChild;
 	Node<T> rightChild;
 	
+	boolean deleted; // Removed nodes are kept until their subtree is rebuilt
+	int subtreeSize; // The number of nodes in the subtree, removed nodes included
+	int deadCount; // The number of removed nodes in the subtree
+	double aggregate; // The aggregate of the live values in the subtree, if the tree has an aggregation
+	Comparable[] boxMin; // The least keys in the subtree, if the tree keeps bounding boxes
+	Comparable[] boxMax; // The greatest keys in the subtree, if the tree keeps bounding boxes
+	
 	
 	Node(Comparable[] keys, T value){
 		if(keys.length == 0)
@@ -31,6 +38,9 @@ class Node<T>{
 		this.value = value;
 		leftChild = null;
 		rightChild = null;
+		deleted = false;
+		subtreeSize = 1;
+		deadCount = 0;
 	}
 	
 	Node<T> getLeftChild(){
@@ -63,6 +73,30 @@ class Node<T>{
 		return value;
 	}
 	
+	/**
+	 * Returns a copy of the node with the same keys, value, children and 
+	 * subtree information. The key array is shared, since it's never changed, 
+	 * but the bounding box is copied.
+	 */
+	Node<T> copy(){
+		Node<T> copy = new Node<T>(keys, value);
+		copy.leftChild = leftChild;
+		copy.rightChild = rightChild;
+		copy.deleted = deleted;
+		copy.subtreeSize = subtreeSize;
+		copy.deadCount = deadCount;
+		copy.aggregate = aggregate;
+		if (boxMin != null){
+			copy.boxMin = Arrays.copyOf(boxMin, boxMin.length);
+			copy.boxMax = Arrays.copyOf(boxMax, boxMax.length);
+		}
+		return copy;
+	}
+	
+	boolean isDeleted(){
+		return deleted;
+	}
+	
 }
 
 
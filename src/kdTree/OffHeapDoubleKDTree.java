@@ -0,0 +1,470 @@
+package kdTree;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A KD-Tree with double keys that keeps its nodes outside of the heap. It has
+ * the same contract as DoubleKDTree, but the keys and the child links of the
+ * nodes are stored in direct buffers, so only the values are left for the
+ * garbage collector to scan. This lets very large trees run in a small heap.
+ *
+ * The nodes are identified by their insertion index and stored in chunks of
+ * fixed size, each node as its keys followed by the indices of its left and
+ * right child. The chunks are allocated as the tree grows and are freed when
+ * the tree is closed. Closing the tree is required to release the memory
+ * right away, an unclosed tree is released when it's garbage collected.
+ *
+ * The tree is not thread-safe.
+ *
+ * @param <T>
+ * - the type of the values in the kd-tree.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ * @see DoubleKDTree
+ */
+public final class OffHeapDoubleKDTree<T> implements Closeable {
+
+	private static final int DEFAULT_CHUNK_SHIFT = 16;
+	private static final int NONE = -1;
+
+	// The largest array of values the VM can allocate, which limits the size.
+	private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+	private final int DIMENSIONS;
+	private final int recordSize;
+	private final int chunkShift;
+	private final int chunkMask;
+
+	private ByteBuffer[] chunks = new ByteBuffer[4];
+	private int chunkCount = 0;
+	private Object[] values = new Object[16];
+	private boolean closed = false;
+
+	private int size = 0;
+
+	/**
+	 * Creates a new OffHeapDoubleKDTree object with the supplied number of
+	 * dimensions.
+	 *
+	 * @param dimensions
+	 * - the number of dimensions of the KD-Tree. Can not be less than 2.
+	 *
+	 * @throws IllegalArgumentException if dimensions is less than 2.
+	 */
+	public OffHeapDoubleKDTree(int dimensions){
+		this(dimensions, DEFAULT_CHUNK_SHIFT);
+	}
+
+	/**
+	 * Only for testing purposes. Stores 2^chunkShift nodes per chunk.
+	 */
+	OffHeapDoubleKDTree(int dimensions, int chunkShift){
+		if (dimensions < 2){
+			throw new IllegalArgumentException("Less than two dimensions makes this data structure useless.");
+		}
+		if (((long) dimensions * 8 + 8) << chunkShift > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Too many dimensions.");
+		}
+
+		DIMENSIONS = dimensions;
+		recordSize = dimensions * 8 + 8;
+		this.chunkShift = chunkShift;
+		chunkMask = (1 << chunkShift) - 1;
+	}
+
+	/**
+	 * Returns the size of the KD-Tree. The size is equal to the number of
+	 * elements in the KD-Tree.
+	 *
+	 * @return
+	 * - the size of the KD-Tree.
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns the number of dimensions of the KD-Tree.
+	 *
+	 * @return
+	 * - the number of dimensions.
+	 */
+	public int dimensions(){
+		return DIMENSIONS;
+	}
+
+	/**
+	 * Returns the number of bytes allocated outside of the heap.
+	 *
+	 * @return
+	 * - the allocated off-heap memory in bytes.
+	 */
+	public long offHeapBytes(){
+		return (long) chunkCount * recordSize << chunkShift;
+	}
+
+	/**
+	 * Frees the off-heap memory of the tree and drops its values. The tree
+	 * can't be used afterwards. Closing a closed tree has no effect.
+	 */
+	@Override
+	public void close(){
+		if (closed){
+			return;
+		}
+		closed = true;
+		for (int i=0; i < chunkCount; ++i){
+			DirectMemory.free(chunks[i]);
+			chunks[i] = null;
+		}
+		chunkCount = 0;
+		values = null;
+		size = 0;
+	}
+
+	private void checkOpen(){
+		if (closed){
+			throw new IllegalStateException("The tree has been closed.");
+		}
+	}
+
+	private ByteBuffer chunk(int node){
+		return chunks[node >>> chunkShift];
+	}
+
+	private int offset(int node){
+		return (node & chunkMask) * recordSize;
+	}
+
+	private double key(int node, int dimension){
+		return chunk(node).getDouble(offset(node) + dimension * 8);
+	}
+
+	private int leftChild(int node){
+		return chunk(node).getInt(offset(node) + DIMENSIONS * 8);
+	}
+
+	private int rightChild(int node){
+		return chunk(node).getInt(offset(node) + DIMENSIONS * 8 + 4);
+	}
+
+	@SuppressWarnings("unchecked")
+	private T value(int node){
+		return (T) values[node];
+	}
+
+	/**
+	 * Stores a new node without children and returns its index.
+	 */
+	private int newNode(double[] keys, T value){
+		if (size == MAX_SIZE){
+			throw new IllegalStateException("The tree is full, it can't hold more than " + MAX_SIZE + " values.");
+		}
+		int node = size;
+		if ((node >>> chunkShift) == chunkCount){
+			if (chunkCount == chunks.length){
+				chunks = Arrays.copyOf(chunks, chunks.length * 2);
+			}
+			chunks[chunkCount++] = ByteBuffer.allocateDirect(recordSize << chunkShift).order(ByteOrder.nativeOrder());
+		}
+		if (node == values.length){
+			values = Arrays.copyOf(values, (int) Math.min(MAX_SIZE, values.length * 2L));
+		}
+
+		ByteBuffer chunk = chunk(node);
+		int offset = offset(node);
+		for (int d=0; d < DIMENSIONS; ++d){
+			chunk.putDouble(offset + d * 8, keys[d]);
+		}
+		chunk.putInt(offset + DIMENSIONS * 8, NONE);
+		chunk.putInt(offset + DIMENSIONS * 8 + 4, NONE);
+		values[node] = value;
+		++size;
+		return node;
+	}
+
+	/**
+	 * Returns true if the node has the supplied keys.
+	 */
+	private boolean isSameKeys(int node, double[] keys){
+		ByteBuffer chunk = chunk(node);
+		int offset = offset(node);
+		for (int d=0; d < DIMENSIONS; ++d){
+			if (chunk.getDouble(offset + d * 8) != keys[d]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isInRange(int node, double[] lowest, double[] highest){
+		ByteBuffer chunk = chunk(node);
+		int offset = offset(node);
+		for (int d=0; d < DIMENSIONS; ++d){
+			double key = chunk.getDouble(offset + d * 8);
+			if (key < lowest[d] || key > highest[d]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that keys can be used to search the KD-Tree.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree or if any of the keys is NaN.
+	 */
+	private void checkKeys(double[] keys){
+		if (keys == null){
+			throw new NullPointerException();
+		}
+		if (keys.length != DIMENSIONS){
+			throw new IllegalArgumentException();
+		}
+		for (int i=0; i < keys.length; ++i){
+			if (Double.isNaN(keys[i])){
+				throw new IllegalArgumentException("Keys can't be NaN.");
+			}
+		}
+	}
+
+	private int incrementDimension(int dimension){
+		return dimension + 1 < DIMENSIONS ? dimension + 1 : 0;
+	}
+
+	/**
+	 * Finds and returns all values that have the supplied array keys as key.
+	 *
+	 * @param keys
+	 * - the array containing the keys to search for.
+	 *
+	 * @return
+	 * - a set containing all values with the array keys as key.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree or if any of the keys is NaN.
+	 * @throws IllegalStateException if the tree has been closed.
+	 */
+	public Set<T> get(double[] keys){
+		checkOpen();
+		checkKeys(keys);
+
+		Set<T> retValue = new HashSet<T>();
+		int currNode = size > 0 ? 0 : NONE;
+		int currDimension = 0;
+		while (currNode != NONE){
+			if (key(currNode, currDimension) > keys[currDimension]){
+				currNode = leftChild(currNode);
+			} else {
+				if (isSameKeys(currNode, keys)){
+					retValue.add(value(currNode));
+				}
+				currNode = rightChild(currNode);
+			}
+			currDimension = incrementDimension(currDimension);
+		}
+		return retValue;
+	}
+
+	/**
+	 * Returns true if the KD-Tree contains an element with the all the keys
+	 * in the keys array.
+	 *
+	 * @param keys
+	 * - the keys to search for in the KD-Tree.
+	 *
+	 * @return
+	 * - true if at least one element in the tree contains the supplied key.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree or if any of the keys is NaN.
+	 * @throws IllegalStateException if the tree has been closed.
+	 */
+	public boolean contains(double[] keys){
+		checkOpen();
+		checkKeys(keys);
+
+		int currNode = size > 0 ? 0 : NONE;
+		int currDimension = 0;
+		while (currNode != NONE){
+			if (key(currNode, currDimension) > keys[currDimension]){
+				currNode = leftChild(currNode);
+			} else {
+				if (isSameKeys(currNode, keys)){
+					return true;
+				}
+				currNode = rightChild(currNode);
+			}
+			currDimension = incrementDimension(currDimension);
+		}
+		return false;
+	}
+
+	/**
+	 * Inserts the key-value pair in the kd-tree. Two different values may have
+	 * identical keys. However, two equal values may not have identical keys and
+	 * a key-value pair will not be added to the KD-tree in such cases.
+	 * Equality is checked by the equals method.
+	 *
+	 * @param keys
+	 * - the keys with which to search for the value. Keys has to be as long as
+	 * the number of dimensions in the tree.
+	 *
+	 * @param value
+	 * - the value to insert in the tree.
+	 *
+	 * @throws NullPointerException if keys or value are null.
+	 * @throws IllegalArgumentException if the length of keys isn't the same
+	 * as the kd-tree's dimension size or if any of the keys is NaN.
+	 * @throws IllegalStateException if the tree has been closed or is full.
+	 */
+	public void insert(double[] keys, T value){
+		checkOpen();
+		if (keys == null || value == null){
+			throw new NullPointerException("Arguments can't be null.");
+		}
+		checkKeys(keys);
+
+		if (size == 0){
+			newNode(keys, value);
+			return;
+		}
+
+		int currNode = 0;
+		int currDimension = 0;
+		while (true){
+			int linkOffset;
+			if (key(currNode, currDimension) > keys[currDimension]){
+				linkOffset = DIMENSIONS * 8;
+
+			// The insert key is greater than or equal to current node's key.
+			} else {
+
+				// Don't insert a new node if an identical node already exists.
+				if (isSameKeys(currNode, keys) && values[currNode].equals(value)){
+					return;
+				}
+				linkOffset = DIMENSIONS * 8 + 4;
+			}
+
+			int child = chunk(currNode).getInt(offset(currNode) + linkOffset);
+			if (child == NONE){
+				int newNode = newNode(keys, value);
+				chunk(currNode).putInt(offset(currNode) + linkOffset, newNode);
+				return;
+			}
+			currNode = child;
+			currDimension = incrementDimension(currDimension);
+		}
+	} // insert
+
+	/**
+	 * Retrieves all the values that are within the given range.
+	 * The range is kept between values that are found at the same index in the
+	 * argument arrays highest and lowest. Both bounds are inclusive. A range
+	 * where highest is less than lowest in only some of the dimensions
+	 * contains no values.
+	 *
+	 * @param lowest
+	 * An array of the lower bound values.
+	 *
+	 * @param highest
+	 * An array of the higher bound values.
+	 *
+	 * @return
+	 * A set containing all the values within the range. If the tree is empty
+	 * an empty set is returned.
+	 *
+	 * @throws NullPointerException if any of the arguments are null.
+	 *
+	 * @throws IllegalArgumentException if the argument arrays have
+	 * to few or many elements, if they contain NaN or if every key in
+	 * highest is less than the key in lowest.
+	 *
+	 * @throws IllegalStateException if the tree has been closed.
+	 */
+	public Set<T> range(double[] lowest, double[] highest){
+		checkOpen();
+		if (lowest == null || highest == null){
+			throw new NullPointerException();
+		}
+		if (lowest.length != DIMENSIONS || highest.length != DIMENSIONS){
+			throw new IllegalArgumentException("The input arrays must have as many elements as there are dimensions.");
+		}
+		checkKeys(lowest);
+		checkKeys(highest);
+		if (isInverted(lowest, highest)){
+			throw new IllegalArgumentException("The keys in highest can't be less than lowest.");
+		}
+
+		Set<T> correctVals = new HashSet<T>();
+		if (size == 0){
+			return correctVals;
+		}
+
+		int[] nodesToVisit = new int[16];
+		int[] nodeLevels = new int[16];
+		int stackSize = 0;
+		nodesToVisit[stackSize] = 0;
+		nodeLevels[stackSize] = 0;
+		++stackSize;
+
+		while (stackSize > 0){
+			--stackSize;
+			int currNode = nodesToVisit[stackSize];
+			int level = nodeLevels[stackSize];
+
+			if (isInRange(currNode, lowest, highest)){
+				correctVals.add(value(currNode));
+			}
+
+			double currKey = key(currNode, level);
+			int nextLevel = incrementDimension(level);
+			if (stackSize + 2 > nodesToVisit.length){
+				nodesToVisit = Arrays.copyOf(nodesToVisit, nodesToVisit.length * 2);
+				nodeLevels = Arrays.copyOf(nodeLevels, nodeLevels.length * 2);
+			}
+
+			// There is room for smaller keys within the range.
+			int left = leftChild(currNode);
+			if (left != NONE && currKey > lowest[level]){
+				nodesToVisit[stackSize] = left;
+				nodeLevels[stackSize] = nextLevel;
+				++stackSize;
+			}
+			// There is room for bigger keys within the range.
+			int right = rightChild(currNode);
+			if (right != NONE && currKey <= highest[level]){
+				nodesToVisit[stackSize] = right;
+				nodeLevels[stackSize] = nextLevel;
+				++stackSize;
+			}
+		}
+
+		return correctVals;
+	} // range
+
+	/**
+	 * Returns true if every key in highest is less than the key in lowest.
+	 */
+	private boolean isInverted(double[] lowest, double[] highest){
+		for (int i=0; i < DIMENSIONS; ++i){
+			if (highest[i] >= lowest[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,243 @@
+package kdTree;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The searches shared by the KD-Trees with primitive keys. The keys are
+ * arrays of a primitive type, which are only read through PrimitiveKeys, so
+ * the traversals are written once for all key types.
+ *
+ * @param <T>
+ * - the type of the values in the kd-tree.
+ * @param <K>
+ * - the type of the array of keys, double[] or long[].
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ * @see DoubleKDTree
+ * @see LongKDTree
+ */
+abstract class PrimitiveKDTree<T, K> {
+
+	private final int DIMENSIONS;
+	final PrimitiveKeys<K> KEYS;
+	private PrimitiveNode<T, K> root;
+
+	private int size = 0;
+
+	PrimitiveKDTree(int dimensions, PrimitiveKeys<K> keys){
+		if (dimensions < 2){
+			throw new IllegalArgumentException("Less than two dimensions makes this data structure useless.");
+		}
+
+		DIMENSIONS = dimensions;
+		KEYS = keys;
+	}
+
+	/**
+	 * Returns the size of the KD-Tree. The size is equal to the number of
+	 * elements in the KD-Tree.
+	 *
+	 * @return
+	 * - the size of the KD-Tree.
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns the number of dimensions of the KD-Tree.
+	 *
+	 * @return
+	 * - the number of dimensions.
+	 */
+	public int dimensions(){
+		return DIMENSIONS;
+	}
+
+	/**
+	 * Only for testing purposes.
+	 * @return
+	 * The root node.
+	 */
+	PrimitiveNode<T, K> getRoot(){
+		return root;
+	}
+
+	/**
+	 * Checks that keys can be used to search the KD-Tree.
+	 *
+	 * @throws NullPointerException if keys is null.
+	 * @throws IllegalArgumentException if the length of keys isn't equal to
+	 * the number of dimensions in the KD-Tree or if any of the keys can't be
+	 * ordered.
+	 */
+	void checkKeys(K keys){
+		if (keys == null){
+			throw new NullPointerException();
+		}
+		if (KEYS.length(keys) != DIMENSIONS){
+			throw new IllegalArgumentException();
+		}
+		KEYS.checkValues(keys);
+	}
+
+	/**
+	 * Increments the supplied int with one. The new value is set to zero if
+	 * it's greater than or equal to the KD-Tree's dimension size.
+	 */
+	private int incrementDimension(int dimension){
+		int newDimension = ++dimension;
+		if (newDimension >= DIMENSIONS){
+			newDimension = 0;
+		}
+		return newDimension;
+	}
+
+	/**
+	 * Adds the values with the supplied keys to found, or returns true as
+	 * soon as one is found if found is null. Only one child is visited per
+	 * node, so the search follows a single path down the tree.
+	 *
+	 * @return
+	 * - true if any value has the keys.
+	 */
+	boolean find(K keys, Set<T> found){
+		checkKeys(keys);
+
+		boolean anyFound = false;
+		PrimitiveNode<T, K> currNode = root;
+		int currDimension = 0;
+		while (currNode != null){
+
+			// The search key is less than current node's key.
+			if (KEYS.compare(keys, currNode.keys, currDimension) < 0){
+				currNode = currNode.leftChild;
+
+			// The search key is greater than or equal to current node's key.
+			} else {
+				if (KEYS.isSameKeys(keys, currNode.keys)){
+					if (found == null){
+						return true;
+					}
+					found.add(currNode.value);
+					anyFound = true;
+				}
+				currNode = currNode.rightChild;
+			}
+			currDimension = incrementDimension(currDimension);
+		}
+		return anyFound;
+	}
+
+	/**
+	 * Inserts the key-value pair, unless the same pair is already in the
+	 * tree.
+	 */
+	void add(K keys, T value){
+		if (keys == null || value == null){
+			throw new NullPointerException("Arguments can't be null.");
+		}
+		checkKeys(keys);
+
+		if (root == null){
+			root = new PrimitiveNode<T, K>(KEYS.copy(keys), value);
+			++size;
+			return;
+		}
+
+		PrimitiveNode<T, K> currNode = root;
+		int currDimension = 0;
+		while (true){
+			if (KEYS.compare(keys, currNode.keys, currDimension) < 0){
+				if (currNode.leftChild == null){
+					currNode.leftChild = new PrimitiveNode<T, K>(KEYS.copy(keys), value);
+					++size;
+					return;
+				}
+				currNode = currNode.leftChild;
+
+			// The insert key is greater than or equal to current node's key.
+			} else {
+
+				// Don't insert a new node if an identical node already exists.
+				if (KEYS.isSameKeys(keys, currNode.keys) && currNode.value.equals(value)){
+					return;
+				}
+
+				if (currNode.rightChild == null){
+					currNode.rightChild = new PrimitiveNode<T, K>(KEYS.copy(keys), value);
+					++size;
+					return;
+				}
+				currNode = currNode.rightChild;
+			}
+			currDimension = incrementDimension(currDimension);
+		}
+	}
+
+	/**
+	 * Returns the values within the range, after checking the bounds.
+	 */
+	@SuppressWarnings("unchecked")
+	Set<T> findRange(K lowest, K highest){
+		if (lowest == null || highest == null){
+			throw new NullPointerException();
+		}
+		if (KEYS.length(lowest) != DIMENSIONS || KEYS.length(highest) != DIMENSIONS){
+			throw new IllegalArgumentException("The input arrays must have as many elements as there are dimensions.");
+		}
+		KEYS.checkValues(lowest);
+		KEYS.checkValues(highest);
+		if (KEYS.isInverted(lowest, highest)){
+			throw new IllegalArgumentException("The keys in highest can't be less than lowest.");
+		}
+
+		Set<T> correctVals = new HashSet<T>();
+		if (root == null){
+			return correctVals;
+		}
+
+		PrimitiveNode<T, K>[] nodesToVisit = new PrimitiveNode[16];
+		int[] nodeLevels = new int[16];
+		int stackSize = 0;
+		nodesToVisit[stackSize] = root;
+		nodeLevels[stackSize] = 0;
+		++stackSize;
+
+		while (stackSize > 0){
+			--stackSize;
+			PrimitiveNode<T, K> currNode = nodesToVisit[stackSize];
+			int level = nodeLevels[stackSize];
+
+			if (KEYS.isInRange(currNode.keys, lowest, highest)){
+				correctVals.add(currNode.value);
+			}
+
+			int nextLevel = incrementDimension(level);
+			if (stackSize + 2 > nodesToVisit.length){
+				nodesToVisit = Arrays.copyOf(nodesToVisit, nodesToVisit.length * 2);
+				nodeLevels = Arrays.copyOf(nodeLevels, nodeLevels.length * 2);
+			}
+
+			// There is room for smaller keys within the range.
+			if (currNode.leftChild != null && KEYS.compare(lowest, currNode.keys, level) < 0){
+				nodesToVisit[stackSize] = currNode.leftChild;
+				nodeLevels[stackSize] = nextLevel;
+				++stackSize;
+			}
+			// There is room for bigger keys within the range.
+			if (currNode.rightChild != null && KEYS.compare(highest, currNode.keys, level) >= 0){
+				nodesToVisit[stackSize] = currNode.rightChild;
+				nodeLevels[stackSize] = nextLevel;
+				++stackSize;
+			}
+		}
+
+		return correctVals;
+	}
+
+}
@@ -0,0 +1,168 @@
+package kdTree;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ *
+ * PrimitiveKeys reads and compares arrays of primitive keys, in memory and
+ * in mapped snapshot files. The KD-Trees with primitive keys share their
+ * traversals and only differ in the instance of PrimitiveKeys they use,
+ * DOUBLES or LONGS.
+ *
+ * Doubles are compared with the operators, so 0.0 and -0.0 are the same
+ * key, and NaN is rejected by checkValues.
+ *
+ * @param <K>
+ * - the type of the array of keys, double[] or long[].
+ */
+abstract class PrimitiveKeys<K> {
+
+	static final PrimitiveKeys<double[]> DOUBLES = new PrimitiveKeys<double[]>(SnapshotFormat.DOUBLE_KEYS){
+		@Override
+		int length(double[] keys){
+			return keys.length;
+		}
+
+		@Override
+		void checkValues(double[] keys){
+			for (int i=0; i < keys.length; ++i){
+				if (Double.isNaN(keys[i])){
+					throw new IllegalArgumentException("Keys can't be NaN.");
+				}
+			}
+		}
+
+		@Override
+		int compare(double[] lhs, double[] rhs, int dimension){
+			return lhs[dimension] < rhs[dimension] ? -1 : (lhs[dimension] > rhs[dimension] ? 1 : 0);
+		}
+
+		@Override
+		double[] copy(double[] keys){
+			return Arrays.copyOf(keys, keys.length);
+		}
+
+		@Override
+		void put(ByteBuffer buffer, double[] keys){
+			for (double key : keys){
+				buffer.putDouble(key);
+			}
+		}
+
+		@Override
+		int compareMapped(MappedFile file, long position, double[] keys, int dimension){
+			double key = file.getDouble(position + dimension * 8);
+			return key < keys[dimension] ? -1 : (key > keys[dimension] ? 1 : 0);
+		}
+	};
+
+	static final PrimitiveKeys<long[]> LONGS = new PrimitiveKeys<long[]>(SnapshotFormat.LONG_KEYS){
+		@Override
+		int length(long[] keys){
+			return keys.length;
+		}
+
+		@Override
+		void checkValues(long[] keys){
+			// All longs can be ordered.
+		}
+
+		@Override
+		int compare(long[] lhs, long[] rhs, int dimension){
+			return Long.compare(lhs[dimension], rhs[dimension]);
+		}
+
+		@Override
+		long[] copy(long[] keys){
+			return Arrays.copyOf(keys, keys.length);
+		}
+
+		@Override
+		void put(ByteBuffer buffer, long[] keys){
+			for (long key : keys){
+				buffer.putLong(key);
+			}
+		}
+
+		@Override
+		int compareMapped(MappedFile file, long position, long[] keys, int dimension){
+			return Long.compare(file.getLong(position + dimension * 8), keys[dimension]);
+		}
+	};
+
+	// The key type of the snapshots, see SnapshotFormat.
+	final int snapshotKeyType;
+
+	private PrimitiveKeys(int snapshotKeyType){
+		this.snapshotKeyType = snapshotKeyType;
+	}
+
+	abstract int length(K keys);
+
+	/**
+	 * Checks the values of keys that has the right length.
+	 *
+	 * @throws IllegalArgumentException if any of the keys can't be ordered.
+	 */
+	abstract void checkValues(K keys);
+
+	/**
+	 * Compares the keys of lhs and rhs in the supplied dimension.
+	 */
+	abstract int compare(K lhs, K rhs, int dimension);
+
+	abstract K copy(K keys);
+
+	/**
+	 * Puts the keys in a snapshot record, eight bytes each.
+	 */
+	abstract void put(ByteBuffer buffer, K keys);
+
+	/**
+	 * Compares the key of the snapshot record at position with the key of
+	 * keys in the supplied dimension.
+	 */
+	abstract int compareMapped(MappedFile file, long position, K keys, int dimension);
+
+	/**
+	 * Returns true if both the arrays have the same keys in the same indices.
+	 */
+	boolean isSameKeys(K lhs, K rhs){
+		for (int d=length(lhs) - 1; d >= 0; --d){
+			if (compare(lhs, rhs, d) != 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if all keys are within the range. Both bounds are
+	 * inclusive.
+	 */
+	boolean isInRange(K keys, K lowest, K highest){
+		for (int d=length(keys) - 1; d >= 0; --d){
+			if (compare(keys, lowest, d) < 0 || compare(keys, highest, d) > 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if every key in highest is less than the key in lowest.
+	 */
+	boolean isInverted(K lowest, K highest){
+		for (int d=length(lowest) - 1; d >= 0; --d){
+			if (compare(highest, lowest, d) >= 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
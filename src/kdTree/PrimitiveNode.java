@@ -0,0 +1,32 @@
+package kdTree;
+
+/**
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg 
+ * 
+ * 
+ * PrimitiveNode is used as nodes in the KD-Trees with primitive keys.
+ * An array of a primitive type represent the keys stored in the node.
+ * 
+ * @param <T>
+ * - the type of the value in the node.
+ * @param <K>
+ * - the type of the array of keys, double[] or long[].
+ */
+class PrimitiveNode<T, K>{
+
+	final T value;
+	final K keys;
+	PrimitiveNode<T, K> leftChild;
+	PrimitiveNode<T, K> rightChild;
+	
+	
+	PrimitiveNode(K keys, T value){
+		if(value == null)
+			throw new NullPointerException("Value can't be null");
+		
+		this.keys = keys;
+		this.value = value;
+	}
+	
+}
@@ -0,0 +1,89 @@
+package kdTree;
+
+import java.util.Arrays;
+
+/**
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg 
+ * 
+ * 
+ * QueryContext holds the stacks a search uses to keep track of the nodes it 
+ * has left to visit. Every thread has a context of its own that is reused by 
+ * all its searches in all trees, so a search doesn't allocate any stacks once 
+ * the context has grown large enough. A search started while the thread's 
+ * context is in use, for instance from a visitor, gets a new context.
+ */
+class QueryContext{
+	
+	private static final ThreadLocal<QueryContext> CONTEXTS = new ThreadLocal<QueryContext>();
+	
+	Node[] nodes = new Node[32];
+	int[] levels = new int[32];
+	long[] masks = new long[32];
+	int size = 0;
+	
+	private boolean inUse = false;
+	
+	/**
+	 * Returns an empty context that may be used by the calling thread until 
+	 * it's released.
+	 */
+	static QueryContext acquire(){
+		QueryContext context = CONTEXTS.get();
+		if (context == null){
+			context = new QueryContext();
+			CONTEXTS.set(context);
+		} else if (context.inUse){
+			context = new QueryContext();
+		}
+		context.inUse = true;
+		return context;
+	}
+	
+	/**
+	 * Returns the context so that the next search of the thread can use it.
+	 */
+	void release(){
+		while (size > 0){
+			nodes[--size] = null;
+		}
+		inUse = false;
+	}
+	
+	void push(Node<?> node, int level){
+		push(node, level, 0);
+	}
+	
+	/**
+	 * Pushes a node together with a mask of the range bounds its whole 
+	 * subtree is known to be within.
+	 */
+	void push(Node<?> node, int level, long mask){
+		if (size == nodes.length){
+			nodes = Arrays.copyOf(nodes, size * 2);
+			levels = Arrays.copyOf(levels, size * 2);
+			masks = Arrays.copyOf(masks, size * 2);
+		}
+		nodes[size] = node;
+		levels[size] = level;
+		masks[size] = mask;
+		++size;
+	}
+	
+	boolean isEmpty(){
+		return size == 0;
+	}
+	
+	/**
+	 * Pops the top node. Its level and mask are found in levels[size] and 
+	 * masks[size] afterwards.
+	 */
+	@SuppressWarnings("unchecked")
+	<T> Node<T> pop(){
+		--size;
+		Node<T> node = nodes[size];
+		nodes[size] = null;
+		return node;
+	}
+	
+}
@@ -0,0 +1,25 @@
+package kdTree;
+
+/**
+ * A QueryListener is told about the work done by every search of a KD-Tree 
+ * it has been set on. The listener is called by the thread that made the 
+ * search, right before the search returns, so it has to be quick and, for 
+ * trees searched by several threads, thread-safe.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ * 
+ * @see KDTree#setQueryListener(QueryListener)
+ * @see QueryMetrics
+ */
+public interface QueryListener {
+	
+	/**
+	 * Called once a search has completed.
+	 * 
+	 * @param stats
+	 * - the work done by the search.
+	 */
+	void queryCompleted(QueryStats stats);
+	
+}
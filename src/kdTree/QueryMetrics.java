@@ -0,0 +1,220 @@
+package kdTree;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A QueryListener that keeps cumulative counters and a latency histogram for
+ * every kind of search, and records a Java Flight Recorder event for every
+ * search slower than a threshold. It's thread-safe and can be shared by
+ * several trees.
+ *
+ * The histogram has one bucket per power of two nanoseconds, so bucket i
+ * counts the searches that took at least 2^i and less than 2^(i + 1)
+ * nanoseconds.
+ *
+ * The events are named kdTree.SlowQuery and are only recorded while a
+ * recording with the event enabled is running.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ */
+public class QueryMetrics implements QueryListener {
+
+	static final int BUCKETS = 64;
+
+	private final long slowQueryNanos;
+	private final Counters[] counters;
+
+	/**
+	 * The counters of one kind of search.
+	 */
+	private static final class Counters {
+		final LongAdder queries = new LongAdder();
+		final LongAdder nodesVisited = new LongAdder();
+		final LongAdder keyComparisons = new LongAdder();
+		final LongAdder subtreesPruned = new LongAdder();
+		final LongAdder results = new LongAdder();
+		final LongAdder slowQueries = new LongAdder();
+		final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+	}
+
+	/**
+	 * Creates metrics that record no slow query events.
+	 */
+	public QueryMetrics(){
+		this(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Creates metrics that record an event for every search that takes at
+	 * least the supplied time.
+	 *
+	 * @param slowQueryThreshold
+	 * - the least time of a slow search.
+	 * @param unit
+	 * - the unit of the threshold.
+	 *
+	 * @throws NullPointerException if unit is null.
+	 * @throws IllegalArgumentException if the threshold is negative.
+	 */
+	public QueryMetrics(long slowQueryThreshold, TimeUnit unit){
+		if (unit == null){
+			throw new NullPointerException();
+		}
+		if (slowQueryThreshold < 0){
+			throw new IllegalArgumentException("The threshold can't be negative.");
+		}
+		slowQueryNanos = unit.toNanos(slowQueryThreshold);
+		counters = new Counters[QueryType.values().length];
+		for (int i=0; i < counters.length; ++i){
+			counters[i] = new Counters();
+		}
+	}
+
+	@Override
+	public void queryCompleted(QueryStats stats){
+		Counters typeCounters = counters[stats.getType().ordinal()];
+		typeCounters.queries.increment();
+		typeCounters.nodesVisited.add(stats.getNodesVisited());
+		typeCounters.keyComparisons.add(stats.getKeyComparisons());
+		typeCounters.subtreesPruned.add(stats.getSubtreesPruned());
+		typeCounters.results.add(stats.getResults());
+
+		long duration = Math.max(stats.getDurationNanos(), 1);
+		typeCounters.latencies.incrementAndGet(63 - Long.numberOfLeadingZeros(duration));
+
+		if (duration >= slowQueryNanos){
+			typeCounters.slowQueries.increment();
+			SlowQueryEvent.record(stats);
+		}
+	}
+
+	private Counters counters(QueryType type){
+		if (type == null){
+			throw new NullPointerException();
+		}
+		return counters[type.ordinal()];
+	}
+
+	/**
+	 * @return
+	 * - the number of completed searches of the type.
+	 */
+	public long queryCount(QueryType type){
+		return counters(type).queries.sum();
+	}
+
+	/**
+	 * @return
+	 * - the number of nodes visited by all searches of the type.
+	 */
+	public long nodesVisited(QueryType type){
+		return counters(type).nodesVisited.sum();
+	}
+
+	/**
+	 * @return
+	 * - the number of key comparisons made by all searches of the type.
+	 */
+	public long keyComparisons(QueryType type){
+		return counters(type).keyComparisons.sum();
+	}
+
+	/**
+	 * @return
+	 * - the number of subtrees pruned by all searches of the type.
+	 */
+	public long subtreesPruned(QueryType type){
+		return counters(type).subtreesPruned.sum();
+	}
+
+	/**
+	 * @return
+	 * - the number of values returned or counted by all searches of the
+	 * type.
+	 */
+	public long results(QueryType type){
+		return counters(type).results.sum();
+	}
+
+	/**
+	 * @return
+	 * - the number of searches of the type that took at least the slow query
+	 * threshold.
+	 */
+	public long slowQueryCount(QueryType type){
+		return counters(type).slowQueries.sum();
+	}
+
+	/**
+	 * Returns the latency histogram of a type of search.
+	 *
+	 * @return
+	 * - a copy of the histogram, where index i holds the number of searches
+	 * that took at least 2^i and less than 2^(i + 1) nanoseconds.
+	 */
+	public long[] latencyHistogram(QueryType type){
+		AtomicLongArray latencies = counters(type).latencies;
+		long[] histogram = new long[BUCKETS];
+		for (int i=0; i < BUCKETS; ++i){
+			histogram[i] = latencies.get(i);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Estimates a percentile of the latency of a type of search from the
+	 * histogram.
+	 *
+	 * @param percentile
+	 * - the percentile, between 0 and 100.
+	 *
+	 * @return
+	 * - the upper bound in nanoseconds of the histogram bucket holding the
+	 * percentile, or 0 if there have been no searches of the type.
+	 *
+	 * @throws IllegalArgumentException if percentile isn't between 0 and 100.
+	 */
+	public long latencyPercentile(QueryType type, double percentile){
+		if (!(percentile >= 0 && percentile <= 100)){
+			throw new IllegalArgumentException("The percentile must be between 0 and 100.");
+		}
+		long[] histogram = latencyHistogram(type);
+		long total = 0;
+		for (long count : histogram){
+			total += count;
+		}
+		if (total == 0){
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i=0; i < BUCKETS; ++i){
+			seen += histogram[i];
+			if (seen >= rank){
+				return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder builder = new StringBuilder();
+		for (QueryType type : QueryType.values()){
+			long queries = queryCount(type);
+			if (queries == 0){
+				continue;
+			}
+			builder.append(type).append(": ").append(queries).append(" queries, ")
+					.append(nodesVisited(type) / queries).append(" nodes visited and ")
+					.append(results(type) / queries).append(" results on average, p99 < ")
+					.append(latencyPercentile(type, 99)).append(" ns\n");
+		}
+		return builder.toString();
+	}
+
+}
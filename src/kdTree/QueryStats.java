@@ -0,0 +1,103 @@
+package kdTree;
+
+/**
+ * The work done by a single search of a KD-Tree, as reported to a 
+ * QueryListener.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ */
+public final class QueryStats {
+	
+	private final QueryType type;
+	// The listener set when the search started, reported to when it's done.
+	final QueryListener listener;
+	private final long startNanos;
+	private long durationNanos;
+	
+	// Counted by the searches.
+	long nodesVisited = 0;
+	long keyComparisons = 0;
+	long subtreesPruned = 0;
+	long valuesSummarized = 0;
+	private long results;
+	
+	QueryStats(QueryType type, QueryListener listener){
+		this.type = type;
+		this.listener = listener;
+		startNanos = System.nanoTime();
+	}
+	
+	/**
+	 * Adds work counted by a part of a search, which may run in another 
+	 * thread than the rest of the search.
+	 */
+	synchronized void add(long nodesVisited, long keyComparisons, long subtreesPruned){
+		this.nodesVisited += nodesVisited;
+		this.keyComparisons += keyComparisons;
+		this.subtreesPruned += subtreesPruned;
+	}
+	
+	synchronized void finish(long results){
+		this.results = results;
+		durationNanos = System.nanoTime() - startNanos;
+	}
+	
+	/**
+	 * @return
+	 * - the kind of search.
+	 */
+	public QueryType getType(){
+		return type;
+	}
+	
+	/**
+	 * @return
+	 * - the number of nodes the search reached, including the nodes of 
+	 * subtrees that were accepted as a whole.
+	 */
+	public long getNodesVisited(){
+		return nodesVisited;
+	}
+	
+	/**
+	 * @return
+	 * - the number of nodes whose keys were compared with the searched keys 
+	 * or range, or measured against the searched keys.
+	 */
+	public long getKeyComparisons(){
+		return keyComparisons;
+	}
+	
+	/**
+	 * @return
+	 * - the number of subtrees skipped by a splitting plane, a bounding box 
+	 * or a distance bound.
+	 */
+	public long getSubtreesPruned(){
+		return subtreesPruned;
+	}
+	
+	/**
+	 * @return
+	 * - the number of values returned, counted or aggregated by the search.
+	 */
+	public long getResults(){
+		return results;
+	}
+	
+	/**
+	 * @return
+	 * - the time the search took in nanoseconds.
+	 */
+	public long getDurationNanos(){
+		return durationNanos;
+	}
+	
+	@Override
+	public String toString(){
+		return type + ": " + nodesVisited + " nodes visited, " + keyComparisons + " key comparisons, " + 
+				subtreesPruned + " subtrees pruned, " + results + " results in " + durationNanos + " ns";
+	}
+	
+}
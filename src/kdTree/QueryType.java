@@ -0,0 +1,22 @@
+package kdTree;
+
+/**
+ * The kinds of searches reported to a QueryListener.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ */
+public enum QueryType {
+	
+	GET,
+	CONTAINS,
+	RANGE,
+	RANGE_COUNT,
+	RANGE_AGGREGATE,
+	NEAREST,
+	APPROXIMATE_NEAREST,
+	BATCH_NEAREST,
+	RADIUS,
+	JOIN
+	
+}
@@ -0,0 +1,160 @@
+package kdTree;
+
+import java.util.Arrays;
+
+/**
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ *
+ * RadiusSearch finds all values within a distance of a key in a KD-Tree.
+ * Subtrees on the far side of a splitting plane are skipped if the plane is
+ * farther away than the radius. If the tree keeps bounding boxes, subtrees
+ * whose boxes are farther away than the radius are skipped as well.
+ *
+ * @param <T>
+ * - the type of the values in the searched tree.
+ */
+abstract class RadiusSearch<T>{
+
+	private final int DIMENSIONS;
+	private final DistanceMetric metric;
+	private final double radius;
+	private final boolean useBoxes;
+
+	// Nodes left to visit and their dimensions.
+	private Node<T>[] nodeStack;
+	private int[] dimensionStack;
+	private int stackSize = 0;
+
+	// The work done, for the query stats.
+	private int visited = 0;
+	private int measured = 0;
+	private int pruned = 0;
+
+	@SuppressWarnings("unchecked")
+	RadiusSearch(int dimensions, DistanceMetric metric, double radius, boolean useBoxes){
+		DIMENSIONS = dimensions;
+		this.metric = metric;
+		this.radius = radius;
+		this.useBoxes = useBoxes;
+
+		nodeStack = new Node[16];
+		dimensionStack = new int[16];
+	}
+
+	/**
+	 * Called for every live node within the radius.
+	 *
+	 * @return
+	 * - true if the search should go on, false if it should stop.
+	 */
+	abstract boolean found(Node<T> node, double distance);
+
+	/**
+	 * Searches the tree with the supplied root for the values within the
+	 * radius of keys.
+	 *
+	 * @param root
+	 * - the root of the tree to search. May be null.
+	 * @param keys
+	 * - the keys at the center of the searched ball.
+	 *
+	 * @return
+	 * - true if the whole tree was searched, false if found stopped the
+	 * search.
+	 */
+	boolean search(Node<T> root, Comparable[] keys){
+		return search(root, 0, keys);
+	}
+
+	/**
+	 * Searches the subtree with the supplied root, which splits its keys by
+	 * the supplied dimension.
+	 *
+	 * @see #search(Node, Comparable[])
+	 */
+	@SuppressWarnings("unchecked")
+	boolean search(Node<T> subRoot, int dimension, Comparable[] keys){
+		if (subRoot != null){
+			push(subRoot, dimension);
+		}
+
+		while (stackSize > 0){
+			--stackSize;
+			Node<T> currNode = nodeStack[stackSize];
+			int currDimension = dimensionStack[stackSize];
+			nodeStack[stackSize] = null;
+
+			if (useBoxes && metric.boxDistance(keys, currNode.boxMin, currNode.boxMax) > radius){
+				++pruned;
+				continue;
+			}
+			++visited;
+
+			if (!currNode.deleted){
+				++measured;
+				double distance = metric.distance(keys, currNode.keys);
+				if (distance <= radius && !found(currNode, distance)){
+					while (stackSize > 0){
+						nodeStack[--stackSize] = null;
+					}
+					return false;
+				}
+			}
+
+			Comparable currKey = currNode.keys[currDimension];
+			boolean planeWithinRadius = metric.axisDistance(keys[currDimension], currKey, currDimension) <= radius;
+			int nextDimension = incrementDimension(currDimension);
+
+			Node<T> nearChild;
+			Node<T> farChild;
+			// The searched key is less than current node's key.
+			if (currKey.compareTo(keys[currDimension]) > 0){
+				nearChild = currNode.leftChild;
+				farChild = currNode.rightChild;
+			} else {
+				nearChild = currNode.rightChild;
+				farChild = currNode.leftChild;
+			}
+
+			if (farChild != null){
+				if (planeWithinRadius){
+					push(farChild, nextDimension);
+				} else {
+					++pruned;
+				}
+			}
+			if (nearChild != null){
+				push(nearChild, nextDimension);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the work done by the searches to stats.
+	 */
+	void count(QueryStats stats){
+		stats.add(visited, measured, pruned);
+	}
+
+	private void push(Node<T> node, int dimension){
+		if (stackSize == nodeStack.length){
+			nodeStack = Arrays.copyOf(nodeStack, stackSize * 2);
+			dimensionStack = Arrays.copyOf(dimensionStack, stackSize * 2);
+		}
+		nodeStack[stackSize] = node;
+		dimensionStack[stackSize] = dimension;
+		++stackSize;
+	}
+
+	private int incrementDimension(int dimension){
+		int newDimension = ++dimension;
+		if (newDimension >= DIMENSIONS){
+			newDimension = 0;
+		}
+		return newDimension;
+	}
+
+}
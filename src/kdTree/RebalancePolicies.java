@@ -0,0 +1,56 @@
+package kdTree;
+
+/**
+ * Factory methods for the most common rebalance policies.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ */
+public final class RebalancePolicies {
+	
+	private RebalancePolicies(){}
+	
+	/**
+	 * Returns a policy that rebuilds trees whose maximum depth is greater 
+	 * than factor * log2(size).
+	 * 
+	 * @param factor
+	 * - the allowed ratio between the maximum depth and log2(size).
+	 * 
+	 * @throws IllegalArgumentException if factor is less than 1.
+	 */
+	public static RebalancePolicy maxDepthExceeds(final double factor){
+		if (!(factor >= 1)){
+			throw new IllegalArgumentException("The factor can't be less than 1.");
+		}
+		return new RebalancePolicy(){
+			@Override
+			public boolean shouldRebuild(TreeStatistics statistics){
+				return statistics.getDepthRatio() > factor;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a policy that rebuilds trees where more than the supplied 
+	 * share of the nodes are removed nodes still kept in the tree.
+	 * 
+	 * @param share
+	 * - the allowed share of removed nodes.
+	 * 
+	 * @throws IllegalArgumentException if share isn't between 0 and 1.
+	 */
+	public static RebalancePolicy removedNodesExceed(final double share){
+		if (!(share >= 0 && share <= 1)){
+			throw new IllegalArgumentException("The share has to be between 0 and 1.");
+		}
+		return new RebalancePolicy(){
+			@Override
+			public boolean shouldRebuild(TreeStatistics statistics){
+				int removed = statistics.getNodeCount() - statistics.getSize();
+				return removed > share * statistics.getNodeCount();
+			}
+		};
+	}
+	
+}
@@ -0,0 +1,27 @@
+package kdTree;
+
+/**
+ * A RebalancePolicy decides from the shape of a tree if it should be 
+ * rebuilt. ConcurrentKDTree checks its policy in the background as the tree 
+ * changes and rebuilds the tree without blocking readers.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ * 
+ * @see RebalancePolicies
+ * @see ConcurrentKDTree#setRebalancePolicy(RebalancePolicy, java.util.concurrent.Executor)
+ */
+public interface RebalancePolicy {
+	
+	/**
+	 * Returns true if a tree with the supplied statistics should be rebuilt.
+	 * 
+	 * @param statistics
+	 * - the current shape of the tree.
+	 * 
+	 * @return
+	 * - true to rebuild the tree.
+	 */
+	boolean shouldRebuild(TreeStatistics statistics);
+	
+}
@@ -0,0 +1,58 @@
+package kdTree;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ *
+ * SlowQueryEvent is the Flight Recorder event recorded by QueryMetrics for
+ * searches slower than its threshold. The event is created when the search
+ * has completed, so the time of the search is in the queryDuration field
+ * rather than in the duration of the event.
+ */
+@Name("kdTree.SlowQuery")
+@Label("Slow KD-Tree Query")
+@Category("KD-Tree")
+@Description("A search of a KD-Tree that took longer than the slow query threshold.")
+class SlowQueryEvent extends jdk.jfr.Event {
+
+	@Label("Query Type")
+	String queryType;
+
+	@Label("Query Duration")
+	@Timespan(Timespan.NANOSECONDS)
+	long queryDuration;
+
+	@Label("Nodes Visited")
+	long nodesVisited;
+
+	@Label("Key Comparisons")
+	long keyComparisons;
+
+	@Label("Subtrees Pruned")
+	long subtreesPruned;
+
+	@Label("Results")
+	long results;
+
+	static void record(QueryStats stats){
+		SlowQueryEvent event = new SlowQueryEvent();
+		if (!event.isEnabled()){
+			return;
+		}
+		event.queryType = stats.getType().name();
+		event.queryDuration = stats.getDurationNanos();
+		event.nodesVisited = stats.getNodesVisited();
+		event.keyComparisons = stats.getKeyComparisons();
+		event.subtreesPruned = stats.getSubtreesPruned();
+		event.results = stats.getResults();
+		event.commit();
+	}
+
+}
@@ -0,0 +1,254 @@
+package kdTree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ *
+ * SnapshotFormat writes and checks the binary snapshots of the trees with
+ * primitive keys. All numbers are little-endian. A snapshot consists of
+ *
+ * - a header of 32 bytes: the magic number, the format version, the key
+ *   type, the number of dimensions as ints, then the number of nodes and the
+ *   offset of the values section as longs.
+ * - one record per node: the keys as eight bytes each, followed by the
+ *   offset of the node's value within the values section as a long, the
+ *   length of the value as an int and four unused bytes.
+ * - the values section with the encoded values.
+ *
+ * The nodes are laid out as a complete binary tree in level order, like in
+ * FrozenKDTree, so the children of the node at index i are found at the
+ * indices 2i + 1 and 2i + 2 and no child pointers are stored. Keys equal to
+ * a splitting key can be found on both sides of it.
+ */
+final class SnapshotFormat {
+
+	static final int MAGIC = 0x4E53444B; // "KDSN"
+	static final int VERSION = 1;
+
+	static final int DOUBLE_KEYS = 1;
+	static final int LONG_KEYS = 2;
+
+	static final int HEADER_SIZE = 32;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private SnapshotFormat(){}
+
+	/**
+	 * Compares the keys of two nodes to be written.
+	 */
+	interface KeyOrder {
+		int compare(int lhs, int rhs, int dimension);
+	}
+
+	/**
+	 * Puts the keys of a node to be written in a buffer.
+	 */
+	interface KeyWriter {
+		void put(ByteBuffer buffer, int node);
+	}
+
+	static int recordSize(int dimensions){
+		return dimensions * 8 + 16;
+	}
+
+	/**
+	 * Returns the order the nodes are written in. The node at index i of
+	 * the returned array is placed at index i of the complete tree.
+	 */
+	static int[] levelOrder(int size, int dimensions, KeyOrder order){
+		int[] nodes = new int[size];
+		for (int i=0; i < size; ++i){
+			nodes[i] = i;
+		}
+		int[] slots = new int[size];
+		layOut(nodes, 0, size, 0, 0, dimensions, order, slots);
+		return slots;
+	}
+
+	private static void layOut(int[] nodes, int from, int to, int slot, int dimension,
+			int dimensions, KeyOrder order, int[] slots){
+		if (from >= to){
+			return;
+		}
+
+		int median = from + FrozenKDTree.leftSubtreeSize(to - from);
+		select(nodes, from, to - 1, median, dimension, order);
+		slots[slot] = nodes[median];
+
+		int nextDimension = dimension + 1 < dimensions ? dimension + 1 : 0;
+		layOut(nodes, from, median, 2 * slot + 1, nextDimension, dimensions, order, slots);
+		layOut(nodes, median + 1, to, 2 * slot + 2, nextDimension, dimensions, order, slots);
+	}
+
+	/**
+	 * Quickselect with a median of three pivot, the same as in TreeBuilder.
+	 */
+	private static void select(int[] nodes, int low, int high, int k, int dimension, KeyOrder order){
+		while (low < high){
+			int middle = low + (high - low) / 2;
+			if (order.compare(nodes[middle], nodes[low], dimension) < 0){
+				swap(nodes, low, middle);
+			}
+			if (order.compare(nodes[high], nodes[low], dimension) < 0){
+				swap(nodes, low, high);
+			}
+			if (order.compare(nodes[high], nodes[middle], dimension) < 0){
+				swap(nodes, middle, high);
+			}
+			int pivot = nodes[middle];
+
+			int i = low;
+			int j = high;
+			while (i <= j){
+				while (order.compare(nodes[i], pivot, dimension) < 0){
+					++i;
+				}
+				while (order.compare(nodes[j], pivot, dimension) > 0){
+					--j;
+				}
+				if (i <= j){
+					swap(nodes, i++, j--);
+				}
+			}
+
+			if (k <= j){
+				high = j;
+			} else if (k >= i){
+				low = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private static void swap(int[] nodes, int i, int j){
+		int tmp = nodes[i];
+		nodes[i] = nodes[j];
+		nodes[j] = tmp;
+	}
+
+	/**
+	 * Writes a snapshot of the supplied nodes to a file. An existing file is
+	 * replaced. The values are encoded one at a time and streamed to the
+	 * values section first, so only their offsets and lengths are kept
+	 * until the records are written.
+	 *
+	 * @param values
+	 * - the values of the nodes, by node.
+	 */
+	static <T> void write(Path file, int keyType, int dimensions, KeyOrder order, KeyWriter keys,
+			List<T> values, ValueCodec<? super T> codec) throws IOException {
+
+		int size = values.size();
+		int[] slots = levelOrder(size, dimensions, order);
+
+		int recordSize = recordSize(dimensions);
+		long valuesOffset = HEADER_SIZE + (long) size * recordSize;
+
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, recordSize)).order(ByteOrder.LITTLE_ENDIAN);
+
+			long[] valueOffsets = new long[size];
+			int[] valueLengths = new int[size];
+			long position = valuesOffset;
+			long valuesLength = 0;
+			for (int slot=0; slot < size; ++slot){
+				byte[] value = codec.encode(values.get(slots[slot]));
+				valueOffsets[slot] = valuesLength;
+				valueLengths[slot] = value.length;
+				valuesLength += value.length;
+
+				int written = 0;
+				while (written < value.length){
+					if (!buffer.hasRemaining()){
+						position = flush(channel, buffer, position);
+					}
+					int length = Math.min(buffer.remaining(), value.length - written);
+					buffer.put(value, written, length);
+					written += length;
+				}
+			}
+			flush(channel, buffer, position);
+
+			position = 0;
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(keyType);
+			buffer.putInt(dimensions);
+			buffer.putLong(size);
+			buffer.putLong(valuesOffset);
+
+			for (int slot=0; slot < size; ++slot){
+				if (buffer.remaining() < recordSize){
+					position = flush(channel, buffer, position);
+				}
+				keys.put(buffer, slots[slot]);
+				buffer.putLong(valueOffsets[slot]);
+				buffer.putInt(valueLengths[slot]);
+				buffer.putInt(0);
+			}
+			flush(channel, buffer, position);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes the buffer to the file at the supplied position and clears it.
+	 *
+	 * @return
+	 * - the position after the written bytes.
+	 */
+	private static long flush(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()){
+			position += channel.write(buffer, position);
+		}
+		buffer.clear();
+		return position;
+	}
+
+	/**
+	 * Checks the header of a mapped snapshot.
+	 *
+	 * @return
+	 * - the number of nodes in the snapshot.
+	 *
+	 * @throws IOException if the file isn't a snapshot with the supplied
+	 * key type.
+	 */
+	static int checkHeader(MappedFile file, int keyType) throws IOException {
+		if (file.length() < HEADER_SIZE || file.getInt(0) != MAGIC){
+			throw new IOException("Not a KD-Tree snapshot.");
+		}
+		if (file.getInt(4) != VERSION){
+			throw new IOException("Unsupported snapshot version " + file.getInt(4) + ".");
+		}
+		if (file.getInt(8) != keyType){
+			throw new IOException("The snapshot has keys of another type.");
+		}
+
+		int dimensions = file.getInt(12);
+		long size = file.getLong(16);
+		long valuesOffset = file.getLong(24);
+		if (dimensions < 2 || size < 0 || size > Integer.MAX_VALUE ||
+				valuesOffset != HEADER_SIZE + size * recordSize(dimensions) ||
+				valuesOffset > file.length()){
+			throw new IOException("The snapshot is corrupt.");
+		}
+		return (int) size;
+	}
+
+}
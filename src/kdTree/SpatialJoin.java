@@ -0,0 +1,480 @@
+package kdTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Joins two KD-Trees by distance: finds every pair of values, one from each
+ * tree, whose keys are within a distance of each other. Both trees are
+ * walked together, a pair of subtrees at a time, and pairs of subtrees whose
+ * regions are farther apart than the distance are skipped without looking
+ * at their keys.
+ *
+ * The region of a subtree is the box given by the splitting planes above
+ * it, or its bounding box if the tree keeps bounding boxes. A pair of
+ * subtrees is split into the pair of their roots, each root against the
+ * children of the other, and the four pairs of children.
+ *
+ * The trees may not be changed during the join. The joins are reported as
+ * JOIN queries to the query listener of the left tree.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ * @see KDTree#setBoundingBoxes(boolean)
+ */
+public final class SpatialJoin {
+
+	private SpatialJoin(){}
+
+	/**
+	 * Calls the visitor for every pair of values, one from each tree, whose
+	 * keys are within the supplied distance of each other, until the
+	 * visitor returns false.
+	 *
+	 * @param lhs
+	 * - the left tree of the join.
+	 * @param rhs
+	 * - the right tree of the join. Has to have as many dimensions as lhs.
+	 * @param distance
+	 * - the greatest distance between the keys of a pair. Inclusive.
+	 * @param metric
+	 * - the metric used to measure the distance between keys.
+	 * @param visitor
+	 * - the visitor to call for every pair.
+	 *
+	 * @return
+	 * - true if all pairs were visited, false if the visitor stopped the
+	 * join.
+	 *
+	 * @throws NullPointerException if any of the arguments are null.
+	 * @throws IllegalArgumentException if the trees have different numbers
+	 * of dimensions or if distance is negative or NaN.
+	 */
+	public static <T, U> boolean join(KDTree<T> lhs, KDTree<U> rhs, double distance, DistanceMetric metric,
+			JoinVisitor<? super T, ? super U> visitor){
+		Joiner<T, U> joiner = new Joiner<T, U>(lhs, rhs, distance, metric, visitor);
+		joiner.joinAll();
+		joiner.finish();
+		return !joiner.stopped;
+	}
+
+	/**
+	 * Joins the trees like join, but joins disjoint pairs of subtrees in
+	 * parallel in the supplied pool. Pairs of subtrees with less than
+	 * KDTree.PARALLEL_CUTOFF nodes together are joined sequentially.
+	 *
+	 * The visitor is called from several threads at once and has to be
+	 * thread-safe. Once it has returned false, the join stops as soon as the
+	 * running tasks notice it.
+	 *
+	 * @param pool
+	 * - the pool to run the join in.
+	 *
+	 * @throws NullPointerException if any of the arguments are null.
+	 * @throws IllegalArgumentException if the trees have different numbers
+	 * of dimensions or if distance is negative or NaN.
+	 *
+	 * @see #join(KDTree, KDTree, double, DistanceMetric, JoinVisitor)
+	 */
+	public static <T, U> boolean parallelJoin(KDTree<T> lhs, KDTree<U> rhs, double distance, DistanceMetric metric,
+			JoinVisitor<? super T, ? super U> visitor, ForkJoinPool pool){
+		if (pool == null){
+			throw new NullPointerException();
+		}
+		Joiner<T, U> joiner = new Joiner<T, U>(lhs, rhs, distance, metric, visitor);
+		if (joiner.lhsRoot != null && joiner.rhsRoot != null){
+			pool.invoke(joiner.new JoinTask(joiner.lhsRoot, 0, joiner.unbounded(), joiner.unbounded(),
+					joiner.rhsRoot, 0, joiner.unbounded(), joiner.unbounded()));
+		}
+		joiner.finish();
+		return !joiner.stopped;
+	}
+
+	/**
+	 * Holds the state of a join. The regions of the subtrees are passed as
+	 * arrays of their least and greatest keys, where null means unbounded.
+	 */
+	private static final class Joiner<T, U> {
+
+		private final int DIMENSIONS;
+		private final double distance;
+		private final DistanceMetric metric;
+		private final JoinVisitor<? super T, ? super U> visitor;
+
+		final Node<T> lhsRoot;
+		final Node<U> rhsRoot;
+		private final boolean lhsBoxes;
+		private final boolean rhsBoxes;
+
+		volatile boolean stopped = false;
+
+		// The tree reported to, the stats of the join or null if it isn't
+		// counted, and the number of visited pairs.
+		private final KDTree<T> lhsTree;
+		private final QueryStats stats;
+		private final AtomicLong pairs = new AtomicLong();
+
+		Joiner(KDTree<T> lhs, KDTree<U> rhs, double distance, DistanceMetric metric,
+				JoinVisitor<? super T, ? super U> visitor){
+			if (lhs == null || rhs == null || metric == null || visitor == null){
+				throw new NullPointerException();
+			}
+			if (lhs.dimensions() != rhs.dimensions()){
+				throw new IllegalArgumentException("The trees must have the same number of dimensions.");
+			}
+			if (!(distance >= 0)){
+				throw new IllegalArgumentException("The distance can't be negative or NaN.");
+			}
+
+			DIMENSIONS = lhs.dimensions();
+			this.distance = distance;
+			this.metric = metric;
+			this.visitor = visitor;
+			lhsRoot = lhs.getRoot();
+			rhsRoot = rhs.getRoot();
+			lhsBoxes = lhs.hasBoundingBoxes();
+			rhsBoxes = rhs.hasBoundingBoxes();
+			lhsTree = lhs;
+			stats = lhs.startQuery(QueryType.JOIN);
+		}
+
+		/**
+		 * Reports the join to the listener of the left tree.
+		 */
+		void finish(){
+			lhsTree.finishQuery(stats, pairs.get());
+		}
+
+		/**
+		 * Counts a pair of subtrees whose regions are too far apart.
+		 */
+		private void countPruned(){
+			if (stats != null){
+				stats.add(0, 0, 1);
+			}
+		}
+
+		Comparable[] unbounded(){
+			return new Comparable[DIMENSIONS];
+		}
+
+		void joinAll(){
+			if (lhsRoot != null && rhsRoot != null){
+				joinSubtrees(lhsRoot, 0, unbounded(), unbounded(), rhsRoot, 0, unbounded(), unbounded());
+			}
+		}
+
+		private int incrementDimension(int dimension){
+			return dimension + 1 < DIMENSIONS ? dimension + 1 : 0;
+		}
+
+		/**
+		 * Returns false if no keys in the region of lhs can be within the
+		 * distance of the keys in the region of rhs.
+		 */
+		boolean mayMatch(Node<T> lhs, Comparable[] lhsMin, Comparable[] lhsMax,
+				Node<U> rhs, Comparable[] rhsMin, Comparable[] rhsMax){
+			for (int d=0; d < DIMENSIONS; ++d){
+				Comparable lhsLow = lhsBoxes ? lhs.boxMin[d] : lhsMin[d];
+				Comparable lhsHigh = lhsBoxes ? lhs.boxMax[d] : lhsMax[d];
+				Comparable rhsLow = rhsBoxes ? rhs.boxMin[d] : rhsMin[d];
+				Comparable rhsHigh = rhsBoxes ? rhs.boxMax[d] : rhsMax[d];
+				if (isBefore(lhsHigh, rhsLow, d) || isBefore(rhsHigh, lhsLow, d)){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns true if the keys up to high are farther away than the
+		 * distance from the keys from low.
+		 */
+		@SuppressWarnings("unchecked")
+		private boolean isBefore(Comparable high, Comparable low, int dimension){
+			return high != null && low != null && high.compareTo(low) < 0 &&
+					metric.axisDistance(high, low, dimension) > distance;
+		}
+
+		/**
+		 * Visits the pairs of the roots of lhs and rhs, and of each root and
+		 * the children of the other root.
+		 *
+		 * @return
+		 * - false if the visitor stopped the join.
+		 */
+		boolean joinRoots(Node<T> lhs, int lhsDimension, final Node<U> rhs, int rhsDimension){
+			if (stopped){
+				return false;
+			}
+			boolean measure = !lhs.deleted && !rhs.deleted;
+			if (stats != null){
+				stats.add(2, measure ? 1 : 0, 0);
+			}
+			if (measure && metric.distance(lhs.keys, rhs.keys) <= distance){
+				if (!visit(lhs, rhs)){
+					return false;
+				}
+			}
+
+			if (!lhs.deleted){
+				final Node<T> lhsNode = lhs;
+				RadiusSearch<U> search = new RadiusSearch<U>(DIMENSIONS, metric, distance, rhsBoxes){
+					@Override
+					boolean found(Node<U> node, double distance){
+						return visit(lhsNode, node);
+					}
+				};
+				int dimension = incrementDimension(rhsDimension);
+				boolean completed = search.search(rhs.leftChild, dimension, lhs.keys) &&
+						search.search(rhs.rightChild, dimension, lhs.keys);
+				if (stats != null){
+					search.count(stats);
+				}
+				if (!completed){
+					return false;
+				}
+			}
+
+			if (!rhs.deleted){
+				RadiusSearch<T> search = new RadiusSearch<T>(DIMENSIONS, metric, distance, lhsBoxes){
+					@Override
+					boolean found(Node<T> node, double distance){
+						return visit(node, rhs);
+					}
+				};
+				int dimension = incrementDimension(lhsDimension);
+				boolean completed = search.search(lhs.leftChild, dimension, rhs.keys) &&
+						search.search(lhs.rightChild, dimension, rhs.keys);
+				if (stats != null){
+					search.count(stats);
+				}
+				if (!completed){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean visit(Node<T> lhs, Node<U> rhs){
+			if (stopped){
+				return false;
+			}
+			if (stats != null){
+				pairs.incrementAndGet();
+			}
+			if (!visitor.visit(lhs.keys, lhs.value, rhs.keys, rhs.value)){
+				stopped = true;
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Joins the subtrees of lhs and rhs sequentially. The pairs of
+		 * subtrees left to join are kept on a stack rather than recursed
+		 * into, as the trees may be as deep as they are large.
+		 *
+		 * @return
+		 * - false if the visitor stopped the join.
+		 */
+		boolean joinSubtrees(Node<T> lhs, int lhsDimension, Comparable[] lhsMin, Comparable[] lhsMax,
+				Node<U> rhs, int rhsDimension, Comparable[] rhsMin, Comparable[] rhsMax){
+			PairStack stack = new PairStack();
+			stack.push(lhs, lhsDimension, lhsMin, lhsMax, rhs, rhsDimension, rhsMin, rhsMax);
+
+			while (stack.size > 0){
+				int top = --stack.size;
+				Node<T> currLhs = stack.lhsNodes[top];
+				Node<U> currRhs = stack.rhsNodes[top];
+				int currLhsDimension = stack.lhsDimensions[top];
+				int currRhsDimension = stack.rhsDimensions[top];
+				Comparable[] currLhsMin = stack.regions[4 * top];
+				Comparable[] currLhsMax = stack.regions[4 * top + 1];
+				Comparable[] currRhsMin = stack.regions[4 * top + 2];
+				Comparable[] currRhsMax = stack.regions[4 * top + 3];
+				stack.clear(top);
+
+				if (!mayMatch(currLhs, currLhsMin, currLhsMax, currRhs, currRhsMin, currRhsMax)){
+					countPruned();
+					continue;
+				}
+				if (!joinRoots(currLhs, currLhsDimension, currRhs, currRhsDimension)){
+					return false;
+				}
+				if ((currLhs.leftChild == null && currLhs.rightChild == null) ||
+						(currRhs.leftChild == null && currRhs.rightChild == null)){
+					continue;
+				}
+
+				Comparable[][] lhsRegions = childRegions(currLhs, currLhsDimension, currLhsMin, currLhsMax);
+				Comparable[][] rhsRegions = childRegions(currRhs, currRhsDimension, currRhsMin, currRhsMax);
+				int lhsNext = incrementDimension(currLhsDimension);
+				int rhsNext = incrementDimension(currRhsDimension);
+				// Pushed in reverse, so the pairs of left children are joined first.
+				for (int i=1; i >= 0; --i){
+					Node<T> lhsChild = i == 0 ? currLhs.leftChild : currLhs.rightChild;
+					if (lhsChild == null){
+						continue;
+					}
+					for (int j=1; j >= 0; --j){
+						Node<U> rhsChild = j == 0 ? currRhs.leftChild : currRhs.rightChild;
+						if (rhsChild != null){
+							stack.push(lhsChild, lhsNext, lhsRegions[2 * i], lhsRegions[2 * i + 1],
+									rhsChild, rhsNext, rhsRegions[2 * j], rhsRegions[2 * j + 1]);
+						}
+					}
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * The pairs of subtrees left to join, their dimensions and the least
+		 * and greatest keys of their regions, four per pair.
+		 */
+		private final class PairStack {
+
+			@SuppressWarnings("unchecked")
+			Node<T>[] lhsNodes = new Node[16];
+			@SuppressWarnings("unchecked")
+			Node<U>[] rhsNodes = new Node[16];
+			int[] lhsDimensions = new int[16];
+			int[] rhsDimensions = new int[16];
+			Comparable[][] regions = new Comparable[4 * 16][];
+			int size = 0;
+
+			void push(Node<T> lhs, int lhsDimension, Comparable[] lhsMin, Comparable[] lhsMax,
+					Node<U> rhs, int rhsDimension, Comparable[] rhsMin, Comparable[] rhsMax){
+				if (size == lhsNodes.length){
+					lhsNodes = Arrays.copyOf(lhsNodes, size * 2);
+					rhsNodes = Arrays.copyOf(rhsNodes, size * 2);
+					lhsDimensions = Arrays.copyOf(lhsDimensions, size * 2);
+					rhsDimensions = Arrays.copyOf(rhsDimensions, size * 2);
+					regions = Arrays.copyOf(regions, 4 * size * 2);
+				}
+				lhsNodes[size] = lhs;
+				rhsNodes[size] = rhs;
+				lhsDimensions[size] = lhsDimension;
+				rhsDimensions[size] = rhsDimension;
+				regions[4 * size] = lhsMin;
+				regions[4 * size + 1] = lhsMax;
+				regions[4 * size + 2] = rhsMin;
+				regions[4 * size + 3] = rhsMax;
+				++size;
+			}
+
+			/**
+			 * Drops the references of a popped pair.
+			 */
+			void clear(int index){
+				lhsNodes[index] = null;
+				rhsNodes[index] = null;
+				for (int i=4 * index; i < 4 * index + 4; ++i){
+					regions[i] = null;
+				}
+			}
+		}
+
+		/**
+		 * Returns the least and greatest keys of the left child's region,
+		 * followed by those of the right child's region.
+		 */
+		Comparable[][] childRegions(Node<?> node, int dimension, Comparable[] min, Comparable[] max){
+			Comparable[] leftMax = Arrays.copyOf(max, DIMENSIONS);
+			Comparable[] rightMin = Arrays.copyOf(min, DIMENSIONS);
+			leftMax[dimension] = node.keys[dimension];
+			rightMin[dimension] = node.keys[dimension];
+			return new Comparable[][]{min, leftMax, rightMin, max};
+		}
+
+		/**
+		 * Joins a pair of subtrees. Large pairs are split into one task per
+		 * pair of children. A pair with a single pair of children is joined
+		 * on by the same task, so a deep tree doesn't nest tasks as deep.
+		 */
+		private class JoinTask extends RecursiveAction {
+
+			private static final long serialVersionUID = 1L;
+
+			private final Node<T> lhs;
+			private final int lhsDimension;
+			private final Comparable[] lhsMin;
+			private final Comparable[] lhsMax;
+			private final Node<U> rhs;
+			private final int rhsDimension;
+			private final Comparable[] rhsMin;
+			private final Comparable[] rhsMax;
+
+			JoinTask(Node<T> lhs, int lhsDimension, Comparable[] lhsMin, Comparable[] lhsMax,
+					Node<U> rhs, int rhsDimension, Comparable[] rhsMin, Comparable[] rhsMax){
+				this.lhs = lhs;
+				this.lhsDimension = lhsDimension;
+				this.lhsMin = lhsMin;
+				this.lhsMax = lhsMax;
+				this.rhs = rhs;
+				this.rhsDimension = rhsDimension;
+				this.rhsMin = rhsMin;
+				this.rhsMax = rhsMax;
+			}
+
+			@Override
+			protected void compute(){
+				JoinTask pair = this;
+				while (!stopped){
+					if (pair.lhs.subtreeSize + pair.rhs.subtreeSize < KDTree.PARALLEL_CUTOFF){
+						joinSubtrees(pair.lhs, pair.lhsDimension, pair.lhsMin, pair.lhsMax,
+								pair.rhs, pair.rhsDimension, pair.rhsMin, pair.rhsMax);
+						return;
+					}
+					List<JoinTask> tasks = split(pair);
+					if (tasks.size() != 1){
+						invokeAll(tasks);
+						return;
+					}
+					pair = tasks.get(0);
+				}
+			}
+
+			/**
+			 * Joins the roots of a large pair and returns the tasks for its
+			 * pairs of children.
+			 */
+			private List<JoinTask> split(JoinTask pair){
+				List<JoinTask> tasks = new ArrayList<JoinTask>(4);
+				if (!mayMatch(pair.lhs, pair.lhsMin, pair.lhsMax, pair.rhs, pair.rhsMin, pair.rhsMax)){
+					countPruned();
+					return tasks;
+				}
+				if (!joinRoots(pair.lhs, pair.lhsDimension, pair.rhs, pair.rhsDimension)){
+					return tasks;
+				}
+
+				Comparable[][] lhsRegions = childRegions(pair.lhs, pair.lhsDimension, pair.lhsMin, pair.lhsMax);
+				Comparable[][] rhsRegions = childRegions(pair.rhs, pair.rhsDimension, pair.rhsMin, pair.rhsMax);
+				int lhsNext = incrementDimension(pair.lhsDimension);
+				int rhsNext = incrementDimension(pair.rhsDimension);
+				for (int i=0; i < 2; ++i){
+					Node<T> lhsChild = i == 0 ? pair.lhs.leftChild : pair.lhs.rightChild;
+					if (lhsChild == null){
+						continue;
+					}
+					for (int j=0; j < 2; ++j){
+						Node<U> rhsChild = j == 0 ? pair.rhs.leftChild : pair.rhs.rightChild;
+						if (rhsChild != null){
+							tasks.add(new JoinTask(lhsChild, lhsNext, lhsRegions[2 * i], lhsRegions[2 * i + 1],
+									rhsChild, rhsNext, rhsRegions[2 * j], rhsRegions[2 * j + 1]));
+						}
+					}
+				}
+				return tasks;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package kdTree;
+
+/**
+ * The distance metrics that come with the KD-Tree. They all require the keys
+ * to be instances of Number and compare them as doubles.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ */
+public enum StandardMetric implements DistanceMetric {
+	
+	/**
+	 * The straight line distance, the square root of the sum of the squared 
+	 * differences in every dimension.
+	 */
+	EUCLIDEAN {
+		@Override
+		public double distance(Comparable[] lhs, Comparable[] rhs){
+			double sum = 0;
+			for (int i=0; i < lhs.length; ++i){
+				double diff = difference(lhs[i], rhs[i]);
+				sum += diff * diff;
+			}
+			return Math.sqrt(sum);
+		}
+		
+		@Override
+		public double boxDistance(Comparable[] keys, Comparable[] boxMin, Comparable[] boxMax){
+			double sum = 0;
+			for (int i=0; i < keys.length; ++i){
+				double diff = outside(keys[i], boxMin[i], boxMax[i]);
+				sum += diff * diff;
+			}
+			return Math.sqrt(sum);
+		}
+	},
+	
+	/**
+	 * The sum of the absolute differences in every dimension.
+	 */
+	MANHATTAN {
+		@Override
+		public double distance(Comparable[] lhs, Comparable[] rhs){
+			double sum = 0;
+			for (int i=0; i < lhs.length; ++i){
+				sum += difference(lhs[i], rhs[i]);
+			}
+			return sum;
+		}
+		
+		@Override
+		public double boxDistance(Comparable[] keys, Comparable[] boxMin, Comparable[] boxMax){
+			double sum = 0;
+			for (int i=0; i < keys.length; ++i){
+				sum += outside(keys[i], boxMin[i], boxMax[i]);
+			}
+			return sum;
+		}
+	},
+	
+	/**
+	 * The greatest absolute difference of all the dimensions.
+	 */
+	CHEBYSHEV {
+		@Override
+		public double distance(Comparable[] lhs, Comparable[] rhs){
+			double max = 0;
+			for (int i=0; i < lhs.length; ++i){
+				max = Math.max(max, difference(lhs[i], rhs[i]));
+			}
+			return max;
+		}
+		
+		@Override
+		public double boxDistance(Comparable[] keys, Comparable[] boxMin, Comparable[] boxMax){
+			double max = 0;
+			for (int i=0; i < keys.length; ++i){
+				max = Math.max(max, outside(keys[i], boxMin[i], boxMax[i]));
+			}
+			return max;
+		}
+	};
+	
+	/**
+	 * The distance along a single dimension is the absolute difference for 
+	 * all of the standard metrics.
+	 * 
+	 * @throws ClassCastException if the keys aren't instances of Number.
+	 */
+	@Override
+	public double axisDistance(Comparable lhs, Comparable rhs, int dimension){
+		return difference(lhs, rhs);
+	}
+	
+	/**
+	 * Returns the absolute difference between two keys.
+	 * 
+	 * @throws ClassCastException if the keys aren't instances of Number.
+	 */
+	static double difference(Comparable lhs, Comparable rhs){
+		return Math.abs( ((Number) lhs).doubleValue() - ((Number) rhs).doubleValue() );
+	}
+	
+	/**
+	 * Returns how far outside the interval [min, max] a key is, or 0 if 
+	 * it's within the interval.
+	 * 
+	 * @throws ClassCastException if the keys aren't instances of Number.
+	 */
+	static double outside(Comparable key, Comparable min, Comparable max){
+		double value = ((Number) key).doubleValue();
+		double low = ((Number) min).doubleValue();
+		double high = ((Number) max).doubleValue();
+		if (value < low){
+			return low - value;
+		}
+		if (value > high){
+			return value - high;
+		}
+		return 0;
+	}
+	
+}
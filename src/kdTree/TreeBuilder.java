@@ -0,0 +1,317 @@
+package kdTree;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ *
+ * TreeBuilder builds balanced KD-Trees out of arrays of nodes. Every subtree
+ * is split on the median of its dimension, which gives a tree with a depth of
+ * O(log n) in O(n log n) time.
+ *
+ * The built trees keep the same invariant as trees built by inserting one
+ * element at a time. Every key in a left subtree is less than the key of its
+ * parent in the parent's dimension, and every key in a right subtree is
+ * greater than or equal to it.
+ *
+ * @param <T>
+ * - the type of the values in the nodes.
+ */
+class TreeBuilder<T> {
+
+	private final int DIMENSIONS;
+
+	TreeBuilder(int dimensions){
+		DIMENSIONS = dimensions;
+	}
+
+	/**
+	 * Creates one node for every key-value pair. The keys are copied.
+	 *
+	 * @throws IllegalArgumentException if keys and values aren't the same
+	 * size or if the length of any of the keys isn't the same as the number
+	 * of dimensions.
+	 * @throws NullPointerException if keys, values or any of their elements
+	 * are null.
+	 */
+	@SuppressWarnings("unchecked")
+	Node<T>[] createNodes(List<Comparable[]> keys, List<T> values){
+		if (keys == null || values == null){
+			throw new NullPointerException("Arguments can't be null.");
+		}
+		if (keys.size() != values.size()){
+			throw new IllegalArgumentException("There has to be as many keys as values.");
+		}
+
+		Node<T>[] nodes = new Node[keys.size()];
+		for (int i=0; i < nodes.length; ++i){
+			Comparable[] currKeys = keys.get(i);
+			T currValue = values.get(i);
+			if (currKeys == null || currValue == null){
+				throw new NullPointerException("Arguments can't be null.");
+			}
+			if (currKeys.length != DIMENSIONS){
+				throw new IllegalArgumentException();
+			}
+			nodes[i] = new Node<T>(Arrays.copyOf(currKeys, currKeys.length), currValue);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Removes key-value pairs that would have been rejected by an insert.
+	 * Two nodes are duplicates if they have the same keys and equal values.
+	 * The first of the duplicates is kept.
+	 *
+	 * @param nodes
+	 * - the nodes to remove duplicates from. The array is reordered.
+	 *
+	 * @return
+	 * - the number of unique nodes. The unique nodes are found at the
+	 * beginning of the array.
+	 */
+	int removeDuplicates(Node<T>[] nodes){
+		return removeDuplicates(nodes, false);
+	}
+
+	/**
+	 * Removes key-value pairs that would have been rejected by an insert.
+	 * The nodes are sorted in parallel if parallel is true, otherwise the
+	 * same as removeDuplicates(nodes). Both sorts are stable, so the result
+	 * is the same.
+	 */
+	int removeDuplicates(Node<T>[] nodes, boolean parallel){
+		Comparator<Node<T>> keyOrder = new Comparator<Node<T>>(){
+			@Override
+			public int compare(Node<T> lhs, Node<T> rhs){
+				return compareAllKeys(lhs, rhs);
+			}
+		};
+		if (parallel){
+			Arrays.parallelSort(nodes, keyOrder);
+		} else {
+			Arrays.sort(nodes, keyOrder);
+		}
+
+		int unique = 0;
+		int runStart = 0;
+		for (int i=0; i < nodes.length; ++i){
+			if (i > 0 && compareAllKeys(nodes[i], nodes[runStart]) != 0){
+				runStart = unique;
+			}
+
+			boolean duplicate = false;
+			for (int j=runStart; j < unique && !duplicate; ++j){
+				duplicate = nodes[j].getValue().equals(nodes[i].getValue());
+			}
+
+			if (!duplicate){
+				nodes[unique++] = nodes[i];
+			}
+		}
+		return unique;
+	}
+
+	/**
+	 * Compares all the keys of two nodes, starting with the first dimension.
+	 *
+	 * @return
+	 * - a negative number, zero or a positive number if the keys of lhs are
+	 * less than, equal to or greater than the keys of rhs.
+	 */
+	@SuppressWarnings("unchecked")
+	private int compareAllKeys(Node<T> lhs, Node<T> rhs){
+		for (int i=0; i < DIMENSIONS; ++i){
+			int cmp = lhs.keys[i].compareTo(rhs.keys[i]);
+			if (cmp != 0){
+				return cmp;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Builds a balanced tree out of the nodes in the interval [from, to).
+	 * The children and subtree sizes of all the nodes are replaced. None of
+	 * the nodes may be removed.
+	 *
+	 * @param nodes
+	 * - the nodes to build the tree from. The array is reordered.
+	 * @param from
+	 * - the first index of the interval, inclusive.
+	 * @param to
+	 * - the last index of the interval, exclusive.
+	 * @param dimension
+	 * - the dimension the root of the built tree splits on.
+	 *
+	 * @return
+	 * - the root of the built tree or null if the interval is empty.
+	 */
+	Node<T> build(Node<T>[] nodes, int from, int to, int dimension){
+		if (from >= to){
+			return null;
+		}
+
+		int median = partition(nodes, from, to, dimension);
+		int nextDimension = incrementDimension(dimension);
+
+		Node<T> subRoot = nodes[median];
+		subRoot.leftChild = build(nodes, from, median, nextDimension);
+		subRoot.rightChild = build(nodes, median + 1, to, nextDimension);
+		subRoot.subtreeSize = to - from;
+		subRoot.deadCount = 0;
+		return subRoot;
+	}
+
+	/**
+	 * Builds the same balanced tree as build, but builds the subtrees in
+	 * parallel. Intervals with less than KDTree.PARALLEL_CUTOFF nodes are
+	 * built sequentially.
+	 *
+	 * @param pool
+	 * - the pool to build the tree in.
+	 *
+	 * @see #build(Node[], int, int, int)
+	 */
+	Node<T> parallelBuild(Node<T>[] nodes, int from, int to, int dimension, ForkJoinPool pool){
+		return pool.invoke(new BuildTask(nodes, from, to, dimension));
+	}
+
+	/**
+	 * Partitions an interval on its median and builds the two halves as
+	 * separate tasks.
+	 */
+	private class BuildTask extends RecursiveTask<Node<T>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Node<T>[] nodes;
+		private final int from;
+		private final int to;
+		private final int dimension;
+
+		BuildTask(Node<T>[] nodes, int from, int to, int dimension){
+			this.nodes = nodes;
+			this.from = from;
+			this.to = to;
+			this.dimension = dimension;
+		}
+
+		@Override
+		protected Node<T> compute(){
+			if (to - from < KDTree.PARALLEL_CUTOFF){
+				return build(nodes, from, to, dimension);
+			}
+
+			int median = partition(nodes, from, to, dimension);
+			int nextDimension = incrementDimension(dimension);
+
+			BuildTask leftTask = new BuildTask(nodes, from, median, nextDimension);
+			BuildTask rightTask = new BuildTask(nodes, median + 1, to, nextDimension);
+			leftTask.fork();
+
+			Node<T> subRoot = nodes[median];
+			subRoot.rightChild = rightTask.compute();
+			subRoot.leftChild = leftTask.join();
+			subRoot.subtreeSize = to - from;
+			subRoot.deadCount = 0;
+			return subRoot;
+		}
+	}
+
+	/**
+	 * Moves the median node of the interval [from, to) in the supplied
+	 * dimension to its sorted position. All nodes before the returned index
+	 * have keys less than the median, and all nodes after it have keys
+	 * greater than or equal to the median.
+	 *
+	 * @return
+	 * - the index of the median node.
+	 */
+	@SuppressWarnings("unchecked")
+	int partition(Node<T>[] nodes, int from, int to, int dimension){
+		int median = from + (to - from) / 2;
+		select(nodes, from, to - 1, median, dimension);
+
+		// Nodes with keys equal to the median might be found to the left of
+		// it. They belong in the right subtree, so they are moved to the end
+		// of the left interval and the first of them becomes the median.
+		Comparable medianKey = nodes[median].keys[dimension];
+		int firstEqual = median;
+		for (int i=median - 1; i >= from; --i){
+			if (nodes[i].keys[dimension].compareTo(medianKey) == 0){
+				swap(nodes, i, --firstEqual);
+			}
+		}
+		return firstEqual;
+	}
+
+	/**
+	 * Quickselect with a median of three pivot. Reorders the nodes in
+	 * [low, high] so that the node at index k is the one that would be
+	 * there if the interval was sorted in the supplied dimension.
+	 */
+	@SuppressWarnings("unchecked")
+	void select(Node<T>[] nodes, int low, int high, int k, int dimension){
+		while (low < high){
+			int middle = low + (high - low) / 2;
+			if (key(nodes, middle, dimension).compareTo(key(nodes, low, dimension)) < 0){
+				swap(nodes, low, middle);
+			}
+			if (key(nodes, high, dimension).compareTo(key(nodes, low, dimension)) < 0){
+				swap(nodes, low, high);
+			}
+			if (key(nodes, high, dimension).compareTo(key(nodes, middle, dimension)) < 0){
+				swap(nodes, middle, high);
+			}
+			Comparable pivot = key(nodes, middle, dimension);
+
+			int i = low;
+			int j = high;
+			while (i <= j){
+				while (key(nodes, i, dimension).compareTo(pivot) < 0){
+					++i;
+				}
+				while (key(nodes, j, dimension).compareTo(pivot) > 0){
+					--j;
+				}
+				if (i <= j){
+					swap(nodes, i++, j--);
+				}
+			}
+
+			if (k <= j){
+				high = j;
+			} else if (k >= i){
+				low = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private Comparable key(Node<T>[] nodes, int index, int dimension){
+		return nodes[index].keys[dimension];
+	}
+
+	private void swap(Node<T>[] nodes, int i, int j){
+		Node<T> tmp = nodes[i];
+		nodes[i] = nodes[j];
+		nodes[j] = tmp;
+	}
+
+	int incrementDimension(int dimension){
+		int newDimension = ++dimension;
+		if (newDimension >= DIMENSIONS){
+			newDimension = 0;
+		}
+		return newDimension;
+	}
+
+}
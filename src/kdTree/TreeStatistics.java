@@ -0,0 +1,215 @@
+package kdTree;
+
+import java.util.Arrays;
+
+/**
+ * The shape of a KD-Tree at the time the statistics were taken. The depth of
+ * a node is the number of nodes above it, so the root has depth 0. Removed
+ * nodes that are still kept in the tree are included in the depths.
+ *
+ * A balanced tree has a maximum depth of about log2(size). The balance
+ * factor of a node is the share of the nodes below it that are found in its
+ * larger subtree, from 0.5 for a perfectly balanced node to 1 for a node
+ * with a single subtree.
+ *
+ * @author Henrik Järnbrand
+ * @author Tomas Sandberg
+ *
+ * @see KDTree#statistics()
+ */
+public final class TreeStatistics {
+
+	// Estimated sizes, with compressed references, of a node object and of
+	// an array of keys excluding its length.
+	private static final int NODE_BYTES = 56;
+	private static final int ARRAY_HEADER_BYTES = 16;
+
+	private final int size;
+	private final int nodeCount;
+	private final int maxDepth;
+	private final double averageDepth;
+	private final long[] depthHistogram;
+	private final double[] balanceFactors;
+	private final long memoryBytes;
+
+	private TreeStatistics(int size, int nodeCount, int maxDepth, double averageDepth,
+			long[] depthHistogram, double[] balanceFactors, long memoryBytes){
+		this.size = size;
+		this.nodeCount = nodeCount;
+		this.maxDepth = maxDepth;
+		this.averageDepth = averageDepth;
+		this.depthHistogram = depthHistogram;
+		this.balanceFactors = balanceFactors;
+		this.memoryBytes = memoryBytes;
+	}
+
+	/**
+	 * Takes the statistics of the tree with the supplied root.
+	 *
+	 * @param boxes
+	 * - true if the nodes keep bounding boxes.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> TreeStatistics of(Node<T> root, int size, int dimensions, boolean boxes){
+		long[] histogram = new long[16];
+		double[] balanceSums = new double[dimensions];
+		int[] balanceCounts = new int[dimensions];
+		int nodeCount = 0;
+		int maxDepth = -1;
+		long depthSum = 0;
+
+		Node<T>[] nodeStack = new Node[16];
+		int[] depthStack = new int[16];
+		int stackSize = 0;
+		if (root != null){
+			nodeStack[stackSize++] = root;
+		}
+		while (stackSize > 0){
+			--stackSize;
+			Node<T> currNode = nodeStack[stackSize];
+			int depth = depthStack[stackSize];
+			nodeStack[stackSize] = null;
+
+			++nodeCount;
+			depthSum += depth;
+			maxDepth = Math.max(maxDepth, depth);
+			if (depth == histogram.length){
+				histogram = Arrays.copyOf(histogram, histogram.length * 2);
+			}
+			++histogram[depth];
+
+			int left = currNode.leftChild == null ? 0 : currNode.leftChild.subtreeSize;
+			int right = currNode.rightChild == null ? 0 : currNode.rightChild.subtreeSize;
+			if (left + right > 0){
+				int dimension = depth % dimensions;
+				balanceSums[dimension] += (double) Math.max(left, right) / (left + right);
+				++balanceCounts[dimension];
+			}
+
+			if (stackSize + 2 > nodeStack.length){
+				nodeStack = Arrays.copyOf(nodeStack, nodeStack.length * 2);
+				depthStack = Arrays.copyOf(depthStack, depthStack.length * 2);
+			}
+			if (currNode.leftChild != null){
+				nodeStack[stackSize] = currNode.leftChild;
+				depthStack[stackSize] = depth + 1;
+				++stackSize;
+			}
+			if (currNode.rightChild != null){
+				nodeStack[stackSize] = currNode.rightChild;
+				depthStack[stackSize] = depth + 1;
+				++stackSize;
+			}
+		}
+
+		double[] balanceFactors = new double[dimensions];
+		for (int d=0; d < dimensions; ++d){
+			balanceFactors[d] = balanceCounts[d] == 0 ? 0.5 : balanceSums[d] / balanceCounts[d];
+		}
+
+		long keysBytes = (ARRAY_HEADER_BYTES + 4L * dimensions + 7) & ~7L;
+		long nodeBytes = NODE_BYTES + keysBytes + (boxes ? 2 * keysBytes : 0);
+		return new TreeStatistics(size, nodeCount, maxDepth, 
+				nodeCount == 0 ? 0 : (double) depthSum / nodeCount,
+				Arrays.copyOf(histogram, maxDepth + 1), balanceFactors, nodeCount * nodeBytes);
+	}
+
+	/**
+	 * @return
+	 * - the number of values in the tree.
+	 */
+	public int getSize(){
+		return size;
+	}
+
+	/**
+	 * @return
+	 * - the number of nodes in the tree, removed nodes that are still kept
+	 * included.
+	 */
+	public int getNodeCount(){
+		return nodeCount;
+	}
+
+	/**
+	 * @return
+	 * - the depth of the deepest node, or -1 if the tree is empty.
+	 */
+	public int getMaxDepth(){
+		return maxDepth;
+	}
+
+	/**
+	 * @return
+	 * - the average depth of the nodes, or 0 if the tree is empty.
+	 */
+	public double getAverageDepth(){
+		return averageDepth;
+	}
+
+	/**
+	 * @return
+	 * - a copy of the depth histogram, where index i holds the number of
+	 * nodes at depth i.
+	 */
+	public long[] getDepthHistogram(){
+		return Arrays.copyOf(depthHistogram, depthHistogram.length);
+	}
+
+	/**
+	 * Returns the average balance factor of the nodes that split on a
+	 * dimension and have children.
+	 *
+	 * @param dimension
+	 * - the dimension.
+	 *
+	 * @return
+	 * - the average balance factor, from 0.5 for balanced nodes to 1 for
+	 * nodes with a single subtree. 0.5 if no such nodes exist.
+	 *
+	 * @throws IndexOutOfBoundsException if the tree doesn't have the
+	 * dimension.
+	 */
+	public double getBalanceFactor(int dimension){
+		return balanceFactors[dimension];
+	}
+
+	/**
+	 * Returns the ratio between the maximum depth and the depth of a balanced
+	 * tree of the same size, log2(size).
+	 *
+	 * @return
+	 * - the ratio, or 0 if the tree has less than two values.
+	 */
+	public double getDepthRatio(){
+		if (size < 2){
+			return 0;
+		}
+		return maxDepth / (Math.log(size) / Math.log(2));
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the nodes of the tree, their
+	 * key arrays and bounding boxes, assuming compressed references. The keys
+	 * and values themselves aren't included.
+	 *
+	 * @return
+	 * - the estimated number of bytes.
+	 */
+	public long getEstimatedMemoryBytes(){
+		return memoryBytes;
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder builder = new StringBuilder();
+		builder.append(size).append(" values in ").append(nodeCount).append(" nodes, max depth ")
+				.append(maxDepth).append(", average depth ").append(String.format("%.2f", averageDepth))
+				.append(", balance factors ");
+		for (int d=0; d < balanceFactors.length; ++d){
+			builder.append(d == 0 ? "[" : ", ").append(String.format("%.2f", balanceFactors[d]));
+		}
+		return builder.append("], about ").append(memoryBytes).append(" bytes").toString();
+	}
+
+}
@@ -0,0 +1,42 @@
+package kdTree;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A ValueCodec turns the values of a KD-Tree into bytes and back, so that 
+ * the values can be stored in a snapshot file.
+ * 
+ * @param <T>
+ * - the type of the values.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ * 
+ * @see ValueCodecs
+ */
+public interface ValueCodec<T> {
+	
+	/**
+	 * Returns the bytes of a value.
+	 * 
+	 * @param value
+	 * - the value to encode. Never null.
+	 * 
+	 * @return
+	 * - the encoded value.
+	 */
+	byte[] encode(T value);
+	
+	/**
+	 * Returns the value encoded in the supplied bytes.
+	 * 
+	 * @param bytes
+	 * - the remaining bytes of the buffer are the encoded value. The buffer 
+	 * may be a view of a mapped file, so it may only be read during the call.
+	 * 
+	 * @return
+	 * - the decoded value.
+	 */
+	T decode(ByteBuffer bytes);
+	
+}
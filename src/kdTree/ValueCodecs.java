@@ -0,0 +1,113 @@
+package kdTree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The value codecs that come with the KD-Tree.
+ * 
+ * @author Henrik Järnbrand 
+ * @author Tomas Sandberg
+ */
+public final class ValueCodecs {
+	
+	private ValueCodecs(){}
+	
+	/**
+	 * Returns a codec storing strings as UTF-8.
+	 */
+	public static ValueCodec<String> strings(){
+		return new ValueCodec<String>(){
+			@Override
+			public byte[] encode(String value){
+				return value.getBytes(StandardCharsets.UTF_8);
+			}
+			
+			@Override
+			public String decode(ByteBuffer bytes){
+				return StandardCharsets.UTF_8.decode(bytes).toString();
+			}
+		};
+	}
+	
+	/**
+	 * Returns a codec storing integers in four bytes.
+	 */
+	public static ValueCodec<Integer> integers(){
+		return new ValueCodec<Integer>(){
+			@Override
+			public byte[] encode(Integer value){
+				return ByteBuffer.allocate(4).putInt(value).array();
+			}
+			
+			@Override
+			public Integer decode(ByteBuffer bytes){
+				return bytes.getInt(bytes.position());
+			}
+		};
+	}
+	
+	/**
+	 * Returns a codec storing longs in eight bytes.
+	 */
+	public static ValueCodec<Long> longs(){
+		return new ValueCodec<Long>(){
+			@Override
+			public byte[] encode(Long value){
+				return ByteBuffer.allocate(8).putLong(value).array();
+			}
+			
+			@Override
+			public Long decode(ByteBuffer bytes){
+				return bytes.getLong(bytes.position());
+			}
+		};
+	}
+	
+	/**
+	 * Returns a codec storing any serializable value with Java 
+	 * serialization. It's slow and large, but works for any value.
+	 * 
+	 * @throws UncheckedIOException from encode and decode if the value 
+	 * can't be serialized or deserialized.
+	 */
+	public static <T extends Serializable> ValueCodec<T> serialized(){
+		return new ValueCodec<T>(){
+			@Override
+			public byte[] encode(T value){
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				try {
+					ObjectOutputStream out = new ObjectOutputStream(bytes);
+					out.writeObject(value);
+					out.close();
+				} catch (IOException e){
+					throw new UncheckedIOException(e);
+				}
+				return bytes.toByteArray();
+			}
+			
+			@Override
+			@SuppressWarnings("unchecked")
+			public T decode(ByteBuffer bytes){
+				byte[] copy = new byte[bytes.remaining()];
+				bytes.get(copy);
+				try {
+					ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(copy));
+					return (T) in.readObject();
+				} catch (IOException e){
+					throw new UncheckedIOException(e);
+				} catch (ClassNotFoundException e){
+					throw new UncheckedIOException(new IOException(e));
+				}
+			}
+		};
+	}
+	
+}
@@ -0,0 +1,109 @@
+package kdTree;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class BucketKDTreeTester {
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testToSmallBucket(){
+		new BucketKDTree<String>(3, 0);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testGetArgumentToSmall(){
+		BucketKDTree<String> tree = new BucketKDTree<String>(3);
+		Integer[] arr = {1, 2};
+		tree.get(arr);
+	}
+	
+	@Test
+	public void testPartlyInvertedRange(){
+		BucketKDTree<String> tree = new BucketKDTree<String>(3);
+		Integer[] keys = {4, 5, 6};
+		tree.insert(keys, "A");
+		Integer[] lowest = {0, 9, 0};
+		Integer[] highest = {9, 0, 9};
+		assertTrue(tree.range(lowest, highest).isEmpty());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvertedRange(){
+		BucketKDTree<String> tree = new BucketKDTree<String>(3);
+		Integer[] lowest = {9, 9, 9};
+		Integer[] highest = {0, 0, 0};
+		tree.range(lowest, highest);
+	}
+	
+	@Test
+	public void testManyIdenticalKeys(){
+		BucketKDTree<Integer> tree = new BucketKDTree<Integer>(2, 4);
+		Integer[] keys = {1, 1};
+		Set<Integer> oracle = new HashSet<Integer>();
+		for (int i=0; i < 20; ++i){
+			tree.insert(keys, i);
+			tree.insert(keys, i);
+			oracle.add(i);
+		}
+		assertEquals(20, tree.size());
+		assertEquals(oracle, tree.get(keys));
+		assertTrue(tree.getRoot().isLeaf());
+	}
+	
+	@Test
+	public void testTenThousandIdenticalKeys(){
+		BucketKDTree<Integer> tree = new BucketKDTree<Integer>(2);
+		Integer[] keys = {3, 3};
+		for (int i=0; i < 10000; ++i){
+			tree.insert(keys, i);
+		}
+		assertEquals(10000, tree.size());
+		assertEquals(10000, tree.get(keys).size());
+		assertTrue(tree.getRoot().isLeaf());
+
+		// A different key makes the leaf splittable again.
+		Integer[] other = {3, 4};
+		tree.insert(other, -1);
+		assertFalse(tree.getRoot().isLeaf());
+		assertEquals(10000, tree.get(keys).size());
+		assertTrue(tree.get(other).contains(-1));
+	}
+	
+	@Test
+	public void testSameAsKDTree(){
+		Random rnd = new Random(7);
+		BucketKDTree<Integer> tree = new BucketKDTree<Integer>(3, 8);
+		KDTree<Integer> oracle = new KDTree<Integer>(3);
+		
+		for (int i=0; i < 3000; ++i){
+			Integer[] keys = new Integer[3];
+			for (int j=0; j < 3; ++j){
+				keys[j] = rnd.nextInt(50);
+			}
+			Integer value = rnd.nextInt(100);
+			tree.insert(keys, value);
+			oracle.insert(keys, value);
+			
+			assertEquals(oracle.size(), tree.size());
+			assertTrue(tree.contains(keys));
+			assertEquals(oracle.get(keys), tree.get(keys));
+			
+			if (rnd.nextInt(10) == 0){
+				Integer[] lowest = new Integer[3];
+				Integer[] highest = new Integer[3];
+				for (int j=0; j < 3; ++j){
+					lowest[j] = rnd.nextInt(50);
+					highest[j] = lowest[j] + rnd.nextInt(25);
+				}
+				assertEquals(oracle.range(lowest, highest), tree.range(lowest, highest));
+			}
+		}
+		assertFalse(tree.getRoot().isLeaf());
+	}
+	
+}
@@ -0,0 +1,133 @@
+package kdTree;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class CachedKDTreeTester {
+
+	@Test
+	public void testSameAsKDTree(){
+		Random rnd = new Random(23);
+		KDTree<Integer> tree = new KDTree<Integer>(2);
+		CachedKDTree<Integer> cached = new CachedKDTree<Integer>(2, 20);
+		Integer[][] lowests = new Integer[30][];
+		Integer[][] highests = new Integer[30][];
+		for (int i=0; i < lowests.length; ++i){
+			Integer[] lowest = {rnd.nextInt(80), rnd.nextInt(80)};
+			Integer[] highest = {lowest[0] + rnd.nextInt(20), lowest[1] + rnd.nextInt(20)};
+			lowests[i] = lowest;
+			highests[i] = highest;
+		}
+
+		for (int i=0; i < 5000; ++i){
+			Integer[] keys = {rnd.nextInt(100), rnd.nextInt(100)};
+			int value = rnd.nextInt(1000);
+			switch (rnd.nextInt(4)){
+			case 0:
+				tree.insert(keys, value);
+				cached.insert(keys, value);
+				break;
+			case 1:
+				assertEquals(tree.remove(keys, value), cached.remove(keys, value));
+				break;
+			default:
+				int query = rnd.nextInt(lowests.length);
+				assertEquals(tree.range(lowests[query], highests[query]), 
+						cached.range(lowests[query], highests[query]));
+			}
+		}
+		assertEquals(tree.size(), cached.size());
+		assertTrue(cached.hitCount() > 0);
+		assertTrue(cached.evictionCount() > 0);
+		assertTrue(cached.invalidationCount() > 0);
+		assertTrue(cached.cacheSize() <= 20);
+	}
+
+	@Test
+	public void testInvalidatesOnlyContainingRanges(){
+		CachedKDTree<String> cached = new CachedKDTree<String>(2, 10);
+		Integer[] low = {0, 0};
+		Integer[] high = {10, 10};
+		Integer[] otherLow = {20, 20};
+		Integer[] otherHigh = {30, 30};
+		Integer[] keys = {5, 5};
+
+		Set<String> first = cached.range(low, high);
+		cached.range(otherLow, otherHigh);
+		assertSame(first, cached.range(low, high));
+		assertEquals(2, cached.missCount());
+		assertEquals(1, cached.hitCount());
+
+		cached.insert(keys, "A");
+		assertEquals(1, cached.invalidationCount());
+		assertEquals(1, cached.cacheSize());
+		assertTrue(cached.range(low, high).contains("A"));
+		cached.range(otherLow, otherHigh);
+		assertEquals(2, cached.hitCount());
+
+		// A duplicate insert changes nothing.
+		cached.insert(keys, "A");
+		assertEquals(1, cached.invalidationCount());
+
+		cached.removeAll(keys);
+		assertTrue(cached.range(low, high).isEmpty());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed(){
+		CachedKDTree<String> cached = new CachedKDTree<String>(2, 2);
+		Integer[] a = {0, 0};
+		Integer[] b = {1, 1};
+		Integer[] c = {2, 2};
+		Set<String> resultA = cached.range(a, a);
+		cached.range(b, b);
+		cached.range(a, a);
+		cached.range(c, c);
+		assertEquals(1, cached.evictionCount());
+		assertSame(resultA, cached.range(a, a));
+		cached.range(b, b);
+		assertEquals(4, cached.missCount());
+	}
+
+	@Test
+	public void testConcurrentSearchesAndInserts() throws InterruptedException {
+		final CachedKDTree<Integer> cached = new CachedKDTree<Integer>(2, 8);
+		final Integer[] lowest = {0, 0};
+		final Integer[] highest = {100, 100};
+		Thread[] threads = new Thread[4];
+		for (int t=0; t < threads.length; ++t){
+			final int thread = t;
+			threads[t] = new Thread(){
+				@Override
+				public void run(){
+					Random rnd = new Random(thread);
+					for (int i=0; i < 500; ++i){
+						Integer[] keys = {rnd.nextInt(100), rnd.nextInt(100)};
+						cached.insert(keys, thread * 1000 + i);
+						cached.range(lowest, highest);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+
+		assertEquals(2000, cached.size());
+		assertEquals(2000, cached.hitCount() + cached.missCount());
+		assertEquals(2000, cached.range(lowest, highest).size());
+	}
+
+	@Test(expected=UnsupportedOperationException.class)
+	public void testResultsAreUnmodifiable(){
+		CachedKDTree<String> cached = new CachedKDTree<String>(2, 2);
+		Integer[] a = {0, 0};
+		cached.range(a, a).add("A");
+	}
+
+}
@@ -0,0 +1,289 @@
+package kdTree;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.Test;
+
+public class ConcurrentKDTreeTester {
+
+	private Integer[] constructRndIntegerArray(Random rnd, int ceiling, int size){
+		Integer[] tmpArray = new Integer[size];
+		for (int j=0; j < tmpArray.length; ++j){
+			tmpArray[j] = rnd.nextInt(ceiling);
+		}
+		return tmpArray;
+	}
+	
+	@Test(expected=UnsupportedOperationException.class)
+	public void testSnapshotIsReadOnly(){
+		ConcurrentKDTree<String> tree = new ConcurrentKDTree<String>(2);
+		Integer[] keys = {1, 2};
+		tree.snapshot().insert(keys, "A");
+	}
+	
+	@Test
+	public void testSnapshotIsUnchanged(){
+		ConcurrentKDTree<String> tree = new ConcurrentKDTree<String>(2);
+		Integer[] keysA = {1, 2};
+		Integer[] keysB = {3, 4};
+		tree.insert(keysA, "A");
+		KDTree<String> snapshot = tree.snapshot();
+		
+		tree.insert(keysB, "B");
+		tree.remove(keysA, "A");
+		
+		assertEquals(1, snapshot.size());
+		assertTrue(snapshot.contains(keysA));
+		assertFalse(snapshot.contains(keysB));
+		
+		assertEquals(1, tree.size());
+		assertFalse(tree.contains(keysA));
+		assertTrue(tree.contains(keysB));
+	}
+	
+	@Test
+	public void testSameAsKDTree(){
+		Random rnd = new Random(8);
+		ConcurrentKDTree<Integer> tree = new ConcurrentKDTree<Integer>(3);
+		tree.setBalanceFactor(0.7);
+		tree.setRebuildThreshold(0.3);
+		KDTree<Integer> oracle = new KDTree<Integer>(3);
+		
+		for (int i=0; i < 3000; ++i){
+			Integer[] keys = constructRndIntegerArray(rnd, 20, 3);
+			Integer value = rnd.nextInt(5);
+			if (rnd.nextInt(3) == 0){
+				assertEquals(oracle.remove(keys, value), tree.remove(keys, value));
+			} else if (rnd.nextInt(10) == 0){
+				assertEquals(oracle.removeAll(keys), tree.removeAll(keys));
+			} else {
+				oracle.insert(keys, value);
+				tree.insert(keys, value);
+			}
+			assertEquals(oracle.size(), tree.size());
+			assertEquals(oracle.get(keys), tree.get(keys));
+		}
+		
+		Integer[] lowest = {0, 0, 0};
+		Integer[] highest = {20, 20, 20};
+		assertEquals(oracle.range(lowest, highest), tree.range(lowest, highest));
+	}
+	
+	@Test
+	public void testConcurrentReadersAndWriters() throws InterruptedException{
+		final ConcurrentKDTree<Integer> tree = new ConcurrentKDTree<Integer>(2);
+		tree.setBalanceFactor(0.75);
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		
+		Thread[] readers = new Thread[4];
+		for (int i=0; i < readers.length; ++i){
+			readers[i] = new Thread(new Runnable(){
+				@Override
+				public void run(){
+					try {
+						Integer[] lowest = {0, 0};
+						Integer[] highest = {10000, 10000};
+						while (!done.get()){
+							KDTree<Integer> snapshot = tree.snapshot();
+							assertEquals(snapshot.size(), snapshot.range(lowest, highest).size());
+						}
+					} catch (Throwable t){
+						failure.set(t);
+					}
+				}
+			});
+			readers[i].start();
+		}
+		
+		Set<Integer> oracle = new HashSet<Integer>();
+		for (int i=0; i < 5000; ++i){
+			Integer[] keys = {i, i % 100};
+			tree.insert(keys, i);
+			oracle.add(i);
+			if (i % 3 == 0){
+				Integer[] removeKeys = {i / 2, (i / 2) % 100};
+				if (tree.remove(removeKeys, i / 2)){
+					oracle.remove(i / 2);
+				}
+			}
+		}
+		done.set(true);
+		for (Thread reader : readers){
+			reader.join();
+		}
+		
+		assertNull(failure.get());
+		Integer[] lowest = {0, 0};
+		Integer[] highest = {10000, 10000};
+		assertEquals(oracle, tree.range(lowest, highest));
+	}
+	
+	@Test
+	public void testSnapshotAggregateIsUnchanged(){
+		ConcurrentKDTree<Integer> tree = new ConcurrentKDTree<Integer>(2);
+		Integer[] keysA = {1, 2};
+		Integer[] keysB = {3, 4};
+		tree.insert(keysA, 5);
+		tree.setAggregation(Aggregations.sum(new ToDoubleFunction<Integer>(){
+			@Override
+			public double applyAsDouble(Integer value){
+				return value;
+			}
+		}));
+		KDTree<Integer> snapshot = tree.snapshot();
+		
+		tree.insert(keysB, 7);
+		tree.remove(keysA, 5);
+		
+		Integer[] lowest = {0, 0};
+		Integer[] highest = {9, 9};
+		assertEquals(5, snapshot.rangeAggregate(lowest, highest), 0);
+		assertEquals(1, snapshot.rangeCount(lowest, highest));
+		assertEquals(7, tree.rangeAggregate(lowest, highest), 0);
+		assertEquals(1, tree.rangeCount(lowest, highest));
+	}
+	
+	@Test
+	public void testRebuildDuringChanges() throws InterruptedException {
+		final ConcurrentKDTree<Integer> tree = new ConcurrentKDTree<Integer>(2);
+		final Set<Integer> oracle = new HashSet<Integer>();
+		for (int i=0; i < 5000; ++i){
+			Integer[] keys = {i, i};
+			tree.insert(keys, i);
+			oracle.add(i);
+		}
+		
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread rebuilder = new Thread(){
+			@Override
+			public void run(){
+				try {
+					for (int i=0; i < 5; ++i){
+						tree.rebuild();
+					}
+				} catch (Throwable t){
+					failure.set(t);
+				}
+			}
+		};
+		rebuilder.start();
+		
+		Random rnd = new Random(5);
+		for (int i=0; i < 2000; ++i){
+			int value = rnd.nextInt(6000);
+			Integer[] keys = {value, value};
+			if (oracle.remove(value)){
+				assertTrue(tree.remove(keys, value));
+			} else {
+				tree.insert(keys, value);
+				oracle.add(value);
+			}
+		}
+		rebuilder.join();
+		
+		assertNull(failure.get());
+		assertTrue(tree.rebuild());
+		Integer[] lowest = {0, 0};
+		Integer[] highest = {10000, 10000};
+		assertEquals(oracle, tree.range(lowest, highest));
+		assertEquals(oracle.size(), tree.statistics().getNodeCount());
+	}
+	
+	@Test
+	public void testReusedKeysDuringRebuild() throws InterruptedException {
+		final ConcurrentKDTree<Integer> tree = new ConcurrentKDTree<Integer>(2);
+		Random rnd = new Random(25);
+		for (int i=0; i < 50000; ++i){
+			Integer[] keys = {rnd.nextInt(100000), rnd.nextInt(100000)};
+			tree.insert(keys, -1);
+		}
+		
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread rebuilder = new Thread(){
+			@Override
+			public void run(){
+				try {
+					while (!done.get()){
+						tree.rebuild();
+					}
+				} catch (Throwable t){
+					failure.set(t);
+				}
+			}
+		};
+		rebuilder.start();
+		
+		// One array for all inserts, changed as soon as insert returns.
+		Integer[] keys = new Integer[2];
+		for (int i=0; i < 20000; ++i){
+			keys[0] = 100000 + i;
+			keys[1] = i;
+			tree.insert(keys, i);
+			keys[0] = -1;
+			keys[1] = -1;
+		}
+		done.set(true);
+		rebuilder.join();
+		
+		assertNull(failure.get());
+		for (int i=0; i < 20000; ++i){
+			Integer[] inserted = {100000 + i, i};
+			assertEquals(Collections.singleton(i), tree.get(inserted));
+		}
+		Integer[] reused = {-1, -1};
+		assertFalse(tree.contains(reused));
+	}
+	
+	@Test
+	public void testSettingsKeptByRebuild(){
+		ConcurrentKDTree<Integer> tree = new ConcurrentKDTree<Integer>(2);
+		Integer[] first = {0, 0};
+		tree.insert(first, 0);
+		tree.setBalanceFactor(0.7);
+		tree.rebuild();
+		for (int i=1; i < 2000; ++i){
+			Integer[] keys = {i, i};
+			tree.insert(keys, i);
+		}
+		assertTrue(tree.statistics().getMaxDepth() < 100);
+	}
+	
+	@Test
+	public void testRebalancePolicy(){
+		ConcurrentKDTree<Integer> tree = new ConcurrentKDTree<Integer>(2);
+		tree.minCheckInterval = 100;
+		tree.setRebalancePolicy(RebalancePolicies.maxDepthExceeds(3), new Executor(){
+			@Override
+			public void execute(Runnable command){
+				command.run();
+			}
+		});
+		for (int i=0; i < 1000; ++i){
+			Integer[] keys = {i, i};
+			tree.insert(keys, i);
+		}
+		
+		TreeStatistics statistics = tree.statistics();
+		assertEquals(1000, statistics.getSize());
+		assertTrue(statistics.getMaxDepth() < 3 * 10);
+		
+		tree.setRebalancePolicy(null, null);
+		for (int i=1000; i < 2000; ++i){
+			Integer[] keys = {i, i};
+			tree.insert(keys, i);
+		}
+		assertTrue(tree.statistics().getMaxDepth() >= 1000);
+	}
+	
+}
@@ -0,0 +1,114 @@
+package kdTree;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class DoubleKDTreeTester {
+
+	DoubleKDTree<String> triDTree = new DoubleKDTree<String>(3);
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testToSmallK() {
+		new DoubleKDTree<Integer>(1);
+	}
+	
+	@Test(expected=NullPointerException.class)
+	public void testNullGet(){
+		triDTree.get(null);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInsertArgumentToSmall(){
+		double[] arr = {1, 2};
+		triDTree.insert(arr, "A");
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInsertNaN(){
+		double[] arr = {1, Double.NaN, 3};
+		triDTree.insert(arr, "A");
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testLargerIsLessThanLower(){
+		double[] lower = {5, 5, 5};
+		double[] larger = {4, 4, 4};
+		triDTree.range(lower, larger);
+	}
+	
+	@Test
+	public void testPartlyInvertedRange(){
+		double[] keys = {4, 5, 6};
+		triDTree.insert(keys, "A");
+		double[] lowest = {0, 9, 0};
+		double[] highest = {9, 0, 9};
+		assertTrue(triDTree.range(lowest, highest).isEmpty());
+		
+		// The same rule as in KDTree.
+		KDTree<String> tree = new KDTree<String>(3);
+		Integer[] boxedKeys = {4, 5, 6};
+		Integer[] boxedLowest = {0, 9, 0};
+		Integer[] boxedHighest = {9, 0, 9};
+		tree.insert(boxedKeys, "A");
+		assertTrue(tree.range(boxedLowest, boxedHighest).isEmpty());
+	}
+	
+	@Test
+	public void testInsertSameKeyTwice(){
+		double[] keys = {4, 5, 6};
+		triDTree.insert( keys, "A");
+		triDTree.insert( keys, "B");
+		triDTree.insert( keys, "A");
+		
+		Set<String> oracle = new HashSet<String>();
+		oracle.add("A");
+		oracle.add("B");
+		
+		assertTrue( triDTree.contains(keys) );
+		assertEquals(oracle, triDTree.get(keys) );
+		assertEquals( 2, triDTree.size() );
+	}
+	
+	@Test
+	public void testMultipleRandomOperations(){
+		Random rnd = new Random(3);
+		DoubleKDTree<Integer> tree = new DoubleKDTree<Integer>(3);
+		KDTree<Integer> oracle = new KDTree<Integer>(3);
+		
+		for (int i=0; i < 2000; ++i){
+			double[] keys = new double[3];
+			Double[] oracleKeys = new Double[3];
+			for (int j=0; j < 3; ++j){
+				keys[j] = rnd.nextInt(100);
+				oracleKeys[j] = keys[j];
+			}
+			Integer value = rnd.nextInt(2000);
+			tree.insert(keys, value);
+			oracle.insert(oracleKeys, value);
+			
+			assertEquals(oracle.size(), tree.size());
+			assertTrue(tree.contains(keys));
+			assertEquals(oracle.get(oracleKeys), tree.get(keys));
+			
+			if (rnd.nextBoolean()){
+				double[] lowest = new double[3];
+				double[] highest = new double[3];
+				Double[] oracleLowest = new Double[3];
+				Double[] oracleHighest = new Double[3];
+				for (int j=0; j < 3; ++j){
+					lowest[j] = rnd.nextInt(100);
+					highest[j] = lowest[j] + rnd.nextInt(50);
+					oracleLowest[j] = lowest[j];
+					oracleHighest[j] = highest[j];
+				}
+				assertEquals(oracle.range(oracleLowest, oracleHighest), tree.range(lowest, highest));
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,100 @@
+package kdTree;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class FrozenKDTreeTester {
+
+	private Integer[] constructRndIntegerArray(Random rnd, int ceiling, int size){
+		Integer[] tmpArray = new Integer[size];
+		for (int j=0; j < tmpArray.length; ++j){
+			tmpArray[j] = rnd.nextInt(ceiling);
+		}
+		return tmpArray;
+	}
+	
+	@Test
+	public void testEmptyTree(){
+		FrozenKDTree<String> tree = new FrozenKDTree<String>(new KDTree<String>(3));
+		Integer[] keys = {1, 2, 3};
+		assertEquals(0, tree.size());
+		assertFalse(tree.contains(keys));
+		assertTrue(tree.range(keys, keys).isEmpty());
+	}
+	
+	@Test
+	public void testPartlyInvertedRange(){
+		KDTree<String> tree = new KDTree<String>(3);
+		Integer[] keys = {4, 5, 6};
+		tree.insert(keys, "A");
+		Integer[] lowest = {0, 9, 0};
+		Integer[] highest = {9, 0, 9};
+		assertTrue(new FrozenKDTree<String>(tree).range(lowest, highest).isEmpty());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvertedRange(){
+		Integer[] lowest = {9, 9, 9};
+		Integer[] highest = {0, 0, 0};
+		new FrozenKDTree<String>(new KDTree<String>(3)).range(lowest, highest);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testGetArgumentToSmall(){
+		FrozenKDTree<String> tree = new FrozenKDTree<String>(new KDTree<String>(3));
+		Integer[] keys = {1, 2};
+		tree.get(keys);
+	}
+	
+	@Test
+	public void testBulkLoadDuplicates(){
+		Integer[] keys = {4, 5, 6};
+		List<Comparable[]> keyList = new ArrayList<Comparable[]>();
+		List<String> values = new ArrayList<String>();
+		for (String value : new String[]{"A", "B", "A"}){
+			keyList.add(keys);
+			values.add(value);
+		}
+		
+		FrozenKDTree<String> tree = new FrozenKDTree<String>(3, keyList, values);
+		
+		Set<String> oracle = new HashSet<String>();
+		oracle.add("A");
+		oracle.add("B");
+		assertEquals(2, tree.size());
+		assertEquals(oracle, tree.get(keys));
+	}
+	
+	@Test
+	public void testSameAsKDTree(){
+		Random rnd = new Random(4);
+		KDTree<Integer> oracle = new KDTree<Integer>(3);
+		for (int i=0; i < 3000; ++i){
+			oracle.insert(constructRndIntegerArray(rnd, 40, 3), rnd.nextInt(20));
+		}
+		
+		FrozenKDTree<Integer> tree = new FrozenKDTree<Integer>(oracle);
+		assertEquals(oracle.size(), tree.size());
+		
+		for (int i=0; i < 500; ++i){
+			Integer[] keys = constructRndIntegerArray(rnd, 40, 3);
+			assertEquals(oracle.contains(keys), tree.contains(keys));
+			assertEquals(oracle.get(keys), tree.get(keys));
+			
+			Integer[] lowest = constructRndIntegerArray(rnd, 40, 3);
+			Integer[] highest = new Integer[3];
+			for (int j=0; j < 3; ++j){
+				highest[j] = lowest[j] + rnd.nextInt(20);
+			}
+			assertEquals(oracle.range(lowest, highest), tree.range(lowest, highest));
+		}
+	}
+	
+}
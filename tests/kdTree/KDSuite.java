@@ -4,5 +4,10 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({NodeTester.class, KDTreeTester.class})
+@Suite.SuiteClasses({NodeTester.class, KDTreeTester.class, DoubleKDTreeTester.class,
+	LongKDTreeTester.class, FrozenKDTreeTester.class,
+	BucketKDTreeTester.class, ConcurrentKDTreeTester.class,
+	MappedKDTreeTester.class, OffHeapDoubleKDTreeTester.class,
+	SpatialJoinTester.class, CachedKDTreeTester.class,
+	QueryMetricsTester.class})
 public class KDSuite {}
@@ -15,6 +15,13 @@ import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
 
 public class KDTreeTester {
 
@@ -510,6 +517,805 @@ public class KDTreeTester {
 		biTree.range(lower, larger);
 	}
 	
+	private int depth(Node<?> node){
+		if (node == null){
+			return 0;
+		}
+		return 1 + Math.max(depth(node.getLeftChild()), depth(node.getRightChild()));
+	}
+	
+	@Test
+	public void testBulkLoadSameAsInserts(){
+		Random rnd = new Random(1);
+		KDTree<Integer> inserted = new KDTree<Integer>(3);
+		List<Comparable[]> keys = new ArrayList<Comparable[]>();
+		List<Integer> values = new ArrayList<Integer>();
+		
+		for (int i=0; i < 2000; ++i){
+			Integer[] tmpArray = constructRndIntegerArray(rnd, 50, 3);
+			Integer value = rnd.nextInt(20);
+			inserted.insert(tmpArray, value);
+			keys.add(tmpArray);
+			values.add(value);
+		}
+		
+		KDTree<Integer> bulk = new KDTree<Integer>(3, keys, values);
+		assertEquals(inserted.size(), bulk.size());
+		
+		for (Comparable[] key : keys){
+			assertTrue( bulk.contains(key) );
+			assertEquals( inserted.get(key), bulk.get(key) );
+		}
+		
+		for (int i=0; i < 100; ++i){
+			Integer[] lowest = constructRndIntegerArray(rnd, 50, 3);
+			Integer[] highest = constructRndIntegerArray(rnd, lowest, 50, 3);
+			assertEquals( inserted.range(lowest, highest), bulk.range(lowest, highest) );
+		}
+	}
+	
+	@Test
+	public void testBulkLoadSortedIsBalanced(){
+		List<Comparable[]> keys = new ArrayList<Comparable[]>();
+		List<Integer> values = new ArrayList<Integer>();
+		for (int i=0; i < 1023; ++i){
+			Integer[] tmpArray = {i, i};
+			keys.add(tmpArray);
+			values.add(i);
+		}
+		
+		KDTree<Integer> bulk = new KDTree<Integer>(2, keys, values);
+		assertEquals(1023, bulk.size());
+		assertEquals(10, depth(bulk.getRoot()));
+	}
+	
+	@Test
+	public void testBulkLoadDuplicates(){
+		Integer[] keys = {4, 5, 6};
+		List<Comparable[]> keyList = new ArrayList<Comparable[]>();
+		List<String> values = new ArrayList<String>();
+		keyList.add(keys);
+		values.add("A");
+		keyList.add(keys);
+		values.add("B");
+		keyList.add(keys);
+		values.add("A");
+		
+		KDTree<String> bulk = new KDTree<String>(3, keyList, values);
+		
+		Set<String> oracle = new HashSet<String>();
+		oracle.add("A");
+		oracle.add("B");
+		
+		assertEquals(oracle, bulk.get(keys) );
+		assertEquals( 2, bulk.size() );
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testBulkLoadDifferentSizes(){
+		List<Comparable[]> keys = new ArrayList<Comparable[]>();
+		keys.add(new Integer[]{1, 2, 3});
+		new KDTree<String>(3, keys, new ArrayList<String>());
+	}
+	
+	@Test(expected=NullPointerException.class)
+	public void testBulkLoadNull(){
+		new KDTree<String>(3, null, new ArrayList<String>());
+	}
+	
+	private List<Integer> bruteForceNearest(final List<Comparable[]> keys, final Comparable[] target, 
+			int k, final DistanceMetric metric){
+		List<Integer> indices = new ArrayList<Integer>();
+		for (int i=0; i < keys.size(); ++i){
+			indices.add(i);
+		}
+		Collections.sort(indices, new Comparator<Integer>(){
+			@Override
+			public int compare(Integer lhs, Integer rhs){
+				return Double.compare(metric.distance(target, keys.get(lhs)), 
+						metric.distance(target, keys.get(rhs)));
+			}
+		});
+		return indices.subList(0, Math.min(k, indices.size()));
+	}
+	
+	@Test
+	public void testNearestWithAllMetrics(){
+		Random rnd = new Random(2);
+		KDTree<Integer> tree = new KDTree<Integer>(3);
+		List<Comparable[]> keys = new ArrayList<Comparable[]>();
+		
+		for (int i=0; i < 1000; ++i){
+			Double[] tmpArray = {rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble()};
+			tree.insert(tmpArray, i);
+			keys.add(tmpArray);
+		}
+		
+		for (StandardMetric metric : StandardMetric.values()){
+			for (int i=0; i < 50; ++i){
+				Double[] target = {rnd.nextDouble(), rnd.nextDouble(), rnd.nextDouble()};
+				List<Integer> nearest = tree.nearest(target, 10, metric);
+				List<Integer> oracle = bruteForceNearest(keys, target, 10, metric);
+				assertEquals(oracle.size(), nearest.size());
+				for (int j=0; j < oracle.size(); ++j){
+					assertEquals(metric.distance(target, keys.get(oracle.get(j))), 
+							metric.distance(target, keys.get(nearest.get(j))), 1e-12);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testNearestMoreThanSize(){
+		Integer[] keys = {4, 5, 6};
+		triDTree.insert(keys, "A");
+		Integer[] target = {1, 1, 1};
+		List<String> nearest = triDTree.nearest(target, 5);
+		assertEquals(1, nearest.size());
+		assertEquals("A", nearest.get(0));
+		assertTrue( new KDTree<String>(3).nearest(target, 5).isEmpty() );
+		assertEquals(nearest, triDTree.nearest(target, Integer.MAX_VALUE));
+		assertTrue( new KDTree<String>(3).nearest(target, Integer.MAX_VALUE).isEmpty() );
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNearestZeroNeighbours(){
+		Integer[] target = {1, 1, 1};
+		triDTree.nearest(target, 0);
+	}
+	
+	@Test
+	public void testBatchNearest(){
+		Random rnd = new Random(21);
+		KDTree<Integer> tree = new KDTree<Integer>(3);
+		List<Comparable[]> keys = new ArrayList<Comparable[]>();
+		for (int i=0; i < 3000; ++i){
+			Integer[] tmpArray = {rnd.nextInt(1000), rnd.nextInt(1000), rnd.nextInt(1000)};
+			tree.insert(tmpArray, i);
+			keys.add(tmpArray);
+		}
+		for (int i=0; i < 3000; i += 4){
+			tree.remove(keys.get(i), i);
+		}
+		
+		List<Comparable[]> queries = new ArrayList<Comparable[]>();
+		for (int i=0; i < 500; ++i){
+			Integer[] query = {rnd.nextInt(1100), rnd.nextInt(1100), rnd.nextInt(1100)};
+			queries.add(query);
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (StandardMetric metric : StandardMetric.values()){
+			List<List<Integer>> batch = tree.batchNearest(queries, 7, metric, pool);
+			assertEquals(queries.size(), batch.size());
+			for (int i=0; i < queries.size(); ++i){
+				List<Integer> expected = tree.nearest(queries.get(i), 7, metric);
+				List<Integer> nearest = batch.get(i);
+				assertEquals(expected.size(), nearest.size());
+				for (int j=0; j < expected.size(); ++j){
+					assertEquals(metric.distance(queries.get(i), keys.get(expected.get(j))), 
+							metric.distance(queries.get(i), keys.get(nearest.get(j))), 1e-12);
+				}
+			}
+		}
+		pool.shutdown();
+	}
+	
+	@Test
+	public void testBatchNearestEmpty(){
+		List<Comparable[]> queries = new ArrayList<Comparable[]>();
+		assertTrue(triDTree.batchNearest(queries, 3).isEmpty());
+		Integer[] query = {1, 2, 3};
+		queries.add(query);
+		assertEquals(1, triDTree.batchNearest(queries, 3).size());
+		assertTrue(triDTree.batchNearest(queries, 3).get(0).isEmpty());
+		
+		Integer[] keys = {4, 5, 6};
+		triDTree.insert(keys, "A");
+		for (int i=0; i < 2 * BatchNearestSearch.BLOCK_SIZE; ++i){
+			queries.add(query);
+		}
+		List<List<String>> batch = triDTree.batchNearest(queries, Integer.MAX_VALUE);
+		assertEquals(queries.size(), batch.size());
+		for (List<String> nearest : batch){
+			assertEquals(Arrays.asList("A"), nearest);
+		}
+	}
+	
+	@Test
+	public void testApproximateNearest(){
+		Random rnd = new Random(20);
+		KDTree<Integer> tree = new KDTree<Integer>(8);
+		List<Comparable[]> keys = new ArrayList<Comparable[]>();
+		for (int i=0; i < 5000; ++i){
+			Double[] tmpArray = new Double[8];
+			for (int d=0; d < 8; ++d){
+				tmpArray[d] = rnd.nextDouble();
+			}
+			tree.insert(tmpArray, i);
+			keys.add(tmpArray);
+		}
+		
+		for (int i=0; i < 30; ++i){
+			Double[] target = new Double[8];
+			for (int d=0; d < 8; ++d){
+				target[d] = rnd.nextDouble();
+			}
+			List<Integer> oracle = bruteForceNearest(keys, target, 5, StandardMetric.EUCLIDEAN);
+			
+			// Without epsilon or limit the search is exact.
+			NearestResult<Integer> exact = tree.approximateNearest(target, 5, StandardMetric.EUCLIDEAN, 0, Integer.MAX_VALUE);
+			assertFalse(exact.isVisitLimitReached());
+			assertEquals(oracle.size(), exact.getNeighbours().size());
+			for (int j=0; j < oracle.size(); ++j){
+				assertEquals(StandardMetric.EUCLIDEAN.distance(target, keys.get(oracle.get(j))), 
+						exact.getNeighbours().get(j).getDistance(), 1e-12);
+			}
+			
+			NearestResult<Integer> approximate = tree.approximateNearest(target, 5, StandardMetric.EUCLIDEAN, 0.5, Integer.MAX_VALUE);
+			assertTrue(approximate.getNodesVisited() <= exact.getNodesVisited());
+			for (int j=0; j < oracle.size(); ++j){
+				assertTrue(approximate.getNeighbours().get(j).getDistance() <= 
+						1.5 * exact.getNeighbours().get(j).getDistance() + 1e-12);
+			}
+			
+			NearestResult<Integer> limited = tree.approximateNearest(target, 5, StandardMetric.EUCLIDEAN, 0, 100);
+			assertEquals(100, limited.getNodesVisited());
+			assertTrue(limited.isVisitLimitReached());
+			assertEquals(5, limited.getValues().size());
+		}
+	}
+	
+	@Test
+	public void testApproximateNearestMoreThanSize(){
+		Integer[] keysA = {4, 5, 6};
+		Integer[] keysB = {1, 2, 2};
+		triDTree.insert(keysA, "A");
+		triDTree.insert(keysB, "B");
+		Integer[] target = {1, 1, 1};
+		NearestResult<String> result = triDTree.approximateNearest(target, Integer.MAX_VALUE, 
+				StandardMetric.EUCLIDEAN, 0.5, Integer.MAX_VALUE);
+		assertEquals(Arrays.asList("B", "A"), result.getValues());
+		assertEquals(triDTree.nearest(target, Integer.MAX_VALUE), result.getValues());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testApproximateNearestNegativeEpsilon(){
+		Integer[] target = {1, 1, 1};
+		triDTree.approximateNearest(target, 1, StandardMetric.EUCLIDEAN, -1, 10);
+	}
+	
+	@Test
+	public void testWithinRadiusWithAllMetrics(){
+		Random rnd = new Random(19);
+		KDTree<Integer> plain = new KDTree<Integer>(3);
+		KDTree<Integer> boxed = new KDTree<Integer>(3);
+		boxed.setBoundingBoxes(true);
+		List<Integer[]> keys = new ArrayList<Integer[]>();
+		
+		for (int i=0; i < 2000; ++i){
+			Integer[] tmpArray = {rnd.nextInt(100), rnd.nextInt(100), rnd.nextInt(100)};
+			keys.add(tmpArray);
+			plain.insert(tmpArray, i);
+			boxed.insert(tmpArray, i);
+		}
+		for (int i=0; i < 2000; i += 3){
+			plain.remove(keys.get(i), i);
+			boxed.remove(keys.get(i), i);
+		}
+		
+		for (StandardMetric metric : StandardMetric.values()){
+			for (int query=0; query < 30; ++query){
+				Integer[] center = constructRndIntegerArray(rnd, 100, 3);
+				double radius = rnd.nextInt(30);
+				Set<Integer> oracle = new HashSet<Integer>();
+				for (int i=0; i < keys.size(); ++i){
+					if (i % 3 != 0 && metric.distance(center, keys.get(i)) <= radius){
+						oracle.add(i);
+					}
+				}
+				assertEquals(oracle, plain.withinRadius(center, radius, metric));
+				assertEquals(oracle, boxed.withinRadius(center, radius, metric));
+				
+				List<Neighbour<Integer>> neighbours = boxed.neighboursWithinRadius(center, radius, metric);
+				assertEquals(oracle.size(), neighbours.size());
+				for (int j=0; j < neighbours.size(); ++j){
+					Neighbour<Integer> neighbour = neighbours.get(j);
+					assertEquals(metric.distance(center, neighbour.getKeys()), neighbour.getDistance(), 1e-12);
+					if (j > 0){
+						assertTrue(neighbours.get(j - 1).getDistance() <= neighbour.getDistance());
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testWithinZeroRadius(){
+		Integer[] keys = {4, 5, 6};
+		triDTree.insert(keys, "A");
+		triDTree.insert(keys, "B");
+		assertEquals(triDTree.get(keys), triDTree.withinRadius(keys, 0));
+		assertTrue( new KDTree<String>(3).withinRadius(keys, 10).isEmpty() );
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testWithinNegativeRadius(){
+		Integer[] center = {1, 1, 1};
+		triDTree.withinRadius(center, -1);
+	}
+	
+	@Test
+	public void testRemove(){
+		Integer[] keys = {4, 5, 6};
+		triDTree.insert(keys, "A");
+		triDTree.insert(keys, "B");
+		
+		assertFalse( triDTree.remove(keys, "C") );
+		assertTrue( triDTree.remove(keys, "A") );
+		assertFalse( triDTree.remove(keys, "A") );
+		
+		Set<String> oracle = new HashSet<String>();
+		oracle.add("B");
+		assertEquals(oracle, triDTree.get(keys));
+		assertEquals(1, triDTree.size());
+		
+		triDTree.insert(keys, "A");
+		oracle.add("A");
+		assertEquals(oracle, triDTree.get(keys));
+		assertEquals(2, triDTree.size());
+		
+		assertEquals(oracle, triDTree.removeAll(keys));
+		assertFalse( triDTree.contains(keys) );
+		assertEquals(0, triDTree.size());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testRebuildThresholdOutOfRange(){
+		triDTree.setRebuildThreshold(0);
+	}
+	
+	private int checkSubtreeSizes(Node<?> node){
+		if (node == null){
+			return 0;
+		}
+		int subtreeSize = 1 + checkSubtreeSizes(node.getLeftChild()) + checkSubtreeSizes(node.getRightChild());
+		assertEquals(subtreeSize, node.subtreeSize);
+		return subtreeSize;
+	}
+	
+	@Test
+	public void testMultipleRandomRemoves(){
+		Random rnd = new Random(5);
+		KDTree<Integer> tree = new KDTree<Integer>(3);
+		tree.setRebuildThreshold(0.25);
+		Map<ArrayList<Integer>, Set<Integer>> oracle = new HashMap<ArrayList<Integer>, Set<Integer>>();
+		List<Integer[]> inserted = new ArrayList<Integer[]>();
+		int oracleSize = 0;
+		
+		for (int i=0; i < 5000; ++i){
+			if (inserted.isEmpty() || rnd.nextInt(3) > 0){
+				Integer[] tmpArray = constructRndIntegerArray(rnd, 30, 3);
+				Integer newValue = rnd.nextInt(10);
+				tree.insert(tmpArray, newValue);
+				
+				Set<Integer> values = oracle.get(convertArrayToArrayList(tmpArray));
+				if (values == null){
+					values = new HashSet<Integer>();
+					oracle.put(convertArrayToArrayList(tmpArray), values);
+				}
+				if (values.add(newValue)){
+					++oracleSize;
+				}
+				inserted.add(tmpArray);
+			} else {
+				Integer[] tmpArray = inserted.get(rnd.nextInt(inserted.size()));
+				Set<Integer> values = oracle.get(convertArrayToArrayList(tmpArray));
+				if (rnd.nextBoolean()){
+					Integer value = rnd.nextInt(10);
+					assertEquals(values.remove(value), tree.remove(tmpArray, value));
+				} else {
+					assertEquals(values, tree.removeAll(tmpArray));
+					values.clear();
+				}
+			}
+			
+			oracleSize = 0;
+			for (Set<Integer> values : oracle.values()){
+				oracleSize += values.size();
+			}
+			assertEquals(oracleSize, tree.size());
+		}
+		checkSubtreeSizes(tree.getRoot());
+		
+		for (ArrayList<Integer> li : oracle.keySet()){
+			Comparable[] currKey = new Comparable[3];
+			li.toArray(currKey);
+			assertEquals(oracle.get(li), tree.get(currKey));
+		}
+		
+		for (int i=0; i < 100; ++i){
+			Integer[] lowest = constructRndIntegerArray(rnd, 30, 3);
+			Integer[] highest = constructRndIntegerArray(rnd, lowest, 30, 3);
+			Set<Integer> range = new HashSet<Integer>();
+			for (ArrayList<Integer> li : oracle.keySet()){
+				Comparable[] oracleKey = new Comparable[3];
+				li.toArray(oracleKey);
+				if ( isInRange(oracleKey, lowest, highest, 3) ){
+					range.addAll(oracle.get(li));
+				}
+			}
+			assertEquals(range, tree.range(lowest, highest));
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testBalanceFactorOutOfRange(){
+		triDTree.setBalanceFactor(0.5);
+	}
+	
+	@Test
+	public void testBalancedSortedInserts(){
+		KDTree<Integer> tree = new KDTree<Integer>(2);
+		tree.setBalanceFactor(0.75);
+		for (int i=0; i < 4096; ++i){
+			Integer[] tmpArray = {i, i};
+			tree.insert(tmpArray, i);
+		}
+		
+		assertEquals(4096, tree.size());
+		checkSubtreeSizes(tree.getRoot());
+		assertTrue( depth(tree.getRoot()) <= Math.log(4096) / Math.log(1 / 0.75) + 1 );
+		
+		for (int i=0; i < 4096; ++i){
+			Integer[] tmpArray = {i, i};
+			Set<Integer> oracle = new HashSet<Integer>();
+			oracle.add(i);
+			assertEquals(oracle, tree.get(tmpArray));
+		}
+		Integer[] lowest = {100, 0};
+		Integer[] highest = {199, 4096};
+		assertEquals(100, tree.range(lowest, highest).size());
+	}
+	
+	@Test
+	public void testParallelRangeSameAsRange(){
+		Random rnd = new Random(9);
+		List<Comparable[]> keys = new ArrayList<Comparable[]>();
+		List<Integer> values = new ArrayList<Integer>();
+		for (int i=0; i < 50000; ++i){
+			keys.add(constructRndIntegerArray(rnd, 1000, 3));
+			values.add(i);
+		}
+		KDTree<Integer> tree = new KDTree<Integer>(3, keys, values);
+		
+		for (int i=0; i < 20; ++i){
+			Integer[] lowest = constructRndIntegerArray(rnd, 500, 3);
+			Integer[] highest = constructRndIntegerArray(rnd, lowest, 1000, 3);
+			assertEquals(tree.range(lowest, highest), tree.parallelRange(lowest, highest));
+		}
+		assertTrue( triDTree.parallelRange(new Integer[]{1, 1, 1}, new Integer[]{2, 2, 2}).isEmpty() );
+	}
+	
+	private void assertSameTree(Node<?> expected, Node<?> actual){
+		if (expected == null){
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.getValue(), actual.getValue());
+		assertArrayEquals(expected.getAllKeys(), actual.getAllKeys());
+		assertEquals(expected.subtreeSize, actual.subtreeSize);
+		assertSameTree(expected.getLeftChild(), actual.getLeftChild());
+		assertSameTree(expected.getRightChild(), actual.getRightChild());
+	}
+	
+	@Test
+	public void testParallelBulkLoadSameAsSequential(){
+		Random rnd = new Random(10);
+		List<Comparable[]> keys = new ArrayList<Comparable[]>();
+		List<Integer> values = new ArrayList<Integer>();
+		for (int i=0; i < 40000; ++i){
+			keys.add(constructRndIntegerArray(rnd, 100, 3));
+			values.add(rnd.nextInt(10));
+		}
+		
+		KDTree<Integer> sequential = new KDTree<Integer>(3, keys, values);
+		KDTree<Integer> parallel = new KDTree<Integer>(3, keys, values, new ForkJoinPool(4));
+		assertEquals(sequential.size(), parallel.size());
+		assertSameTree(sequential.getRoot(), parallel.getRoot());
+	}
+	
+	@Test
+	public void testRangeIteratorAndStream(){
+		Random rnd = new Random(11);
+		List<Comparable[]> keys = new ArrayList<Comparable[]>();
+		List<Integer> values = new ArrayList<Integer>();
+		for (int i=0; i < 20000; ++i){
+			keys.add(constructRndIntegerArray(rnd, 100, 3));
+			values.add(i);
+		}
+		KDTree<Integer> tree = new KDTree<Integer>(3, keys, values);
+		tree.removeAll(keys.get(0));
+		
+		for (int i=0; i < 20; ++i){
+			Integer[] lowest = constructRndIntegerArray(rnd, 50, 3);
+			Integer[] highest = constructRndIntegerArray(rnd, lowest, 100, 3);
+			Set<Integer> range = tree.range(lowest, highest);
+			
+			Set<Integer> iterated = new HashSet<Integer>();
+			Iterator<Integer> it = tree.rangeIterator(lowest, highest);
+			while (it.hasNext()){
+				assertTrue( iterated.add(it.next()) );
+			}
+			assertEquals(range, iterated);
+			
+			assertEquals(range, tree.rangeStream(lowest, highest).collect(Collectors.toSet()));
+			assertEquals(range.size(), tree.rangeStream(lowest, highest).parallel().count());
+			assertEquals(Math.min(10, range.size()), tree.rangeStream(lowest, highest).limit(10).count());
+		}
+		
+		Comparable[] key = keys.get(1);
+		assertEquals(tree.get(key), tree.getStream(key).collect(Collectors.toSet()));
+		assertFalse( tree.getIterator(keys.get(0)).hasNext() );
+		assertFalse( triDTree.rangeIterator(key, key).hasNext() );
+	}
+	
+	@Test
+	public void testRangeVisitorStopsEarly(){
+		KDTree<Integer> tree = new KDTree<Integer>(2);
+		for (int i=0; i < 100; ++i){
+			Integer[] tmpArray = {i % 10, i / 10};
+			tree.insert(tmpArray, i);
+		}
+		
+		final List<Integer> visited = new ArrayList<Integer>();
+		Integer[] lowest = {0, 0};
+		Integer[] highest = {9, 9};
+		boolean completed = tree.range(lowest, highest, new KDTreeVisitor<Integer>(){
+			@Override
+			public boolean visit(Comparable[] keys, Integer value){
+				visited.add(value);
+				return visited.size() < 5;
+			}
+		});
+		assertFalse(completed);
+		assertEquals(5, visited.size());
+		
+		final Set<Integer> all = new HashSet<Integer>();
+		assertTrue( tree.range(lowest, highest, new KDTreeVisitor<Integer>(){
+			@Override
+			public boolean visit(Comparable[] keys, Integer value){
+				all.add(value);
+				return true;
+			}
+		}) );
+		assertEquals(tree.range(lowest, highest), all);
+	}
+	
+	@Test
+	public void testGetVisitor(){
+		Integer[] keys = {4, 5, 6};
+		triDTree.insert(keys, "A");
+		triDTree.insert(keys, "B");
+		
+		final Set<String> visited = new HashSet<String>();
+		KDTreeVisitor<String> visitor = new KDTreeVisitor<String>(){
+			@Override
+			public boolean visit(Comparable[] keys, String value){
+				visited.add(value);
+				// Nested searches get a context of their own.
+				assertTrue( triDTree.range(keys, keys).contains(value) );
+				return false;
+			}
+		};
+		assertFalse( triDTree.get(keys, visitor) );
+		assertEquals(1, visited.size());
+	}
+	
+	@Test
+	public void testRangeCountAndAggregate(){
+		Random rnd = new Random(13);
+		KDTree<Integer> tree = new KDTree<Integer>(3);
+		tree.setBalanceFactor(0.7);
+		tree.setAggregation(Aggregations.sum(new ToDoubleFunction<Integer>(){
+			@Override
+			public double applyAsDouble(Integer value){
+				return value;
+			}
+		}));
+		
+		List<Integer[]> keys = new ArrayList<Integer[]>();
+		for (int i=0; i < 2000; ++i){
+			Integer[] tmpArray = constructRndIntegerArray(rnd, 50, 3);
+			keys.add(tmpArray);
+			tree.insert(tmpArray, i);
+		}
+		for (int i=0; i < 2000; i += 3){
+			tree.remove(keys.get(i), i);
+		}
+		
+		for (int query=0; query < 50; ++query){
+			Integer[] lowest = constructRndIntegerArray(rnd, 30, 3);
+			Integer[] highest = constructRndIntegerArray(rnd, lowest, 50, 3);
+			
+			long count = 0;
+			double sum = 0;
+			for (int i=0; i < keys.size(); ++i){
+				if (i % 3 != 0 && isInRange(keys.get(i), lowest, highest, 3)){
+					++count;
+					sum += i;
+				}
+			}
+			assertEquals(count, tree.rangeCount(lowest, highest));
+			assertEquals(sum, tree.rangeAggregate(lowest, highest), 0);
+		}
+	}
+	
+	@Test
+	public void testRangeAggregateMax(){
+		KDTree<Integer> tree = new KDTree<Integer>(2);
+		for (int i=0; i < 100; ++i){
+			Integer[] tmpArray = {i % 10, i / 10};
+			tree.insert(tmpArray, i);
+		}
+		tree.setAggregation(Aggregations.max(new ToDoubleFunction<Integer>(){
+			@Override
+			public double applyAsDouble(Integer value){
+				return value;
+			}
+		}));
+		
+		Integer[] lowest = {0, 0};
+		Integer[] highest = {9, 9};
+		assertEquals(99, tree.rangeAggregate(lowest, highest), 0);
+		assertEquals(100, tree.rangeCount(lowest, highest));
+		
+		Integer[] last = {9, 9};
+		tree.remove(last, 99);
+		assertEquals(98, tree.rangeAggregate(lowest, highest), 0);
+		assertEquals(99, tree.rangeCount(lowest, highest));
+		
+		tree.insert(last, 99);
+		assertEquals(99, tree.rangeAggregate(lowest, highest), 0);
+		
+		Integer[] high = {4, 2};
+		assertEquals(24, tree.rangeAggregate(lowest, high), 0);
+		assertEquals(15, tree.rangeCount(lowest, high));
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testRangeAggregateWithoutAggregation(){
+		Integer[] keys = {1, 2, 3};
+		triDTree.rangeAggregate(keys, keys);
+	}
+	
+	/**
+	 * Checks that the bounding box of every node contains the keys of its 
+	 * subtree and returns the keys of the subtree.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Comparable[]> checkBoxes(Node<?> node){
+		List<Comparable[]> keys = new ArrayList<Comparable[]>();
+		if (node == null){
+			return keys;
+		}
+		keys.add(node.keys);
+		keys.addAll(checkBoxes(node.getLeftChild()));
+		keys.addAll(checkBoxes(node.getRightChild()));
+		for (Comparable[] subtreeKeys : keys){
+			for (int d=0; d < subtreeKeys.length; ++d){
+				assertTrue( node.boxMin[d].compareTo(subtreeKeys[d]) <= 0 );
+				assertTrue( node.boxMax[d].compareTo(subtreeKeys[d]) >= 0 );
+			}
+		}
+		return keys;
+	}
+	
+	@Test
+	public void testBoundingBoxes(){
+		Random rnd = new Random(14);
+		KDTree<Integer> boxed = new KDTree<Integer>(3);
+		KDTree<Integer> plain = new KDTree<Integer>(3);
+		boxed.setBalanceFactor(0.7);
+		plain.setBalanceFactor(0.7);
+		boxed.setRebuildThreshold(0.3);
+		plain.setRebuildThreshold(0.3);
+		
+		List<Integer[]> keys = new ArrayList<Integer[]>();
+		for (int i=0; i < 3000; ++i){
+			// Clustered keys, mostly close to one of two corners.
+			int corner = rnd.nextBoolean() ? 0 : 80;
+			Integer[] tmpArray = {corner + rnd.nextInt(20), corner + rnd.nextInt(20), rnd.nextInt(100)};
+			keys.add(tmpArray);
+			boxed.insert(tmpArray, i);
+			plain.insert(tmpArray, i);
+			if (i == 1000){
+				boxed.setBoundingBoxes(true);
+			}
+		}
+		for (int i=0; i < 3000; i += 2){
+			assertEquals(plain.remove(keys.get(i), i), boxed.remove(keys.get(i), i));
+		}
+		checkBoxes(boxed.getRoot());
+		
+		for (int query=0; query < 50; ++query){
+			Integer[] lowest = constructRndIntegerArray(rnd, 60, 3);
+			Integer[] highest = constructRndIntegerArray(rnd, lowest, 100, 3);
+			assertEquals(plain.range(lowest, highest), boxed.range(lowest, highest));
+			assertEquals(plain.range(lowest, highest), boxed.parallelRange(lowest, highest));
+			assertEquals(plain.range(lowest, highest), 
+					boxed.rangeStream(lowest, highest).collect(Collectors.toSet()));
+			assertEquals(plain.rangeCount(lowest, highest), boxed.rangeCount(lowest, highest));
+			
+			Integer[] target = constructRndIntegerArray(rnd, 100, 3);
+			for (StandardMetric metric : StandardMetric.values()){
+				List<Integer> expected = plain.nearest(target, 5, metric);
+				List<Integer> nearest = boxed.nearest(target, 5, metric);
+				for (int j=0; j < expected.size(); ++j){
+					assertEquals(metric.distance(target, keys.get(expected.get(j))), 
+							metric.distance(target, keys.get(nearest.get(j))), 1e-12);
+				}
+			}
+		}
+		
+		boxed.setBoundingBoxes(false);
+		assertNull(boxed.getRoot().boxMin);
+	}
+	
+	@Test
+	public void testStatisticsAndRebuild(){
+		KDTree<Integer> tree = new KDTree<Integer>(2);
+		for (int i=0; i < 1000; ++i){
+			Integer[] keys = {i, i};
+			tree.insert(keys, i);
+		}
+		for (int i=0; i < 1000; i += 2){
+			Integer[] keys = {i, i};
+			tree.remove(keys, i);
+		}
+		
+		TreeStatistics before = tree.statistics();
+		assertEquals(500, before.getSize());
+		assertEquals(1000, before.getNodeCount());
+		assertEquals(999, before.getMaxDepth());
+		assertEquals(1, before.getBalanceFactor(0), 0);
+		assertTrue(RebalancePolicies.maxDepthExceeds(2).shouldRebuild(before));
+		assertTrue(RebalancePolicies.removedNodesExceed(0.25).shouldRebuild(before));
+		
+		tree.rebuild();
+		TreeStatistics after = tree.statistics();
+		assertEquals(500, after.getSize());
+		assertEquals(500, after.getNodeCount());
+		assertEquals(8, after.getMaxDepth());
+		assertTrue(after.getBalanceFactor(0) < 0.55);
+		assertTrue(after.getEstimatedMemoryBytes() < before.getEstimatedMemoryBytes());
+		assertFalse(RebalancePolicies.maxDepthExceeds(2).shouldRebuild(after));
+		assertFalse(RebalancePolicies.removedNodesExceed(0.25).shouldRebuild(after));
+		
+		long[] histogram = after.getDepthHistogram();
+		long nodes = 0;
+		for (long count : histogram){
+			nodes += count;
+		}
+		assertEquals(500, nodes);
+		
+		Integer[] lowest = {0, 0};
+		Integer[] highest = {999, 999};
+		assertEquals(500, tree.range(lowest, highest).size());
+		for (int i=1; i < 1000; i += 2){
+			Integer[] keys = {i, i};
+			assertTrue(tree.get(keys).contains(i));
+		}
+	}
+	
+	@Test
+	public void testEmptyStatistics(){
+		TreeStatistics statistics = new KDTree<Integer>(3).statistics();
+		assertEquals(0, statistics.getSize());
+		assertEquals(-1, statistics.getMaxDepth());
+		assertEquals(0, statistics.getDepthHistogram().length);
+	}
+	
 }
 
 
@@ -0,0 +1,72 @@
+package kdTree;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongKDTreeTester {
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInsertArgumentToLarge(){
+		LongKDTree<String> tree = new LongKDTree<String>(2);
+		long[] arr = {1, 2, 3};
+		tree.insert(arr, "A");
+	}
+	
+	@Test
+	public void testPartlyInvertedRange(){
+		LongKDTree<String> tree = new LongKDTree<String>(2);
+		long[] keys = {4, 5};
+		tree.insert(keys, "A");
+		long[] lowest = {0, 9};
+		long[] highest = {9, 0};
+		assertTrue(tree.range(lowest, highest).isEmpty());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvertedRange(){
+		LongKDTree<String> tree = new LongKDTree<String>(2);
+		long[] lowest = {9, 9};
+		long[] highest = {0, 0};
+		tree.range(lowest, highest);
+	}
+	
+	@Test
+	public void testMultipleRandomOperations(){
+		Random rnd = new Random(3);
+		LongKDTree<Integer> tree = new LongKDTree<Integer>(4);
+		KDTree<Integer> oracle = new KDTree<Integer>(4);
+		
+		for (int i=0; i < 2000; ++i){
+			long[] keys = new long[4];
+			Long[] oracleKeys = new Long[4];
+			for (int j=0; j < 4; ++j){
+				keys[j] = rnd.nextInt(100);
+				oracleKeys[j] = keys[j];
+			}
+			Integer value = rnd.nextInt(2000);
+			tree.insert(keys, value);
+			oracle.insert(oracleKeys, value);
+			
+			assertEquals(oracle.size(), tree.size());
+			assertEquals(oracle.get(oracleKeys), tree.get(keys));
+			
+			if (rnd.nextBoolean()){
+				long[] lowest = new long[4];
+				long[] highest = new long[4];
+				Long[] oracleLowest = new Long[4];
+				Long[] oracleHighest = new Long[4];
+				for (int j=0; j < 4; ++j){
+					lowest[j] = rnd.nextInt(100);
+					highest[j] = lowest[j] + rnd.nextInt(50);
+					oracleLowest[j] = lowest[j];
+					oracleHighest[j] = highest[j];
+				}
+				assertEquals(oracle.range(oracleLowest, oracleHighest), tree.range(lowest, highest));
+			}
+		}
+	}
+	
+}
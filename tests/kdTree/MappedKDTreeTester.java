@@ -0,0 +1,159 @@
+package kdTree;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedKDTreeTester {
+
+	private Path file;
+
+	@Before
+	public void createFile() throws IOException {
+		file = Files.createTempFile("kdtree", ".snapshot");
+	}
+
+	@After
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testDoubleSnapshot() throws IOException {
+		Random rnd = new Random(17);
+		DoubleKDTree<String> tree = new DoubleKDTree<String>(3);
+		for (int i=0; i < 2000; ++i){
+			double[] keys = {rnd.nextInt(20), rnd.nextInt(20), rnd.nextInt(20) / 2.0};
+			tree.insert(keys, "value " + rnd.nextInt(5));
+		}
+		MappedDoubleKDTree.write(tree, ValueCodecs.strings(), file);
+
+		// Small chunks make values and keys span chunk boundaries.
+		MappedDoubleKDTree<String> mapped = MappedDoubleKDTree.open(file, ValueCodecs.strings());
+		MappedDoubleKDTree<String> chunked = MappedDoubleKDTree.open(file, ValueCodecs.strings(), 100);
+		assertEquals(tree.size(), mapped.size());
+		assertEquals(3, mapped.dimensions());
+
+		for (int i=0; i < 200; ++i){
+			double[] keys = {rnd.nextInt(21), rnd.nextInt(21), rnd.nextInt(21) / 2.0};
+			assertEquals(tree.get(keys), mapped.get(keys));
+			assertEquals(tree.get(keys), chunked.get(keys));
+			assertEquals(tree.contains(keys), mapped.contains(keys));
+
+			double[] lowest = {rnd.nextInt(10), rnd.nextInt(10), rnd.nextInt(10)};
+			double[] highest = {lowest[0] + rnd.nextInt(10), lowest[1] + rnd.nextInt(10), lowest[2] + rnd.nextInt(10)};
+			assertEquals(tree.range(lowest, highest), mapped.range(lowest, highest));
+			assertEquals(tree.range(lowest, highest), chunked.range(lowest, highest));
+		}
+		mapped.close();
+		chunked.close();
+	}
+
+	@Test
+	public void testLongSnapshot() throws IOException {
+		Random rnd = new Random(17);
+		LongKDTree<Long> tree = new LongKDTree<Long>(2);
+		for (long i=0; i < 1000; ++i){
+			long[] keys = {rnd.nextInt(30), i % 7};
+			tree.insert(keys, i);
+		}
+		MappedLongKDTree.write(tree, ValueCodecs.longs(), file);
+		MappedLongKDTree<Long> mapped = MappedLongKDTree.open(file, ValueCodecs.longs());
+
+		for (int i=0; i < 200; ++i){
+			long[] keys = {rnd.nextInt(31), rnd.nextInt(8)};
+			assertEquals(tree.get(keys), mapped.get(keys));
+			assertEquals(tree.contains(keys), mapped.contains(keys));
+
+			long[] lowest = {rnd.nextInt(20), rnd.nextInt(5)};
+			long[] highest = {lowest[0] + rnd.nextInt(10), lowest[1] + rnd.nextInt(3)};
+			assertEquals(tree.range(lowest, highest), mapped.range(lowest, highest));
+		}
+		mapped.close();
+	}
+
+	@Test
+	public void testEmptySnapshot() throws IOException {
+		MappedDoubleKDTree.write(new DoubleKDTree<Integer>(2), ValueCodecs.integers(), file);
+		MappedDoubleKDTree<Integer> mapped = MappedDoubleKDTree.open(file, ValueCodecs.integers());
+		double[] keys = {1, 2};
+		assertEquals(0, mapped.size());
+		assertFalse(mapped.contains(keys));
+		assertTrue(mapped.range(keys, keys).isEmpty());
+	}
+
+	@Test
+	public void testPartlyInvertedRange() throws IOException {
+		LongKDTree<Integer> tree = new LongKDTree<Integer>(2);
+		long[] keys = {4, 5};
+		tree.insert(keys, 1);
+		MappedLongKDTree.write(tree, ValueCodecs.integers(), file);
+		MappedLongKDTree<Integer> mapped = MappedLongKDTree.open(file, ValueCodecs.integers());
+		long[] lowest = {0, 9};
+		long[] highest = {9, 0};
+		assertTrue(mapped.range(lowest, highest).isEmpty());
+		mapped.close();
+	}
+
+	@Test(expected=IOException.class)
+	public void testWrongKeyType() throws IOException {
+		MappedDoubleKDTree.write(new DoubleKDTree<Integer>(2), ValueCodecs.integers(), file);
+		MappedLongKDTree.open(file, ValueCodecs.integers());
+	}
+
+	@Test(expected=IOException.class)
+	public void testNotASnapshot() throws IOException {
+		Files.write(file, new byte[100]);
+		MappedDoubleKDTree.open(file, ValueCodecs.integers());
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testClosed() throws IOException {
+		MappedDoubleKDTree.write(new DoubleKDTree<Integer>(2), ValueCodecs.integers(), file);
+		MappedDoubleKDTree<Integer> mapped = MappedDoubleKDTree.open(file, ValueCodecs.integers());
+		mapped.close();
+		double[] keys = {1, 2};
+		mapped.contains(keys);
+	}
+
+	@Test
+	public void testCloseTwice() throws IOException {
+		LongKDTree<Integer> tree = new LongKDTree<Integer>(2);
+		long[] keys = {1, 2};
+		tree.insert(keys, 3);
+		MappedLongKDTree.write(tree, ValueCodecs.integers(), file);
+		MappedLongKDTree<Integer> mapped = MappedLongKDTree.open(file, ValueCodecs.integers());
+		assertEquals(tree.get(keys), mapped.get(keys));
+		mapped.close();
+		mapped.close();
+
+		// The file is unmapped, so it can be replaced and deleted.
+		MappedLongKDTree.write(tree, ValueCodecs.integers(), file);
+		Files.delete(file);
+		try {
+			mapped.get(keys);
+			fail();
+		} catch (IllegalStateException e){
+			// The tree has been closed.
+		}
+	}
+
+	@Test
+	public void testSerializedValues() throws IOException {
+		DoubleKDTree<Date> tree = new DoubleKDTree<Date>(2);
+		double[] keys = {1, 2};
+		tree.insert(keys, new Date(1000));
+		MappedDoubleKDTree.write(tree, ValueCodecs.<Date>serialized(), file);
+		MappedDoubleKDTree<Date> mapped = MappedDoubleKDTree.open(file, ValueCodecs.<Date>serialized());
+		assertEquals(tree.get(keys), mapped.get(keys));
+	}
+
+}
@@ -0,0 +1,89 @@
+package kdTree;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OffHeapDoubleKDTreeTester {
+
+	@Test
+	public void testSameAsDoubleKDTree(){
+		Random rnd = new Random(18);
+		DoubleKDTree<Integer> tree = new DoubleKDTree<Integer>(3);
+		// Small chunks make the tree span many of them.
+		OffHeapDoubleKDTree<Integer> offHeap = new OffHeapDoubleKDTree<Integer>(3, 4);
+		for (int i=0; i < 2000; ++i){
+			double[] keys = {rnd.nextInt(20), rnd.nextInt(20), rnd.nextInt(20) / 2.0};
+			int value = rnd.nextInt(5);
+			tree.insert(keys, value);
+			offHeap.insert(keys, value);
+		}
+		assertEquals(tree.size(), offHeap.size());
+		assertEquals(3, offHeap.dimensions());
+
+		for (int i=0; i < 200; ++i){
+			double[] keys = {rnd.nextInt(21), rnd.nextInt(21), rnd.nextInt(21) / 2.0};
+			assertEquals(tree.get(keys), offHeap.get(keys));
+			assertEquals(tree.contains(keys), offHeap.contains(keys));
+
+			double[] lowest = {rnd.nextInt(10), rnd.nextInt(10), rnd.nextInt(10)};
+			double[] highest = {lowest[0] + rnd.nextInt(10), lowest[1] + rnd.nextInt(10), lowest[2] + rnd.nextInt(10)};
+			assertEquals(tree.range(lowest, highest), offHeap.range(lowest, highest));
+		}
+		offHeap.close();
+	}
+
+	@Test
+	public void testDuplicates(){
+		OffHeapDoubleKDTree<String> tree = new OffHeapDoubleKDTree<String>(2);
+		double[] keys = {1, 2};
+		tree.insert(keys, "a");
+		tree.insert(keys, "a");
+		tree.insert(keys, "b");
+		assertEquals(2, tree.size());
+		assertEquals(2, tree.get(keys).size());
+		tree.close();
+	}
+
+	@Test
+	public void testEmpty(){
+		OffHeapDoubleKDTree<String> tree = new OffHeapDoubleKDTree<String>(2);
+		double[] keys = {1, 2};
+		assertEquals(0, tree.offHeapBytes());
+		assertFalse(tree.contains(keys));
+		assertTrue(tree.get(keys).isEmpty());
+		assertTrue(tree.range(keys, keys).isEmpty());
+		tree.close();
+	}
+
+	@Test
+	public void testPartlyInvertedRange(){
+		OffHeapDoubleKDTree<String> tree = new OffHeapDoubleKDTree<String>(2);
+		double[] keys = {4, 5};
+		tree.insert(keys, "a");
+		double[] lowest = {0, 9};
+		double[] highest = {9, 0};
+		assertTrue(tree.range(lowest, highest).isEmpty());
+		tree.close();
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testClosed(){
+		OffHeapDoubleKDTree<String> tree = new OffHeapDoubleKDTree<String>(2);
+		double[] keys = {1, 2};
+		tree.insert(keys, "a");
+		tree.close();
+		tree.close();
+		tree.contains(keys);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNaN(){
+		OffHeapDoubleKDTree<String> tree = new OffHeapDoubleKDTree<String>(2);
+		double[] keys = {1, Double.NaN};
+		tree.insert(keys, "a");
+	}
+
+}
@@ -0,0 +1,237 @@
+package kdTree;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class QueryMetricsTester {
+
+	private static class StatsCollector implements QueryListener {
+
+		final List<QueryStats> stats = new ArrayList<QueryStats>();
+
+		@Override
+		public void queryCompleted(QueryStats stats){
+			this.stats.add(stats);
+		}
+
+		QueryStats last(){
+			return stats.get(stats.size() - 1);
+		}
+	}
+
+	private static KDTree<Integer> randomTree(int size){
+		Random rnd = new Random(24);
+		KDTree<Integer> tree = new KDTree<Integer>(2);
+		for (int i=0; i < size; ++i){
+			Integer[] keys = {rnd.nextInt(1000), rnd.nextInt(1000)};
+			tree.insert(keys, i);
+		}
+		return tree;
+	}
+
+	@Test
+	public void testQueryStats(){
+		KDTree<Integer> tree = randomTree(5000);
+		StatsCollector collector = new StatsCollector();
+		tree.setQueryListener(collector);
+
+		Integer[] lowest = {100, 100};
+		Integer[] highest = {200, 300};
+		int found = tree.range(lowest, highest).size();
+		QueryStats range = collector.last();
+		assertEquals(QueryType.RANGE, range.getType());
+		assertEquals(found, range.getResults());
+		assertTrue(range.getNodesVisited() > found);
+		assertTrue(range.getNodesVisited() < tree.size());
+		assertTrue(range.getSubtreesPruned() > 0);
+		assertTrue(range.getKeyComparisons() <= range.getNodesVisited());
+
+		assertEquals(found, tree.rangeCount(lowest, highest));
+		assertEquals(QueryType.RANGE_COUNT, collector.last().getType());
+		assertEquals(found, collector.last().getResults());
+
+		tree.setAggregation(Aggregations.sum(new ToDoubleFunction<Integer>(){
+			@Override
+			public double applyAsDouble(Integer value){
+				return value;
+			}
+		}));
+		tree.rangeAggregate(lowest, highest);
+		assertEquals(QueryType.RANGE_AGGREGATE, collector.last().getType());
+		assertEquals(found, collector.last().getResults());
+
+		Integer[] keys = {150, 150};
+		tree.contains(keys);
+		QueryStats contains = collector.last();
+		assertEquals(QueryType.CONTAINS, contains.getType());
+		assertEquals(contains.getNodesVisited(), contains.getKeyComparisons());
+
+		tree.nearest(keys, 3);
+		QueryStats nearest = collector.last();
+		assertEquals(QueryType.NEAREST, nearest.getType());
+		assertEquals(3, nearest.getResults());
+		assertTrue(nearest.getNodesVisited() >= 3);
+
+		assertEquals(5, collector.stats.size());
+		tree.setQueryListener(null);
+		tree.get(keys);
+		assertEquals(5, collector.stats.size());
+	}
+
+	@Test
+	public void testOtherSearchTypes(){
+		KDTree<Integer> tree = randomTree(5000);
+		StatsCollector collector = new StatsCollector();
+		tree.setQueryListener(collector);
+		Integer[] keys = {500, 500};
+
+		tree.approximateNearest(keys, 4, StandardMetric.EUCLIDEAN, 0.5, 100);
+		QueryStats approximate = collector.last();
+		assertEquals(QueryType.APPROXIMATE_NEAREST, approximate.getType());
+		assertEquals(4, approximate.getResults());
+		assertTrue(approximate.getNodesVisited() <= 100);
+
+		int found = tree.withinRadius(keys, 40).size();
+		QueryStats radius = collector.last();
+		assertEquals(QueryType.RADIUS, radius.getType());
+		assertEquals(found, radius.getResults());
+		assertTrue(radius.getNodesVisited() >= found);
+		assertTrue(radius.getNodesVisited() < tree.size());
+		assertTrue(radius.getSubtreesPruned() > 0);
+
+		tree.neighboursWithinRadius(keys, 40, StandardMetric.EUCLIDEAN);
+		assertEquals(QueryType.RADIUS, collector.last().getType());
+		assertEquals(found, collector.last().getResults());
+
+		List<Comparable[]> queries = new ArrayList<Comparable[]>();
+		for (int i=0; i < 200; ++i){
+			Integer[] query = {i * 5, 1000 - i * 5};
+			queries.add(query);
+		}
+		tree.batchNearest(queries, 2);
+		QueryStats batch = collector.last();
+		assertEquals(QueryType.BATCH_NEAREST, batch.getType());
+		assertEquals(400, batch.getResults());
+		assertTrue(batch.getKeyComparisons() >= 400);
+		assertTrue(batch.getSubtreesPruned() > 0);
+
+		KDTree<Integer> other = randomTree(500);
+		final long[] pairs = {0};
+		SpatialJoin.join(tree, other, 5, StandardMetric.EUCLIDEAN, new JoinVisitor<Integer, Integer>(){
+			@Override
+			public boolean visit(Comparable[] lhsKeys, Integer lhsValue, Comparable[] rhsKeys, Integer rhsValue){
+				++pairs[0];
+				return true;
+			}
+		});
+		QueryStats join = collector.last();
+		assertEquals(QueryType.JOIN, join.getType());
+		assertEquals(pairs[0], join.getResults());
+		assertTrue(join.getSubtreesPruned() > 0);
+
+		assertEquals(5, collector.stats.size());
+	}
+
+	@Test
+	public void testListenerRemovedDuringQuery(){
+		final KDTree<Integer> tree = randomTree(1000);
+		StatsCollector collector = new StatsCollector();
+		tree.setQueryListener(collector);
+
+		Integer[] lowest = {0, 0};
+		Integer[] highest = {999, 999};
+		assertFalse(tree.range(lowest, highest, new KDTreeVisitor<Integer>(){
+			@Override
+			public boolean visit(Comparable[] keys, Integer value){
+				tree.setQueryListener(null);
+				return false;
+			}
+		}));
+		assertEquals(1, collector.stats.size());
+		assertEquals(1, collector.last().getResults());
+	}
+
+	@Test
+	public void testMetrics(){
+		KDTree<Integer> tree = randomTree(1000);
+		QueryMetrics metrics = new QueryMetrics();
+		tree.setQueryListener(metrics);
+
+		Integer[] keys = {500, 500};
+		for (int i=0; i < 100; ++i){
+			tree.get(keys);
+		}
+		tree.nearest(keys, 5);
+
+		assertEquals(100, metrics.queryCount(QueryType.GET));
+		assertEquals(1, metrics.queryCount(QueryType.NEAREST));
+		assertEquals(0, metrics.queryCount(QueryType.RANGE));
+		assertEquals(5, metrics.results(QueryType.NEAREST));
+		assertTrue(metrics.nodesVisited(QueryType.GET) >= 100);
+		assertEquals(0, metrics.slowQueryCount(QueryType.GET));
+
+		long histogramTotal = 0;
+		for (long count : metrics.latencyHistogram(QueryType.GET)){
+			histogramTotal += count;
+		}
+		assertEquals(100, histogramTotal);
+		assertTrue(metrics.latencyPercentile(QueryType.GET, 50) <= metrics.latencyPercentile(QueryType.GET, 99));
+		assertEquals(0, metrics.latencyPercentile(QueryType.RANGE, 99));
+	}
+
+	@Test
+	public void testSnapshotsReport(){
+		ConcurrentKDTree<Integer> tree = new ConcurrentKDTree<Integer>(2);
+		QueryMetrics metrics = new QueryMetrics();
+		tree.setQueryListener(metrics);
+		Integer[] keys = {1, 2};
+		tree.insert(keys, 1);
+		tree.get(keys);
+		tree.snapshot().contains(keys);
+		assertEquals(1, metrics.queryCount(QueryType.GET));
+		assertEquals(1, metrics.queryCount(QueryType.CONTAINS));
+	}
+
+	@Test
+	public void testSlowQueryEvents() throws IOException {
+		KDTree<Integer> tree = randomTree(1000);
+		QueryMetrics metrics = new QueryMetrics(0, TimeUnit.NANOSECONDS);
+		tree.setQueryListener(metrics);
+
+		Path file = Files.createTempFile("kdtree", ".jfr");
+		try {
+			Recording recording = new Recording();
+			recording.enable("kdTree.SlowQuery");
+			recording.start();
+			Integer[] lowest = {0, 0};
+			Integer[] highest = {100, 100};
+			tree.range(lowest, highest);
+			recording.stop();
+			recording.dump(file);
+			recording.close();
+
+			assertEquals(1, metrics.slowQueryCount(QueryType.RANGE));
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+			assertEquals(1, events.size());
+			assertEquals("RANGE", events.get(0).getString("queryType"));
+			assertEquals(tree.range(lowest, highest).size(), events.get(0).getLong("results"));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+}
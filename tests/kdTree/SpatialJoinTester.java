@@ -0,0 +1,143 @@
+package kdTree;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SpatialJoinTester {
+
+	private static List<Integer[]> fillTree(KDTree<Integer> tree, Random rnd, int size, int removeEvery){
+		List<Integer[]> keys = new ArrayList<Integer[]>();
+		for (int i=0; i < size; ++i){
+			Integer[] tmpArray = {rnd.nextInt(200), rnd.nextInt(200), rnd.nextInt(50)};
+			keys.add(tmpArray);
+			tree.insert(tmpArray, i);
+		}
+		for (int i=0; i < size; i += removeEvery){
+			tree.remove(keys.get(i), i);
+		}
+		return keys;
+	}
+
+	/**
+	 * Collects the joined pairs as longs, the left value in the high bits.
+	 */
+	private static class PairCollector implements JoinVisitor<Integer, Integer> {
+
+		final Set<Long> pairs = new HashSet<Long>();
+
+		@Override
+		public synchronized boolean visit(Comparable[] lhsKeys, Integer lhsValue, Comparable[] rhsKeys, Integer rhsValue){
+			assertTrue(pairs.add(((long) lhsValue << 32) | rhsValue));
+			return true;
+		}
+	}
+
+	@Test
+	public void testJoinWithAllMetrics(){
+		Random rnd = new Random(22);
+		KDTree<Integer> lhs = new KDTree<Integer>(3);
+		KDTree<Integer> rhs = new KDTree<Integer>(3);
+		rhs.setBoundingBoxes(true);
+		List<Integer[]> lhsKeys = fillTree(lhs, rnd, 2500, 5);
+		List<Integer[]> rhsKeys = fillTree(rhs, rnd, 2500, 7);
+		// Large enough for the parallel join to split the trees.
+		assertTrue(lhs.size() + rhs.size() > KDTree.PARALLEL_CUTOFF);
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		for (StandardMetric metric : StandardMetric.values()){
+			for (double distance : new double[]{0, 6}){
+				Set<Long> expected = new HashSet<Long>();
+				for (int i=0; i < lhsKeys.size(); ++i){
+					for (int j=0; j < rhsKeys.size(); ++j){
+						if (i % 5 != 0 && j % 7 != 0 && metric.distance(lhsKeys.get(i), rhsKeys.get(j)) <= distance){
+							expected.add(((long) i << 32) | j);
+						}
+					}
+				}
+
+				PairCollector sequential = new PairCollector();
+				assertTrue(SpatialJoin.join(lhs, rhs, distance, metric, sequential));
+				assertEquals(expected, sequential.pairs);
+
+				PairCollector parallel = new PairCollector();
+				assertTrue(SpatialJoin.parallelJoin(lhs, rhs, distance, metric, parallel, pool));
+				assertEquals(expected, parallel.pairs);
+			}
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	public void testStopJoin(){
+		Random rnd = new Random(22);
+		KDTree<Integer> lhs = new KDTree<Integer>(3);
+		KDTree<Integer> rhs = new KDTree<Integer>(3);
+		fillTree(lhs, rnd, 1000, 1000);
+		fillTree(rhs, rnd, 1000, 1000);
+
+		final AtomicInteger visited = new AtomicInteger();
+		JoinVisitor<Integer, Integer> stopAtTen = new JoinVisitor<Integer, Integer>(){
+			@Override
+			public boolean visit(Comparable[] lhsKeys, Integer lhsValue, Comparable[] rhsKeys, Integer rhsValue){
+				return visited.incrementAndGet() < 10;
+			}
+		};
+		assertFalse(SpatialJoin.join(lhs, rhs, 20, StandardMetric.EUCLIDEAN, stopAtTen));
+		assertEquals(10, visited.get());
+	}
+
+	@Test
+	public void testJoinDegenerateTrees(){
+		// Sorted inserts give trees as deep as they are large.
+		KDTree<Integer> lhs = new KDTree<Integer>(2);
+		KDTree<Integer> rhs = new KDTree<Integer>(2);
+		for (int i=0; i < 8000; ++i){
+			Integer[] lhsKeys = {i, i};
+			Integer[] rhsKeys = {i, i + 1};
+			lhs.insert(lhsKeys, i);
+			rhs.insert(rhsKeys, i);
+		}
+		Set<Long> expected = new HashSet<Long>();
+		for (int i=0; i < 8000; ++i){
+			expected.add(((long) i << 32) | i);
+			if (i > 0){
+				expected.add(((long) i << 32) | (i - 1));
+			}
+		}
+
+		PairCollector sequential = new PairCollector();
+		assertTrue(SpatialJoin.join(lhs, rhs, 1, StandardMetric.CHEBYSHEV, sequential));
+		assertEquals(expected, sequential.pairs);
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		PairCollector parallel = new PairCollector();
+		assertTrue(SpatialJoin.parallelJoin(lhs, rhs, 1, StandardMetric.CHEBYSHEV, parallel, pool));
+		assertEquals(expected, parallel.pairs);
+		pool.shutdown();
+	}
+
+	@Test
+	public void testJoinEmpty(){
+		KDTree<Integer> lhs = new KDTree<Integer>(3);
+		KDTree<Integer> rhs = new KDTree<Integer>(3);
+		fillTree(rhs, new Random(22), 100, 100);
+		PairCollector collector = new PairCollector();
+		assertTrue(SpatialJoin.join(lhs, rhs, 10, StandardMetric.EUCLIDEAN, collector));
+		assertTrue(collector.pairs.isEmpty());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testJoinDifferentDimensions(){
+		SpatialJoin.join(new KDTree<Integer>(3), new KDTree<Integer>(2), 1, StandardMetric.EUCLIDEAN, new PairCollector());
+	}
+
+}